@@ -17,10 +17,13 @@ import org.geoserver.platform.GeoServerExtensions;
 import org.geotools.util.logging.Logging;
 import org.springframework.web.context.ServletContextAware;
 
+import static com.boundlessgeo.geoserver.util.PropertyUtil.property;
+
 /**
  * Tracks boundless suite specific configuration data:
  * * Composer cache directory, used for storing cached thumbnails. 
  *   Refer to {@link #lookupCacheDirectory(ServletContext)} for how this location is generated.
+ * * Composer cache quota, see {@link #cache()}.
  */
 public class AppConfiguration implements ServletContextAware {
     Catalog catalog;
@@ -31,9 +34,17 @@ public class AppConfiguration implements ServletContextAware {
     public static final String invalidCharRegex = "[/\\?<>\\\\:\\*|\"]";
     public static final String replaceChar = "_";
     
+    /** Default maximum size of the cache directory, in megabytes */
+    static final long DEFAULT_CACHE_MAX_SIZE = 512;
+    /** Default maximum number of files in the cache directory */
+    static final int DEFAULT_CACHE_MAX_FILES = 100000;
+    
     /** Cache directory location set by configuration on startup */
     private String cacheDir;
     
+    /** Keeps the cache directory within its quota */
+    private CacheManager cache;
+    
     private static Logger LOGGER = Logging.getLogger(AppConfiguration.class);
     
     public AppConfiguration(Catalog catalog) {
@@ -74,6 +85,10 @@ public class AppConfiguration implements ServletContextAware {
     public void setServletContext(ServletContext servletContext) {
         this.servletContext = servletContext;
         cacheDir = lookupCacheDirectory(servletContext);
+        // set either limit to 0 to disable it
+        cache = new CacheManager(new File(cacheDir), 
+            property("COMPOSER_CACHE_MAX_SIZE", DEFAULT_CACHE_MAX_SIZE, servletContext) * 1024 * 1024, 
+            (int) property("COMPOSER_CACHE_MAX_FILES", DEFAULT_CACHE_MAX_FILES, servletContext));
     }
 
     /**
@@ -84,6 +99,16 @@ public class AppConfiguration implements ServletContextAware {
         return cacheDir;
     }
     
+    /**
+     * Manager of the composer cache directory, limiting it to COMPOSER_CACHE_MAX_SIZE megabytes 
+     * (default 512) and COMPOSER_CACHE_MAX_FILES files (default 100000).
+     * 
+     * @return The cache manager, or null if the cache directory has not been configured
+     */
+    public CacheManager cache() {
+        return cache;
+    }
+    
     /**
      * File from the cache directory denoted by a relative path.
      * 
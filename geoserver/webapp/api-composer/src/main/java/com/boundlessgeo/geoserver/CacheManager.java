@@ -0,0 +1,280 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Keeps the composer cache directory within a quota.
+ * <p>
+ * The files of the cache directory are indexed in memory, with their size and last access time,
+ * so that the directory only has to be listed once, when the index is first used. Files written
+ * to the cache directory are recorded with {@link #written(String)}, and reads with
+ * {@link #accessed(String)}. Once the cache goes over its byte or file quota, the least recently
+ * accessed files are removed until the cache is back under the low water mark (90% of the quota).
+ * </p>
+ * <p>
+ * Files that can not be deleted stay in the index, and are retried the next time the cache is
+ * over quota.
+ * </p>
+ */
+public class CacheManager {
+
+    static Logger LOG = Logging.getLogger(CacheManager.class);
+
+    /** Extension of files being written, which are not part of the cache */
+    public static final String TEMP_EXTENSION = ".tmp";
+
+    /** Fraction of the quota the cache is reduced to when evicting */
+    static final double LOW_WATER_MARK = 0.9;
+
+    /** Age after which temporary files left behind are removed */
+    static final long TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+    final File dir;
+    final long maxBytes;
+    final int maxFiles;
+
+    final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong evicted = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+
+    volatile boolean loaded = false;
+    final ReentrantLock evicting = new ReentrantLock();
+
+    /**
+     * @param dir The cache directory
+     * @param maxBytes Maximum total size of the cache files, or 0 for no limit
+     * @param maxFiles Maximum number of cache files, or 0 for no limit
+     */
+    public CacheManager(File dir, long maxBytes, int maxFiles) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Records a file written to the cache directory, evicting other files if the cache is over
+     * quota.
+     *
+     * @param name Name of the file, relative to the cache directory
+     */
+    public void written(String name) {
+        load();
+        File file = new File(dir, name);
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(name, file.length(), now);
+        Entry previous = entries.put(name, entry);
+        bytes.addAndGet(entry.size - (previous == null ? 0 : previous.size));
+        if (overQuota(1.0)) {
+            evict();
+        }
+    }
+
+    /**
+     * Records a read of a file in the cache directory.
+     */
+    public void accessed(String name) {
+        Entry entry = entries.get(name);
+        if (entry != null) {
+            entry.accessed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Deletes a file from the cache directory.
+     *
+     * @return True if the file is gone, false if it could not be deleted
+     */
+    public boolean delete(String name) {
+        load();
+        File file = new File(dir, name);
+        if (file.delete() || !file.exists()) {
+            Entry entry = entries.remove(name);
+            if (entry != null) {
+                bytes.addAndGet(-entry.size);
+            }
+            return true;
+        }
+        failed.incrementAndGet();
+        LOG.fine("Unable to delete cache file "+file.getPath()+", will retry");
+        return false;
+    }
+
+    /**
+     * Names of the files in the cache, for which a filter applies, without listing the directory.
+     */
+    public List<String> files(EntryFilter filter) {
+        load();
+        List<String> names = new ArrayList<String>();
+        for (Entry entry : entries.values()) {
+            if (filter.accept(entry.name, entry.modified, entry.accessed)) {
+                names.add(entry.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Removes the least recently accessed files until the cache is under the low water mark.
+     *
+     * @return Number of files removed
+     */
+    public int evict() {
+        //Only one thread evicts, the others carry on
+        if (!evicting.tryLock()) {
+            return 0;
+        }
+        try {
+            if (!overQuota(1.0)) {
+                return 0;
+            }
+            List<Entry> lru = new ArrayList<Entry>(entries.values());
+            Collections.sort(lru, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry e1, Entry e2) {
+                    return Long.compare(e1.accessed, e2.accessed);
+                }
+            });
+            int count = 0;
+            for (Entry entry : lru) {
+                if (!overQuota(LOW_WATER_MARK)) {
+                    break;
+                }
+                if (delete(entry.name)) {
+                    count++;
+                }
+            }
+            evicted.addAndGet(count);
+            LOG.fine("Evicted "+count+" files from the composer cache");
+            return count;
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    boolean overQuota(double fraction) {
+        return (maxBytes > 0 && bytes.get() > maxBytes * fraction)
+            || (maxFiles > 0 && entries.size() > maxFiles * fraction);
+    }
+
+    /**
+     * Indexes the cache directory, removing any temporary files left behind by failed writes.
+     */
+    void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (dir.isDirectory()) {
+                long cutoff = System.currentTimeMillis() - TEMP_FILE_AGE;
+                //Stream the listing, the directory may hold a very large number of files
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+                    for (Path path : stream) {
+                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                        if (!attrs.isRegularFile()) {
+                            continue;
+                        }
+                        String name = path.getFileName().toString();
+                        long modified = attrs.lastModifiedTime().toMillis();
+                        if (name.endsWith(TEMP_EXTENSION)) {
+                            if (modified < cutoff) {
+                                Files.deleteIfExists(path);
+                            }
+                            continue;
+                        }
+                        long accessed = Math.max(modified, attrs.lastAccessTime().toMillis());
+                        Entry entry = new Entry(name, attrs.size(), modified, accessed);
+                        if (entries.putIfAbsent(name, entry) == null) {
+                            bytes.addAndGet(entry.size);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Unable to index composer cache directory "+dir.getPath(), e);
+                }
+            }
+            loaded = true;
+        }
+        if (overQuota(1.0)) {
+            evict();
+        }
+    }
+
+    /** Number of files in the cache */
+    public int size() {
+        load();
+        return entries.size();
+    }
+
+    /** Total size of the files in the cache */
+    public long bytes() {
+        load();
+        return bytes.get();
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public int maxFiles() {
+        return maxFiles;
+    }
+
+    /** Number of files removed to keep the cache within quota */
+    public long evicted() {
+        return evicted.get();
+    }
+
+    /** Number of failed deletes */
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * Selects cache files by name and time.
+     */
+    public static interface EntryFilter {
+        boolean accept(String name, long modified, long accessed);
+    }
+
+    static class Entry {
+        final String name;
+        final long size;
+        final long modified;
+        volatile long accessed;
+
+        Entry(String name, long size, long modified) {
+            this(name, size, modified, modified);
+        }
+
+        Entry(String name, long size, long modified, long accessed) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.accessed = accessed;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.NoSuchElementException;
 import javax.servlet.http.HttpServletRequest;
 
 import com.boundlessgeo.geoserver.api.exceptions.BadRequestException;
+import com.boundlessgeo.geoserver.util.PropertyUtil;
 import com.boundlessgeo.geoserver.util.RecentObjectCache;
 
 import org.apache.commons.fileupload.FileItemIterator;
@@ -37,6 +38,9 @@ public abstract class ApiController {
 
     public static final String API_PATH = "/app/api";
 
+    /** Default size (in bytes) above which uploaded files are buffered to disk */
+    public static final int DEFAULT_UPLOAD_MEMORY_THRESHOLD = 1024*1024;
+
     protected GeoServer geoServer;
 
     protected RecentObjectCache recent;
@@ -62,6 +66,15 @@ public abstract class ApiController {
         return page != null ? page * (count != null ? count : DEFAULT_PAGESIZE) : null;
     }
 
+    /**
+     * Whether a list counts all the matching items. Paging by page number reports the total, so
+     * always counts. Paging by cursor only counts when asked to, as counting a large catalog costs
+     * as much as listing it.
+     */
+    protected boolean counted(Boolean withTotal, Cursor cursor) {
+        return cursor == null || Boolean.TRUE.equals(withTotal);
+    }
+
     protected WorkspaceInfo findWorkspace(String wsName, Catalog cat) {
         WorkspaceInfo ws = cat.getWorkspaceByName(wsName);
         if (ws == null) {
@@ -101,9 +114,14 @@ public abstract class ApiController {
         return geoServer.getCatalog().getNamespaceByPrefix(ws.getName());
     }
 
+    /**
+     * Creates a file upload. Uploaded files larger than COMPOSER_UPLOAD_MEMORY_THRESHOLD bytes
+     * (default 1MB) are buffered to disk rather than held in memory.
+     */
     protected ServletFileUpload newFileUpload() {
         DiskFileItemFactory diskFactory = new DiskFileItemFactory();
-        diskFactory.setSizeThreshold(1024*1024*256); // TODO: make this configurable
+        diskFactory.setSizeThreshold(
+            PropertyUtil.property("COMPOSER_UPLOAD_MEMORY_THRESHOLD", DEFAULT_UPLOAD_MEMORY_THRESHOLD));
 
         return new ServletFileUpload(diskFactory);
     }
@@ -15,10 +15,13 @@ import org.geoserver.rest.DispatcherCallback;
 import org.geoserver.rest.DispatcherCallbackAdapter;
 import org.geoserver.rest.catalog.AbstractCatalogController;
 import org.geotools.util.logging.Logging;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 /**
  * Inspired by the RestConfigurationLockCallback.
+ * 
+ * Handler methods annotated with {@link Unlocked} run without the lock.
  */
 public class ConfigurationLockInterceptor extends DispatcherCallbackAdapter implements ExtensionPriority {
 
@@ -52,6 +55,9 @@ public class ConfigurationLockInterceptor extends DispatcherCallbackAdapter impl
     public void dispatched(HttpServletRequest request, HttpServletResponse response, Object handler) {
         Object controller = DispatcherCallback.getControllerBean(handler);
         if (controller instanceof ApiController) {
+            if (handler instanceof HandlerMethod && ((HandlerMethod) handler).hasMethodAnnotation(Unlocked.class)) {
+                return;
+            }
             if (THREAD_LOCK.get() != null) {
                 throw new RuntimeException("existing lock found on " + request.getPathInfo());
             }
@@ -0,0 +1,118 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.nio.charset.StandardCharsets;
+
+import org.geoserver.catalog.Predicates;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.boundlessgeo.geoserver.api.exceptions.BadRequestException;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Position in a list sorted by name, for paging with the "cursor" parameter instead of "page".
+ * <p>
+ * Paging with an offset makes the catalog skip every item before the page, so deep pages get
+ * slower. A cursor instead remembers the name of the last item returned, and the next page is
+ * the items after that name, which the catalog can look up directly. Names are unique within a
+ * workspace, so no item is skipped or repeated.
+ * </p>
+ * <p>
+ * Cursors are opaque to clients: a list is started with an empty cursor, and each page returns
+ * the cursor of the next one as "next", until the last page.
+ * </p>
+ */
+public class Cursor {
+
+    static final String PROPERTY = "name";
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    final boolean ascending;
+
+    /** Name of the last item returned, or null for the first page */
+    final String last;
+
+    Cursor(boolean ascending, String last) {
+        this.ascending = ascending;
+        this.last = last;
+    }
+
+    /**
+     * Parses the "cursor" parameter.
+     *
+     * @param cursor The cursor of the page, empty for the first page, or null if not paging by cursor
+     * @param sort The requested sort order of the first page, which must be by name
+     * @return The cursor, or null if cursor is null
+     */
+    public static Cursor parse(String cursor, SortBy sort) {
+        if (cursor == null) {
+            return null;
+        }
+        if (cursor.isEmpty()) {
+            if (sort != null && !PROPERTY.equals(sort.getPropertyName().getPropertyName())) {
+                throw new BadRequestException("Paging by cursor requires sorting by name");
+            }
+            return new Cursor(sort == null || sort.getSortOrder() == SortOrder.ASCENDING, null);
+        }
+        String decoded;
+        try {
+            decoded = new String(BaseEncoding.base64Url().omitPadding().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+        String[] parts = decoded.split(":", 2);
+        if (parts.length != 2 || !("asc".equals(parts[0]) || "desc".equals(parts[0]))) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+        return new Cursor("asc".equals(parts[0]), parts[1]);
+    }
+
+    /**
+     * The sort order of the list.
+     */
+    public SortBy sort() {
+        return ascending ? Predicates.asc(PROPERTY) : Predicates.desc(PROPERTY);
+    }
+
+    /**
+     * Limits a filter to the items after the cursor.
+     */
+    public Filter filter(Filter filter) {
+        if (last == null) {
+            return filter;
+        }
+        Filter after = ascending
+            ? FF.greater(FF.property(PROPERTY), FF.literal(last))
+            : FF.less(FF.property(PROPERTY), FF.literal(last));
+        return Predicates.and(filter, after);
+    }
+
+    /**
+     * The cursor of the page after an item.
+     *
+     * @param name The name of the last item of the page
+     */
+    public Cursor next(String name) {
+        return new Cursor(ascending, name);
+    }
+
+    /**
+     * The opaque form of the cursor, as passed in the "cursor" parameter.
+     */
+    public String encode() {
+        String cursor = (ascending ? "asc" : "desc") + ":" + (last != null ? last : "");
+        return BaseEncoding.base64Url().omitPadding().encode(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
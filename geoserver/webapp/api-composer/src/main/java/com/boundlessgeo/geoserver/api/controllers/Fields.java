@@ -0,0 +1,129 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.boundlessgeo.geoserver.json.JSONObj;
+
+/**
+ * Properties requested with the "fields" parameter, as a comma separated list of property names
+ * such as <tt>fields=name,title,modified</tt>. Properties of nested items are requested with a
+ * dotted path, such as <tt>fields=title,layers.title</tt> for the layers of a map.
+ * <p>
+ * Without the parameter every property is encoded. With it, IO skips computing the sections that
+ * were not asked for (schema, proj, bbox, style, resource, ...) and drops the rest of the
+ * unrequested properties. The name and workspace are always kept, to identify the item.
+ * </p>
+ */
+public class Fields {
+
+    /** All properties, used when no fields are requested */
+    public static final Fields ALL = new Fields(null);
+
+    /** Properties kept whatever is requested */
+    static final List<String> ALWAYS = Arrays.asList("name", "workspace");
+
+    /** The requested properties, or null for all */
+    final Set<String> names;
+
+    Fields(Set<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * Parses the "fields" parameter.
+     *
+     * @param fields Comma separated property names, "*", or null
+     * @return The requested fields, {@link #ALL} if fields is null, empty or "*"
+     */
+    public static Fields parse(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return ALL;
+        }
+        Set<String> names = new LinkedHashSet<String>(ALWAYS);
+        for (String name : fields.split(",")) {
+            name = name.trim();
+            if ("*".equals(name)) {
+                return ALL;
+            }
+            if (!name.isEmpty()) {
+                names.add(name);
+                // the parents of nested properties are requested too
+                for (int i = name.indexOf('.'); i > 0; i = name.indexOf('.', i+1)) {
+                    names.add(name.substring(0, i));
+                }
+            }
+        }
+        return new Fields(names);
+    }
+
+    /**
+     * Determines if a property was requested.
+     */
+    public boolean has(String name) {
+        return names == null || names.contains(name);
+    }
+
+    /**
+     * Determines if any of the properties was requested.
+     */
+    public boolean any(String... names) {
+        for (String name : names) {
+            if (has(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The requested properties of the items nested in a property. All properties of the nested
+     * items are requested if none were listed, such as with <tt>fields=layers</tt>.
+     */
+    public Fields nested(String name) {
+        if (names == null) {
+            return ALL;
+        }
+        String prefix = name + ".";
+        Set<String> nested = new LinkedHashSet<String>(ALWAYS);
+        boolean listed = false;
+        for (String n : names) {
+            if (n.startsWith(prefix)) {
+                nested.add(n.substring(prefix.length()));
+                listed = true;
+            }
+        }
+        return listed ? new Fields(nested) : ALL;
+    }
+
+    /**
+     * Removes the properties that were not requested.
+     *
+     * @return The object passed in.
+     */
+    public JSONObj select(JSONObj obj) {
+        if (names != null) {
+            List<String> keys = new ArrayList<String>();
+            for (String key : obj.keys()) {
+                keys.add(key);
+            }
+            for (String key : keys) {
+                if (!names.contains(key)) {
+                    obj.remove(key);
+                }
+            }
+        }
+        return obj;
+    }
+
+    @Override
+    public String toString() {
+        return names == null ? "*" : names.toString();
+    }
+}
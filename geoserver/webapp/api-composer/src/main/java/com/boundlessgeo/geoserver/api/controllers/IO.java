@@ -76,6 +76,8 @@ import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.ocpsoft.pretty.time.PrettyTime;
 import org.opengis.coverage.grid.Format;
 import org.opengis.coverage.grid.GridCoverageReader;
@@ -416,14 +418,28 @@ public class IO {
      * @return The encoded object
      */
     public static JSONObj layerDetails(JSONObj obj, PublishedInfo layer, HttpServletRequest req) {
+        return layerDetails(obj, layer, req, Fields.ALL);
+    }
+    
+    /**
+     * Encodes the requested fields of a layer or layer group description within the specified
+     * object.
+     * 
+     * @param obj The object to encode within.
+     * @param layer The layer or layer group to encode
+     * @param req The HTTP request
+     * @param fields The properties to encode
+     * @return The encoded object
+     */
+    public static JSONObj layerDetails(JSONObj obj, PublishedInfo layer, HttpServletRequest req, Fields fields) {
         if( layer == null ){
             return obj;
         }
         if( layer instanceof LayerInfo){
-            return layerDetails( obj, (LayerInfo) layer, req );
+            return layerDetails( obj, (LayerInfo) layer, req, fields );
         }
         else if ( layer instanceof LayerGroupInfo ){
-            return layerDetails( obj, (LayerGroupInfo) layer, req );
+            return layerDetails( obj, (LayerGroupInfo) layer, req, fields );
         }
         else {
             return obj;
@@ -436,6 +452,15 @@ public class IO {
      * @return The object passed in.
      */
     public static JSONObj layerDetails(JSONObj obj, LayerGroupInfo group, HttpServletRequest req) {
+        return layerDetails(obj, group, req, Fields.ALL);
+    }
+    
+    /**
+     * Encodes the requested fields of a layer group within the specified object.
+     *
+     * @return The object passed in.
+     */
+    public static JSONObj layerDetails(JSONObj obj, LayerGroupInfo group, HttpServletRequest req, Fields fields) {
         String wsName = group.getWorkspace().getName();
         obj.put("name", group.getName())
            .put("workspace", wsName)
@@ -445,19 +470,35 @@ public class IO {
            .put("type", "map" )
            .put("group", group.getMode().name());
         
-        proj(obj.putObject("proj"), group.getBounds().getCoordinateReferenceSystem(), null);
-        bbox(obj.putObject("bbox"), group);
-        bounds(obj.putObject("projectionExtent"), CRS.getEnvelope(group.getBounds().getCoordinateReferenceSystem()));
+        if (fields.has("proj")) {
+            proj(obj.putObject("proj"), group.getBounds().getCoordinateReferenceSystem(), null);
+        }
+        if (fields.has("bbox")) {
+            bbox(obj.putObject("bbox"), group);
+        }
+        if (fields.has("projectionExtent")) {
+            bounds(obj.putObject("projectionExtent"), CRS.getEnvelope(group.getBounds().getCoordinateReferenceSystem()));
+        }
         
-        return obj;
+        return fields.select(obj);
     }
     /**
      * Encodes a layer within the specified object.
      *
      * @return The object passed in.
      */
-    @SuppressWarnings("unchecked")
     public static JSONObj layerDetails(JSONObj obj, LayerInfo layer, HttpServletRequest req) {
+        return layerDetails(obj, layer, req, Fields.ALL);
+    }
+    
+    /**
+     * Encodes the requested fields of a layer within the specified object. Sections that are not
+     * requested are not computed.
+     *
+     * @return The object passed in.
+     */
+    @SuppressWarnings("unchecked")
+    public static JSONObj layerDetails(JSONObj obj, LayerInfo layer, HttpServletRequest req, Fields fields) {
         String wsName = layer.getResource().getNamespace().getPrefix();
         ResourceInfo r = layer.getResource();
         Type type = Type.of(r); //type(r);
@@ -469,7 +510,7 @@ public class IO {
                 .put("type", type.toString());
         
         StoreInfo store = r.getStore();
-        if( req != null ){
+        if( req != null && fields.has("resource") ){
             obj.putObject("resource")
                 .put("name",r.getName())
                 .put("store",store.getName())
@@ -479,43 +520,46 @@ public class IO {
                 );
         }
         
-        StyleInfo style = layer.getDefaultStyle();
-        if (style == null) {
-            throw new NotFoundException(String.format("Layer %s:%s has no default style", wsName, layer.getName()));
+        if (fields.has("style")) {
+            StyleInfo style = layer.getDefaultStyle();
+            if (style == null) {
+                throw new NotFoundException(String.format("Layer %s:%s has no default style", wsName, layer.getName()));
+            }
+            obj.putObject("style")
+                    .put("name", style.getName())
+                    .put("workspace", style.getWorkspace() == null ? null : style.getWorkspace().getName());
         }
-        obj.putObject("style")
-                .put("name", style.getName())
-                .put("workspace", style.getWorkspace() == null ? null : style.getWorkspace().getName());
         
-        JSONArr keywords = new JSONArr();
-        keywords.raw().addAll( r.keywordValues() );
-        obj.put("keywords", keywords);
-        proj(obj.putObject("proj"), r.getCRS(), r.getSRS());
-        bbox( obj.putObject("bbox"), r );
-        IO.bounds(obj.putObject("projectionExtent"), CRS.getEnvelope(r.getCRS()));
+        if (fields.has("keywords")) {
+            JSONArr keywords = new JSONArr();
+            keywords.raw().addAll( r.keywordValues() );
+            obj.put("keywords", keywords);
+        }
         
-        if (r instanceof FeatureTypeInfo) {
-            FeatureTypeInfo ft = (FeatureTypeInfo) r;
-            FeatureType schema;
-            try {
-                schema = ft.getFeatureType();
-                obj.put("geometry", geometry(layer));
-                schema(obj.putObject("schema"), schema, true );
-            } catch (IOException e) {
-                LOG.log(Level.WARNING, "Error looking up schema "+ft.getNativeName(), e);
-            }
+        // the projection and schema are slow to encode, see LayerSummaryCache
+        LayerSummaryCache.Summary summary = null;
+        if (fields.any("proj", "projectionExtent", "geometry", "schema")) {
+            summary = LayerSummaryCache.summary(layer);
+        }
+        if (fields.has("proj")) {
+            copy(obj.putObject("proj"), summary.proj);
+        }
+        if (fields.has("bbox")) {
+            bbox( obj.putObject("bbox"), r );
+        }
+        if (fields.has("projectionExtent")) {
+            copy(obj.putObject("projectionExtent"), summary.projectionExtent);
         }
-        else if( r instanceof CoverageInfo) {
-            obj.put("geometry", geometry(layer));
-            schemaGrid(obj.putObject("schema"), ((CoverageInfo)r), true );
+        if (fields.has("geometry") && summary.geometry != null) {
+            obj.put("geometry", summary.geometry);
         }
-        else if( r instanceof WMSLayerInfo) {
-            obj.put("geometry", geometry(layer));
+        if (fields.has("schema") && summary.schema != null) {
+            copy(obj.putObject("schema"), summary.schema);
         }
         if (layer.getMetadata().containsKey("timeout")) {
             obj.put("timeout", layer.getMetadata().get("timeout"));
         }
-        return metadata(obj, layer);
+        return fields.select(metadata(obj, layer));
     }
 
     /**
@@ -542,31 +586,58 @@ public class IO {
      * @return The geometry class name of a vector layer; or "raster", "layer", or "none"
      */
     static String geometry(LayerInfo layer) {
-        ResourceInfo r = layer.getResource();
-        
-        if (r instanceof FeatureTypeInfo) {
-            GeometryDescriptor gd = null;
-            FeatureTypeInfo ft = (FeatureTypeInfo)r;
-            try {
-                FeatureType schema = ft.getFeatureType();
-                gd = schema.getGeometryDescriptor();
-            } catch (IOException e) {
-                LOG.log(Level.WARNING, "Error looking up schema "+ft.getNativeName(), e);
-            }
-            if (gd == null) {
-                return "none";
+        String geometry = LayerSummaryCache.summary(layer).geometry();
+        return geometry != null ? geometry : "none";
+    }
+    
+    /**
+     * Provides a text description of the geometry of a feature type
+     * @return The geometry class name, or "none"
+     */
+    static String geometry(FeatureType schema) {
+        GeometryDescriptor gd = schema.getGeometryDescriptor();
+        if (gd == null) {
+            return "none";
+        }
+        @SuppressWarnings("unchecked")
+        Geometries geomType = Geometries.getForBinding((Class<? extends Geometry>) gd.getType().getBinding());
+        return geomType.getName();
+    }
+    
+    /**
+     * Copies the properties of a shared object into an object of a response. Nested objects and 
+     * arrays are copied too, so the response can be changed without changing the shared object.
+     */
+    static JSONObj copy(JSONObj obj, JSONObj from) {
+        for (String key : from.keys()) {
+            obj.put(key, copy(from.get(key)));
+        }
+        return obj;
+    }
+    
+    @SuppressWarnings("unchecked")
+    static Object copy(Object value) {
+        if (value instanceof JSONObj) {
+            return copy(new JSONObj(), (JSONObj) value);
+        }
+        if (value instanceof JSONArr) {
+            JSONArr arr = new JSONArr();
+            for (Object item : ((JSONArr) value).raw()) {
+                arr.add(copy(item));
             }
-            @SuppressWarnings("unchecked")
-            Geometries geomType = Geometries.getForBinding((Class<? extends Geometry>) gd.getType().getBinding());
-            return geomType.getName();
+            return arr;
         }
-        if (r instanceof CoverageInfo) {
-            return "raster";
+        if (value instanceof JSONObject) {
+            return copy(new JSONObj(), new JSONObj((JSONObject) value)).raw();
         }
-        if (r instanceof WMSLayerInfo) {
-           return "layer";
+        if (value instanceof JSONArray) {
+            JSONArray arr = new JSONArray();
+            for (Object item : (JSONArray) value) {
+                arr.add(copy(item));
+            }
+            return arr;
         }
-        return "none";
+        return value;
     }
     
     /**
@@ -615,6 +686,10 @@ public class IO {
                 bounds(bbox.putObject("lonlat"), r.getLatLonBoundingBox());
             }
         }
+        if (Metadata.boundsEstimated(r)) {
+            //actual bounds are still being computed
+            bbox.put("estimated", true);
+        }
         return bbox;
     }
     
@@ -796,6 +871,21 @@ public class IO {
      * @return The encoded object
      */
     public static JSONObj store(JSONObj obj, StoreInfo store, HttpServletRequest req, GeoServer geoServer) {       
+        return store(obj, store, req, geoServer, Fields.ALL);
+    }
+
+    /**
+     * Encodes the requested fields of a store within the specified object. The store type, which
+     * looks up the store factory, and the source are only computed when requested.
+     *
+     * @param obj The object to encode within
+     * @param store The store
+     * @param req HTTP request
+     * @param geoServer GeoServer instance
+     * @param fields The properties to encode
+     * @return The encoded object
+     */
+    public static JSONObj store(JSONObj obj, StoreInfo store, HttpServletRequest req, GeoServer geoServer, Fields fields) {
         String name = store.getName();
 
         obj.put("name", name)
@@ -805,25 +895,26 @@ public class IO {
             .put("format", store.getType())
             .put("url", url(req,"/stores/%s/%s",store.getWorkspace().getName(), store.getName()) );
         
-        String source = source(store, geoServer);
+        String source = fields.any("source", "type") ? source(store, geoServer) : null;
         
-        if (store instanceof DataStoreInfo) {
-            try {
-                obj.put("type", Kind.of(geoServer.getCatalog().getResourcePool()
-                        .getDataStoreFactory((DataStoreInfo)store)).name());
-            } catch (IOException e) {
-                LOG.log(Level.WARNING,"Could not get data store factory for store "+source
-                        +", generating type from connection parameters." , e);
+        if (fields.has("type")) {
+            if (store instanceof DataStoreInfo) {
+                try {
+                    obj.put("type", Kind.of(geoServer.getCatalog().getResourcePool()
+                            .getDataStoreFactory((DataStoreInfo)store)).name());
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING,"Could not get data store factory for store "+source
+                            +", generating type from connection parameters." , e);
+                    obj.put("type", Kind.of(store).name());
+                }
+            } else {
                 obj.put("type", Kind.of(store).name());
             }
-        } else {
-            obj.put("type", Kind.of(store).name());
-            
         }
         obj.put("source", source ).put("kind", Type.of(store).name()); 
           
 
-        return metadata(obj, store);
+        return fields.select(metadata(obj, store));
     }
 
     /**
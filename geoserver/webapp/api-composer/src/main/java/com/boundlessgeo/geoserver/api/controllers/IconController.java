@@ -23,7 +23,6 @@ import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.CatalogVisitorAdapter;
@@ -232,15 +231,11 @@ public class IconController extends ApiController {
         }
         String mimeType = ICON_FORMATS.get(ext.toLowerCase());
 
-        try (
-            InputStream in = resource.in();
-        ) {
-            byte[] bytes = IOUtils.toByteArray(in);
-            final HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(mimeType));
-            headers.setLastModified(resource.lastmodified());
-            return new HttpEntity(bytes, headers);
-        }
+        //Streamed by ResourceMessageConverter
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(mimeType));
+        headers.setLastModified(resource.lastmodified());
+        return new HttpEntity<Resource>(resource, headers);
     }
     @RequestMapping(value = "/{icon:.+}", method = RequestMethod.DELETE)
     @ResponseStatus(value = HttpStatus.NO_CONTENT)
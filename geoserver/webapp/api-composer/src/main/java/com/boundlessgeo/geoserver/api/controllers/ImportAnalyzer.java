@@ -0,0 +1,222 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.Geometries;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.boundlessgeo.geoserver.catalog.StoreConnectionIndex;
+import com.boundlessgeo.geoserver.json.JSONObj;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Introspects data sources ahead of an import, without creating anything in the catalog.
+ * <p>
+ * Each table of a data source is described by its schema, CRS and bounds. Connecting to a remote
+ * database and reading this is slow, so the result is cached by the fingerprint of the connection
+ * (see {@link StoreConnectionIndex#fingerprint(org.geotools.data.DataAccessFactory, Map)});
+ * repeated requests for the same connection (such as the client going back and forth while
+ * selecting tables) are answered from the cache until it expires.
+ * </p>
+ * <p>
+ * The fingerprint leaves passwords out, so a cached analysis is only returned for the very same
+ * connection parameters, compared by a hash salted per analyzer that is never handed out.
+ * </p>
+ */
+public class ImportAnalyzer {
+
+    static final Logger LOG = Logging.getLogger(ImportAnalyzer.class);
+
+    final Cache<String, Analysis> cache;
+
+    /** Salt of the connection hashes, so they cannot be checked against guessed passwords */
+    final byte[] salt = new byte[16];
+
+    /**
+     * @param ttl Time (in minutes) an analysis is kept for
+     * @param maxEntries Maximum number of analyses kept
+     */
+    public ImportAnalyzer(long ttl, int maxEntries) {
+        cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, TimeUnit.MINUTES)
+            .maximumSize(maxEntries)
+            .recordStats()
+            .build();
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * The result of introspecting a data source.
+     */
+    public static class Analysis {
+        final String fingerprint;
+        final String connection;
+        final Date created = new Date();
+        final List<JSONObj> tables;
+
+        Analysis(String fingerprint, String connection, List<JSONObj> tables) {
+            this.fingerprint = fingerprint;
+            this.connection = connection;
+            this.tables = Collections.unmodifiableList(tables);
+        }
+
+        public String fingerprint() {
+            return fingerprint;
+        }
+
+        public Date created() {
+            return created;
+        }
+
+        /** The encoded tables, shared between requests and not to be modified */
+        public List<JSONObj> tables() {
+            return tables;
+        }
+    }
+
+    /**
+     * Computes a salted hash of all the connection parameters, passwords included, independent of
+     * their order and of how their values are typed.
+     */
+    String connection(Map<String, ? extends Serializable> params) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putBytes(salt);
+        for (Map.Entry<String, ? extends Serializable> e : new TreeMap<String, Serializable>(params).entrySet()) {
+            if (e.getValue() != null) {
+                hasher.putByte((byte) 0)
+                    .putString(e.getKey(), StandardCharsets.UTF_8)
+                    .putByte((byte) '=')
+                    .putString(e.getValue().toString().trim(), StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the analysis of a data source, introspecting it if it has not been recently.
+     * Concurrent requests for the same data source wait for a single introspection.
+     *
+     * @param factory Factory used to connect to the data source
+     * @param params The connection parameters
+     * @param refresh Ignore any cached analysis
+     */
+    public Analysis analyze(final DataStoreFactorySpi factory, final Map<String, Serializable> params,
+            boolean refresh) throws IOException {
+        final String fingerprint = StoreConnectionIndex.fingerprint(factory, params);
+        final String connection = connection(params);
+        if (refresh) {
+            cache.invalidate(fingerprint);
+        }
+        try {
+            Analysis analysis = cache.get(fingerprint, () -> introspect(fingerprint, connection, factory, params));
+            if (!analysis.connection.equals(connection)) {
+                // same data, reached with other credentials or options
+                analysis = introspect(fingerprint, connection, factory, params);
+                cache.put(fingerprint, analysis);
+            }
+            return analysis;
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException("Unable to analyze data source", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the cached analysis of a data source, or null.
+     */
+    public Analysis cached(DataStoreFactorySpi factory, Map<String, Serializable> params) {
+        Analysis analysis = cache.getIfPresent(StoreConnectionIndex.fingerprint(factory, params));
+        return analysis != null && analysis.connection.equals(connection(params)) ? analysis : null;
+    }
+
+    Analysis introspect(String fingerprint, String connection, DataStoreFactorySpi factory, Map<String, Serializable> params)
+            throws IOException {
+        DataStore store = factory.createDataStore(params);
+        if (store == null) {
+            throw new IOException("Unable to connect to data source");
+        }
+        try {
+            List<JSONObj> tables = new ArrayList<JSONObj>();
+            int i = 0;
+            for (String typeName : store.getTypeNames()) {
+                tables.add(table(store, typeName, i++));
+            }
+            return new Analysis(fingerprint, connection, tables);
+        } finally {
+            store.dispose();
+        }
+    }
+
+    /**
+     * Describes a table in the same form as an import task, so the tables can be presented for
+     * selection before the import is created.
+     */
+    JSONObj table(DataStore store, String typeName, int index) {
+        JSONObj obj = new JSONObj()
+            .put("task", index)
+            .put("name", typeName)
+            .put("type", "table");
+        try {
+            SimpleFeatureType schema = store.getSchema(typeName);
+            GeometryDescriptor gd = schema.getGeometryDescriptor();
+            if (gd == null) {
+                obj.put("geometry", "none");
+            } else {
+                @SuppressWarnings("unchecked")
+                Geometries geomType = Geometries.getForBinding((Class<? extends Geometry>) gd.getType().getBinding());
+                obj.put("geometry", geomType == null ? "geometry" : geomType.getName());
+                if (gd.getCoordinateReferenceSystem() != null) {
+                    IO.proj(obj.putObject("proj"), gd.getCoordinateReferenceSystem(), null);
+                } else {
+                    obj.put("problem", "NO_CRS");
+                }
+                SimpleFeatureSource source = store.getFeatureSource(typeName);
+                ReferencedEnvelope bounds = source.getBounds();
+                if (bounds == null || bounds.isNull()) {
+                    if (!obj.has("problem")) {
+                        obj.put("problem", "NO_BOUNDS");
+                    }
+                } else {
+                    IO.bounds(obj.putObject("bbox"), bounds);
+                }
+            }
+            IO.schema(obj.putObject("schema"), schema, false);
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Unable to analyze "+typeName, e);
+            IO.error(obj.putObject("error"), e);
+        }
+        return obj;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -4,11 +4,20 @@
 package com.boundlessgeo.geoserver.api.controllers;
 
 import com.boundlessgeo.geoserver.api.exceptions.BadRequestException;
+import com.boundlessgeo.geoserver.catalog.StoreConnectionIndex;
+import com.boundlessgeo.geoserver.catalog.UploadSpace;
+import com.boundlessgeo.geoserver.api.exceptions.IncompleteRequestException;
 import com.boundlessgeo.geoserver.api.exceptions.NotFoundException;
+import com.boundlessgeo.geoserver.api.exceptions.PayloadTooLargeException;
+import com.boundlessgeo.geoserver.api.exceptions.ServiceUnavailableException;
 import com.boundlessgeo.geoserver.json.JSONArr;
 import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.util.ChecksumInputStream;
+import com.boundlessgeo.geoserver.util.FairScheduler;
+import com.boundlessgeo.geoserver.util.FileRelocation;
 import com.boundlessgeo.geoserver.util.Hasher;
 import com.boundlessgeo.geoserver.util.NameUtil;
+import com.boundlessgeo.geoserver.util.PropertyUtil;
 import com.google.common.collect.Maps;
 
 import org.apache.commons.fileupload.FileItemIterator;
@@ -41,7 +50,6 @@ import org.geoserver.importer.ImportTask.State;
 import org.geoserver.importer.Importer;
 import org.geoserver.importer.SpatialFile;
 import org.geoserver.importer.Table;
-import org.geoserver.importer.job.Task;
 import org.geoserver.platform.ContextLoadedEvent;
 import org.geoserver.platform.resource.Paths;
 import org.geoserver.ows.util.ResponseUtils;
@@ -53,49 +61,115 @@ import org.geoserver.ysld.YsldHandler;
 import org.geotools.data.DataAccessFactory.Param;
 import org.geotools.data.DataStoreFactorySpi;
 import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.vfny.geoserver.util.DataStoreUtils;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.boundlessgeo.geoserver.api.controllers.ApiController.API_PATH;
 
 @Controller("apiImportController")
 @RequestMapping(API_PATH+"/imports")
-public class ImportController extends ApiController {
+public class ImportController extends ApiController implements DisposableBean {
 
     Importer importer;
     Hasher hasher;
     
-    private Long id = 0L;
-    private Map<Long, ImportHelper> imports = new HashMap<Long, ImportHelper>();
+    /** Directory under the upload root of a workspace that uploads are written to */
+    static final String STAGING_DIR = ".uploads";
+    
+    /** Default time (in minutes) finished imports are kept for */
+    static final int DEFAULT_IMPORT_TTL = 24 * 60;
+    
+    /** Default number of imports run at once */
+    static final int DEFAULT_IMPORT_THREADS = 4;
+    
+    /** Default number of imports run at once for the same workspace */
+    static final int DEFAULT_IMPORT_WORKSPACE_THREADS = 2;
+    
+    /** Default number of imports waiting to run */
+    static final int DEFAULT_IMPORT_QUEUE = 1000;
+    
+    /** Content type of Server-Sent Events */
+    static final String EVENT_STREAM = "text/event-stream";
+    
+    /** Time (in milliseconds) between checks of an import followed through events */
+    static final long EVENT_POLL_INTERVAL = 1000;
+    
+    /** Time (in milliseconds) after which an idle event stream is sent a comment */
+    static final long EVENT_KEEPALIVE_INTERVAL = 15000;
+    
+    /** Default time (in minutes) data source analyses are cached for */
+    static final int DEFAULT_ANALYSIS_TTL = 10;
+    
+    /** Stores by connection, to find existing stores */
+    @Autowired(required = false)
+    StoreConnectionIndex storeIndex;
+    
+    /** Counts the space used by uploads */
+    @Autowired(required = false)
+    UploadSpace space;
+    
+    /** Caches introspected data sources */
+    final ImportAnalyzer analyzer;
+    
+    /** Runs imports, shared fairly between workspaces */
+    final FairScheduler<String> scheduler;
+    
+    /** Import jobs, created on first use */
+    private ImportRegistry<ImportHelper> imports;
+    
+    /** Resumable uploads in progress, by id */
+    final ConcurrentMap<String, UploadSession> uploads = new ConcurrentHashMap<String, UploadSession>();
+    
+    /** Whether the uploads saved before a restart have been added to {@link #uploads} */
+    volatile boolean uploadsRestored;
+    
+    static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
     
     private static Logger LOG = Logging.getLogger(ImportController.class);
 
@@ -106,14 +180,164 @@ public class ImportController extends ApiController {
         this.importer = (Importer) ctx.getBean("composer-importer");
         this.importer.setStyleHandler(new YsldHandler());
         this.hasher = new Hasher(7);
+        this.scheduler = new FairScheduler<String>("composer-import",
+            PropertyUtil.property("COMPOSER_IMPORT_THREADS", DEFAULT_IMPORT_THREADS),
+            PropertyUtil.property("COMPOSER_IMPORT_WORKSPACE_THREADS", DEFAULT_IMPORT_WORKSPACE_THREADS),
+            PropertyUtil.property("COMPOSER_IMPORT_QUEUE", DEFAULT_IMPORT_QUEUE));
+        this.analyzer = new ImportAnalyzer(
+            PropertyUtil.property("COMPOSER_ANALYSIS_TTL", DEFAULT_ANALYSIS_TTL), 100);
+    }
+    
+    /**
+     * The import job registry, journaled to composer/imports.journal in the data directory. Jobs
+     * that are not running are removed after COMPOSER_IMPORT_TTL minutes (default 1440).
+     */
+    synchronized ImportRegistry<ImportHelper> imports() {
+        if (imports == null) {
+            File journal = null;
+            try {
+                journal = new File(geoServer.getCatalog().getResourceLoader().findOrCreateDirectory("composer"), 
+                        "imports.journal");
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to create import journal, imports will not survive a restart", e);
+            }
+            long ttl = PropertyUtil.property("COMPOSER_IMPORT_TTL", DEFAULT_IMPORT_TTL);
+            imports = new ImportRegistry<ImportHelper>(journal, TimeUnit.MINUTES.toMillis(ttl));
+        }
+        return imports;
+    }
+    
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdown();
+        if (imports != null) {
+            imports.close();
+        }
+    }
+    
+    /**
+     * API endpoint to list the imports of a workspace, most recent first.
+     * @param wsName The workspace
+     * @param page Page of the list
+     * @param count Number of items per page
+     * @return The page of imports, each with its id, state, and created and modified dates.
+     */
+    @RequestMapping(value = "/{wsName:.+}/jobs", method = RequestMethod.GET)
+    public @ResponseBody JSONObj list(@PathVariable String wsName, 
+            @RequestParam(value="page", required=false) Integer page,
+            @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) Integer count) {
+        WorkspaceInfo ws = findWorkspace(wsName, geoServer.getCatalog());
+        expire();
+        
+        ImportRegistry<ImportHelper> registry = imports();
+        int total = registry.count(ws.getName());
+        Integer offset = offset(page, count);
+        
+        JSONObj obj = new JSONObj();
+        obj.put("total", total);
+        obj.put("page", page != null ? page : 0);
+        obj.put("count", Math.min(total, count));
+        
+        JSONArr arr = obj.putArray("imports");
+        for (ImportRegistry.Job<ImportHelper> job : registry.list(ws.getName(), offset == null ? 0 : offset, count)) {
+            JSONObj imp = arr.addObject()
+               .put("id", job.id())
+               .put("state", job.state());
+            IO.date(imp.putObject("created"), new Date(job.created()));
+            IO.date(imp.putObject("modified"), new Date(job.updated()));
+        }
+        return obj;
+    }
+    
+    /**
+     * Removes imports that have been idle for longer than the time-to-live, along with their 
+     * importer contexts, and resumable uploads that have been idle for as long.
+     */
+    void expire() {
+        long cutoff = System.currentTimeMillis() - imports().ttl;
+        if (!uploadsRestored) {
+            restoreUploads();
+        }
+        for (UploadSession session : uploads.values()) {
+            if (session.updated < cutoff && uploads.remove(session.id(), session)) {
+                session.delete();
+            }
+        }
+        for (ImportRegistry.Job<ImportHelper> job : imports().expire()) {
+            ImportHelper helper = job.helper();
+            ImportContext context = helper != null ? helper.getContext() : null;
+            if (context == null && job.context() != null) {
+                context = importer.getContext(job.context());
+            }
+            if (context != null) {
+                //Remove whatever was uploaded but not imported
+                if (context.getData() instanceof FileData) {
+                    File uploadDir = ((FileData) context.getData()).getFile();
+                    if (uploadDir != null && uploadDir.getParentFile() != null 
+                            && STAGING_DIR.equals(uploadDir.getParentFile().getName())) {
+                        if (space != null && uploadDir.exists()) {
+                            space.add(uploadDir, -FileUtils.sizeOf(uploadDir));
+                        }
+                        FileUtils.deleteQuietly(uploadDir);
+                    }
+                }
+                try {
+                    importer.delete(context);
+                } catch (Exception e) {
+                    LOG.log(Level.FINE, "Unable to remove import context "+context.getId(), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Adds the uploads saved in the staging directories before a restart, so that those never 
+     * resumed are expired like any other, rather than leaving their preallocated files behind.
+     */
+    synchronized void restoreUploads() {
+        if (uploadsRestored) {
+            return;
+        }
+        Catalog catalog = geoServer.getCatalog();
+        for (WorkspaceInfo ws : catalog.getWorkspaces()) {
+            File staging = new File(uploadRoot(catalog, ws), STAGING_DIR);
+            if (staging.isDirectory()) {
+                //workspaces may share an upload root, so an upload may be listed more than once
+                for (UploadSession session : UploadSession.list(staging)) {
+                    uploads.putIfAbsent(session.id(), session);
+                }
+            }
+        }
+        uploadsRestored = true;
+    }
+    
+    /**
+     * The helper of an import job. Jobs restored from the journal get a new helper for their 
+     * importer context.
+     * 
+     * @return The helper, or null if the import context no longer exists.
+     */
+    ImportHelper helper(ImportRegistry.Job<ImportHelper> job) {
+        synchronized (job) {
+            if (job.helper == null && job.context() != null) {
+                ImportContext context = importer.getContext(job.context());
+                if (context != null) {
+                    job.helper = new ImportHelper(job, context);
+                }
+            }
+            return job.helper;
+        }
     }
     
     /**
      * API endpoint to get space available info when uploading files
      * 
      * TODO: If a dedicated file/resource API controller gets created, migrate this method to there
-     * TODO: If/when workspace-specific upload limitations are implemented, update this to be 
-     *       workspace-specific
+     * 
+     * Uploads are written straight to the upload root, so spaceAvailable is the usable space there.
+     * spaceUsed is the space used under the upload root, left out until it has been counted. If 
+     * the workspace has an upload quota it is given as "quota", and spaceAvailable is limited to 
+     * what is left of it.
      * @return A JSON object containing information about the space available in the workspace
      * @throws IOException 
      */
@@ -129,45 +353,76 @@ public class ImportController extends ApiController {
         //Temp dir
         File tmpDir = new File(System.getProperty("java.io.tmpdir"));
         
-        //Global REST upload dir
-        String externalRoot = null;
-        if (externalRoot == null) {
-            externalRoot = RESTUtils.extractMapItem(RESTUtils.loadMapfromWorkSpace(
-                    ws == null ? null : ws.getName(), catalog), RESTUtils.ROOT_KEY);
-        }
-        if (externalRoot == null) {
-            externalRoot = RESTUtils.extractMapItem(RESTUtils.loadMapFromGlobal(), RESTUtils.ROOT_KEY);
-        }
-        if (externalRoot == null) {
-            externalRoot = Paths.toFile(catalog.getResourceLoader().getBaseDirectory(), 
-                    Paths.path("data", ws == null ? null : ws.getName())).getAbsolutePath();
-        }
-        
-        File destDir = new File(externalRoot);
+        File destDir = uploadRoot(catalog, ws);
         
         long freeSpace = 0;
         
         if (tmpDir.exists()) {
-            freeSpace = tmpDir.getUsableSpace();
             obj.put("tmpDir", tmpDir.getPath());
-            obj.put("tmpSpace", freeSpace);
+            obj.put("tmpSpace", tmpDir.getUsableSpace());
         }
         if (destDir.exists()) {
             freeSpace = destDir.getUsableSpace();
             obj.put("uploadDir", destDir.getPath());
             obj.put("uploadSpace", freeSpace);
             
-            obj.put("spaceUsed", FileUtils.sizeOfDirectory(destDir));
+            if (space == null) {
+                obj.put("spaceUsed", FileUtils.sizeOfDirectory(destDir));
+            } else if (space.used(destDir) >= 0) {
+                obj.put("spaceUsed", space.used(destDir));
+            }
         }
-        //In case the destDir is on a different filesystem than the tmpDir, take the min of both
-        if (tmpDir.exists() && destDir.exists()) {
-            freeSpace = Math.min(tmpDir.getUsableSpace(), destDir.getUsableSpace());
+        if (space != null && space.quota(ws) > 0) {
+            obj.put("quota", space.quota(ws));
+            freeSpace = Math.min(freeSpace, space.remaining(ws, destDir));
         }
         obj.put("spaceAvailable", freeSpace);
         
         return obj;
     }
 
+    /**
+     * Root directory of the files uploaded to a workspace: the REST upload root of the workspace 
+     * or the global REST upload root if set, otherwise the data directory of the workspace.
+     */
+    static File uploadRoot(Catalog catalog, WorkspaceInfo ws) {
+        String externalRoot = RESTUtils.extractMapItem(RESTUtils.loadMapfromWorkSpace(
+                ws == null ? null : ws.getName(), catalog), RESTUtils.ROOT_KEY);
+        if (externalRoot == null) {
+            externalRoot = RESTUtils.extractMapItem(RESTUtils.loadMapFromGlobal(), RESTUtils.ROOT_KEY);
+        }
+        if (externalRoot == null) {
+            externalRoot = Paths.toFile(catalog.getResourceLoader().getBaseDirectory(), 
+                    Paths.path("data", ws == null ? null : ws.getName())).getAbsolutePath();
+        }
+        return new File(externalRoot);
+    }
+    
+    /**
+     * Directory files are uploaded to before they are imported. It is kept under the upload root 
+     * of the workspace, so that imported files are then moved to their store directory on the 
+     * same filesystem, rather than copied.
+     */
+    static File stagingDir(Catalog catalog, WorkspaceInfo ws) throws IOException {
+        File staging = new File(uploadRoot(catalog, ws), STAGING_DIR);
+        if (!staging.exists() && !staging.mkdirs()) {
+            throw new IOException("Unable to create upload directory "+staging.getPath());
+        }
+        return staging;
+    }
+    
+    /**
+     * Bytes that can be uploaded to the staging directory of a workspace: the usable space of the 
+     * filesystem, within the upload quota of the workspace.
+     */
+    long available(WorkspaceInfo ws, File staging) {
+        long available = staging.getUsableSpace();
+        if (space != null) {
+            available = Math.min(available, space.remaining(ws, staging.getParentFile()));
+        }
+        return available;
+    }
+    
     /**
      * API endpoint to import a file or list of files as a new layer or layers into GeoServer. 
      * Files are provided as MediaType.MULTIPART_FORM_DATA_VALUE in the request
@@ -187,10 +442,15 @@ public class ImportController extends ApiController {
      * store inGeoServer. 
      * Files are provided as MediaType.MULTIPART_FORM_DATA_VALUE in the request
      * @param wsName The workspace to import the files into
+     * 
+     * Files are streamed straight to disk, under the upload root of the workspace, and rejected 
+     * with a 413 error if they do not fit in the space available there. 
+     * 
      * @param storeName The store to import the layers into. If null, tries to import into a new 
      * store.
      * @param request The HTTP request
      * @return a JSON object describing the result of the import. See {@link #get(String, Long) get}.
+     * Also includes "files", the name, size and SHA-256 checksum of each uploaded file.
      * @throws Exception if the request is invalid, or the file upload fails.
      */
     @RequestMapping(value = "/{wsName:.+}/{storeName:.+}", method = RequestMethod.POST, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -202,37 +462,249 @@ public class ImportController extends ApiController {
         Catalog catalog = geoServer.getCatalog();
         WorkspaceInfo ws = findWorkspace(wsName, catalog);
 
+        // check the upload fits before reading it
+        File staging = stagingDir(catalog, ws);
+        long available = available(ws, staging);
+        if (request.getContentLengthLong() > available) {
+            throw new PayloadTooLargeException("Upload of "+request.getContentLengthLong()
+                +" bytes exceeds the "+available+" bytes available");
+        }
+        
         // get the uploaded files
         FileItemIterator files = doFileUpload(request);
         if (!files.hasNext()) {
             throw new BadRequestException("Request must contain one or more files");
         }
         
-        // create a new temp directory for the uploaded file
-        File uploadDir = Files.createTempDirectory("importFile").toFile();
-        if (!uploadDir.exists()) {
-            throw new RuntimeException("Unable to create directory for file upload");
-        }
-        uploadDir.deleteOnExit();
+        // create a new directory for the uploaded file, on the same filesystem as the store files
+        File uploadDir = Files.createTempDirectory(staging.toPath(), "importFile").toFile();
         
-        // pass off the uploaded file(s) to the importer
+        // pass off the uploaded file(s) to the importer, checksumming them as they are written
         Directory dir = new Directory(uploadDir);
-        while(files.hasNext()) {
-            FileItemStream item = files.next();
-            try (InputStream stream = item.openStream()) {
+        JSONArr uploaded = new JSONArr();
+        long remaining = available;
+        try {
+            while(files.hasNext()) {
+                FileItemStream item = files.next();
                 String name = item.getName();
-                dir.accept(name, stream);
+                ChecksumInputStream stream = new ChecksumInputStream(item.openStream(), remaining);
+                try {
+                    dir.accept(name, stream);
+                } catch (IOException e) {
+                    if (stream.exceeded()) {
+                        throw new PayloadTooLargeException("Upload exceeds the "+available+" bytes available", e);
+                    }
+                    throw e;
+                } finally {
+                    stream.close();
+                }
+                remaining -= stream.count();
+                uploaded.addObject()
+                    .put("name", name)
+                    .put("size", stream.count())
+                    .put("sha256", stream.sha256());
             }
+        } catch (Exception e) {
+            FileUtils.deleteQuietly(uploadDir);
+            throw e;
+        }
+        if (space != null) {
+            space.add(uploadDir, available - remaining);
         }
         
+        JSONObj result = importDirectory(ws, storeName, dir, request);
+        result.put("files", uploaded.raw());
+        return result;
+    }
+    
+    /**
+     * Starts the import of an upload directory into a new store, or into an existing store if 
+     * storeName is given.
+     */
+    JSONObj importDirectory(WorkspaceInfo ws, String storeName, Directory dir, HttpServletRequest request) 
+            throws Exception {
         Long id;
         if (storeName == null) {
             id = importer.createContextAsync(dir, ws, null);
         } else {
-            StoreInfo store = findStore(wsName, storeName, geoServer.getCatalog());
+            StoreInfo store = findStore(ws.getName(), storeName, geoServer.getCatalog());
             id = importer.createContextAsync(dir, ws, store);
         }
-        return get(wsName, createImport(importer.getTask(id)), request);
+        return get(ws.getName(), createImport(ws, importer.getTask(id)), request);
+    }
+    
+    /**
+     * API endpoint to start a resumable upload of a single file, as an alternative to a multipart 
+     * upload for large files. 
+     * 
+     * The request describes the file:
+     * { "name": "usa-merc.tif", "size": 5368709120, "sha256": "..." }
+     * where sha256 is optional. The file is then sent in any number of byte ranges with 
+     * {@link #uploadRange}, and imported with {@link #uploadComplete}.
+     * 
+     * @param wsName The workspace to import the file into
+     * @return The upload, see {@link #upload(UploadSession)}
+     */
+    @RequestMapping(value = "/{wsName:.+}/uploads", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public @ResponseBody JSONObj uploadCreate(@PathVariable String wsName, @RequestBody JSONObj obj) throws Exception {
+        Catalog catalog = geoServer.getCatalog();
+        WorkspaceInfo ws = findWorkspace(wsName, catalog);
+        expire();
+        
+        String name = obj.str("name");
+        Object size = obj.get("size");
+        if (name == null || !(size instanceof Number)) {
+            throw new BadRequestException("Upload requires a 'name' and a 'size'");
+        }
+        File staging = stagingDir(catalog, ws);
+        long available = available(ws, staging);
+        if (((Number) size).longValue() > available) {
+            throw new PayloadTooLargeException("Upload of "+size+" bytes exceeds the "+available+" bytes available");
+        }
+        UploadSession session;
+        try {
+            session = UploadSession.create(staging, ws.getName(), name, ((Number) size).longValue(), obj.str("sha256"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+        uploads.put(session.id(), session);
+        return upload(session);
+    }
+    
+    /**
+     * API endpoint to get the state of a resumable upload, used to find the ranges that still have 
+     * to be sent after an interruption.
+     * @return The upload, see {@link #upload(UploadSession)}
+     */
+    @RequestMapping(value = "/{wsName}/uploads/{id}", method = RequestMethod.GET)
+    public @ResponseBody JSONObj uploadGet(@PathVariable String wsName, @PathVariable String id) throws Exception {
+        return upload(findUpload(wsName, id));
+    }
+    
+    /**
+     * API endpoint to send a byte range of a resumable upload. The range is given by the 
+     * Content-Range header ("bytes 0-1048575/5368709120"), and the bytes are the request body. 
+     * Ranges can be sent in parallel, in any order, and sending a range again is harmless.
+     * 
+     * Only writes into the staging file of the upload, so runs without the configuration lock and 
+     * a slow transfer does not hold up other requests. Completing the upload, which creates the 
+     * import, still takes the lock.
+     * @return The upload, see {@link #upload(UploadSession)}
+     */
+    @Unlocked
+    @RequestMapping(value = "/{wsName}/uploads/{id}", method = RequestMethod.PUT)
+    public @ResponseBody JSONObj uploadRange(@PathVariable String wsName, @PathVariable String id, 
+            HttpServletRequest request) throws Exception {
+        UploadSession session = findUpload(wsName, id);
+        
+        String range = request.getHeader(HttpHeaders.CONTENT_RANGE);
+        Matcher m = range == null ? null : CONTENT_RANGE.matcher(range.trim());
+        if (m == null || !m.matches()) {
+            throw new BadRequestException("Request requires a Content-Range header of the form 'bytes start-end/size'");
+        }
+        long start = Long.parseLong(m.group(1));
+        long end = Long.parseLong(m.group(2)) + 1;
+        if (!"*".equals(m.group(3)) && Long.parseLong(m.group(3)) != session.size()) {
+            throw new BadRequestException("Content-Range size does not match the upload size of "+session.size());
+        }
+        try (InputStream in = request.getInputStream()) {
+            session.write(start, end, in);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+        return upload(session);
+    }
+    
+    /**
+     * API endpoint to complete a resumable upload once every range has been received, and import 
+     * the file. 
+     * @param storeName The store to import the file into. If null, imports into a new store.
+     * @return a JSON object describing the result of the import. See {@link #get(String, Long) get}.
+     */
+    @RequestMapping(value = "/{wsName}/uploads/{id}", method = RequestMethod.POST)
+    public @ResponseBody JSONObj uploadComplete(@PathVariable String wsName, @PathVariable String id, 
+            @RequestParam(value="store", required=false) String storeName, HttpServletRequest request) 
+            throws Exception {
+        WorkspaceInfo ws = findWorkspace(wsName, geoServer.getCatalog());
+        UploadSession session = findUpload(wsName, id);
+        synchronized (session) {
+            if (!uploads.containsKey(id)) {
+                throw new NotFoundException("No such upload: "+id);
+            }
+            if (!session.complete()) {
+                throw new IncompleteRequestException("Upload incomplete, "+session.received()+" of "
+                    +session.size()+" bytes received");
+            }
+            if (!session.verify()) {
+                uploads.remove(id);
+                session.delete();
+                throw new BadRequestException("Upload does not match its sha256 checksum");
+            }
+            uploads.remove(id);
+            session.close();
+        }
+        if (space != null) {
+            space.add(session.dir(), session.size());
+        }
+        Directory dir = new Directory(session.dir());
+        dir.unpack(session.file());
+        return importDirectory(ws, storeName, dir, request);
+    }
+    
+    /**
+     * API endpoint to abandon a resumable upload.
+     */
+    @RequestMapping(value = "/{wsName}/uploads/{id}", method = RequestMethod.DELETE)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void uploadDelete(@PathVariable String wsName, @PathVariable String id) throws Exception {
+        UploadSession session = findUpload(wsName, id);
+        uploads.remove(id);
+        session.delete();
+    }
+    
+    UploadSession findUpload(String wsName, String id) throws IOException {
+        Catalog catalog = geoServer.getCatalog();
+        WorkspaceInfo ws = findWorkspace(wsName, catalog);
+        UploadSession session = uploads.get(id);
+        if (session == null) {
+            //Started before a restart
+            session = UploadSession.load(stagingDir(catalog, ws), id);
+            if (session != null) {
+                UploadSession existing = uploads.putIfAbsent(id, session);
+                session = existing != null ? existing : session;
+            }
+        }
+        if (session == null || !ws.getName().equals(session.workspace())) {
+            throw new NotFoundException("No such upload: "+id);
+        }
+        return session;
+    }
+    
+    /**
+     * A json representation of a resumable upload:
+     * {
+     *   "id": "0b8f3a4e-...", 
+     *   "name": "usa-merc.tif",
+     *   "size": 5368709120,
+     *   "received": 1048576,
+     *   "ranges": [[0, 1048576]],
+     *   "complete": false
+     * }
+     * where ranges are the [start, end) offsets received so far.
+     */
+    JSONObj upload(UploadSession session) {
+        JSONObj obj = new JSONObj()
+            .put("id", session.id())
+            .put("name", session.name())
+            .put("size", session.size())
+            .put("received", session.received())
+            .put("complete", session.complete());
+        JSONArr ranges = obj.putArray("ranges");
+        for (long[] range : session.ranges()) {
+            ranges.add(new JSONArr().add(range[0]).add(range[1]));
+        }
+        return obj;
     }
     
     public static File uploadDir(Catalog catalog, WorkspaceInfo ws, StoreInfo store) throws IOException {
@@ -296,6 +768,7 @@ public class ImportController extends ApiController {
         File destDir;
         FileData destData;
         File destFile;
+        FileRelocation relocation = new FileRelocation();
         
         try {
             destDir = uploadDir(catalog, ws, store);
@@ -336,35 +809,20 @@ public class ImportController extends ApiController {
             } else {
                 throw new RuntimeException("Invalid store type: "+store.getClass());
             }
-            //Test if we can actually move the file; otherwise copy the file.
-            boolean move = srcFile.renameTo(srcFile);
-            
-            if (move) {
-                Files.move(srcFile.toPath(), destFile.toPath());
-            } else {
-                Files.copy(srcFile.toPath(), destFile.toPath());
-            }
-            //move any supplementary files, update ImportData
+            //Link, rename or copy the main file and any supplementary files together
+            relocation.add(srcFile, destFile);
             if (srcData instanceof SpatialFile) {
                 destData = new SpatialFile(destFile);
                 if (((SpatialFile)srcData).getPrjFile() != null) {
                     File prjFile = new File(destDir, ((SpatialFile)srcData).getPrjFile().getName());
-                    if (move) {
-                        Files.move(((SpatialFile)srcData).getPrjFile().toPath(), prjFile.toPath());
-                    } else{
-                        Files.copy(((SpatialFile)srcData).getPrjFile().toPath(), prjFile.toPath());
-                    }
+                    relocation.add(((SpatialFile)srcData).getPrjFile(), prjFile);
                     ((SpatialFile)destData).setPrjFile(prjFile);
                 }
                 for (File f : ((SpatialFile)srcData).getSuppFiles()) {
                     
                     if (!importFiles.contains(f)) {
                         File suppFile = new File(destDir, f.getName());
-                        if (move) {
-                            Files.move(f.toPath(), suppFile.toPath());
-                        } else {
-                            Files.copy(f.toPath(), suppFile.toPath());
-                        }
+                        relocation.add(f, suppFile);
                         ((SpatialFile)destData).getSuppFiles().add(suppFile);
                     }
                 }
@@ -373,8 +831,13 @@ public class ImportController extends ApiController {
             } else {
                 destData = new FileData(destFile);
             }
+            relocation.run();
+            
+            //Save the updated store to the catalog, the originals are restored if this fails
+            catalog.save(store);
         } catch (Exception e) {
-            //If this occurs, the store files will be in a temporary folder, so we should abort the import
+            //Nothing was moved, but the store files are in a temporary folder, so we should abort the import
+            relocation.rollback();
             t.setError(e);
             t.setState(State.ERROR);
             store.accept(new CascadeDeleteVisitor(catalog));
@@ -389,8 +852,11 @@ public class ImportController extends ApiController {
         t.setData(destData);
         t.setStore(store);
         
-        //Save the updated store to the catalog
-        catalog.save(store);
+        //The store now points at the new location, remove the originals
+        relocation.commit();
+        if (space != null) {
+            space.moved(srcFile, destFile, relocation.size());
+        }
     }
 
     /**
@@ -433,14 +899,12 @@ public class ImportController extends ApiController {
         
         Long id; 
         if (storeName == null) {
-            id = importer.createContextAsync(db, ws, null);
-        
-            //Check if this store already exists in the catalog
+            //Check if this store already exists in the catalog, before connecting to it
             StoreInfo store = findStore(hack(obj), ws);
             if (store != null) {
                 return (new JSONObj()).put("store", IO.store(new JSONObj(), store, request, geoServer));
             }
-            
+            id = importer.createContextAsync(db, ws, null);
         } else {
             StoreInfo store = findStore(wsName, storeName, geoServer.getCatalog());
             id = importer.createContextAsync(db, ws, store);
@@ -448,7 +912,62 @@ public class ImportController extends ApiController {
         
         //Return to requester to allow selection of tables.
         //Complete the import using update()
-        return get(ws.getName(), createImport(importer.getTask(id)), request);
+        return get(ws.getName(), createImport(ws, importer.getTask(id)), request);
+    }
+
+    /**
+     * API endpoint to analyze a database ahead of an import, without creating anything. 
+     * Connection details are provided as for {@link #importDb(String, JSONObj, HttpServletRequest)}.
+     * 
+     * The tables are introspected once and the result is cached by a fingerprint of the 
+     * connection details (leaving out the password), for COMPOSER_ANALYSIS_TTL minutes (default 10). Pass refresh=true to 
+     * introspect the database again. Runs without the configuration lock, so slow connections 
+     * do not hold up other requests.
+     * 
+     * @param wsName The workspace the database would be imported into
+     * @param refresh Ignore any cached analysis
+     * @return The analysis:
+     * {
+     *   "fingerprint": "...", // same as for an existing store with the same connection
+     *   "analyzed": { "timestamp": ..., "pretty": ... },
+     *   "store": { ... } // existing store with the same connection, if any
+     *   "tasks": [
+     *     {
+     *       "task": 0, "name": "roads", "type": "table", "geometry": "MultiLineString",
+     *       "proj": { ... }, "bbox": { ... }, "schema": { ... }, "problem": "NO_CRS"
+     *     }
+     *   ]
+     * }
+     */
+    @Unlocked
+    @RequestMapping(value = "/{wsName}/analyze", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public @ResponseBody JSONObj analyze(@PathVariable String wsName, @RequestBody JSONObj obj,
+            @RequestParam(value="refresh", required=false, defaultValue="false") boolean refresh,
+            HttpServletRequest request) throws Exception {
+        WorkspaceInfo ws = findWorkspace(wsName, geoServer.getCatalog());
+        Map<String, Serializable> params = hack(obj);
+        DataStoreFactorySpi factory = (DataStoreFactorySpi) DataStoreUtils.aquireFactory(params);
+        if (factory == null) {
+            throw new BadRequestException("Unable to find a data store for the connection parameters");
+        }
+        ImportAnalyzer.Analysis analysis;
+        try {
+            analysis = analyzer.analyze(factory, params, refresh);
+        } catch (IOException e) {
+            throw new BadRequestException("Unable to analyze data source: "+e.getMessage(), e);
+        }
+        
+        JSONObj result = new JSONObj().put("fingerprint", analysis.fingerprint());
+        IO.date(result.putObject("analyzed"), analysis.created());
+        StoreInfo store = findStore(params, ws);
+        if (store != null) {
+            result.put("store", IO.store(new JSONObj(), store, request, geoServer));
+        }
+        JSONArr tasks = result.putArray("tasks");
+        for (JSONObj table : analysis.tables()) {
+            tasks.add(table);
+        }
+        return result;
     }
 
     Map<String, Serializable> hack(JSONObj obj) {
@@ -515,25 +1034,43 @@ public class ImportController extends ApiController {
     
     /**
      * Runs an import using the GeoServer importer
+     * <p>
+     * The import is run through the import scheduler, which shares its threads between imports 
+     * within the limits of the workspace. The selected tasks (files or tables) of the import run 
+     * one after another on the thread of the import (see {@link #importTasks}).
+     * </p>
      * @param helper - The ImportWrapper containing the context to run the import from
      * @param ws - The workspace to import into
      * @param f - Filter to select import tasks
      * @return JSON representation of the import
+     * @throws ServiceUnavailableException If the import queue is full
      */
     JSONObj doImport(ImportHelper helper, WorkspaceInfo ws, ImportFilter f, HttpServletRequest request) throws Exception {
         helper.setTask(null);
-        ImportContext imp = helper.getContext();
+        final ImportContext imp = helper.getContext();
+        //the tasks may have been modified by the request
+        helper.progress.invalidate();
         
         // run the import
         imp.setState(ImportContext.State.RUNNING);
         GeoServerDataDirectory dataDir = dataDir();
+        List<ImportTask> tasks = new ArrayList<ImportTask>();
         for (ImportTask t : imp.getTasks()) {
             if (f.include(t)) {
                 prepTask(t, ws, dataDir);
+                tasks.add(t);
             }
         }
-        helper.setTask(importer.getTask(importer.runAsync(imp, f, false)));
-        return get(ws.getName(), helper.id, request);
+        Future<ImportContext> future;
+        try {
+            future = scheduler.submit(ws.getName(), importTasks(imp, tasks, helper.progress));
+        } catch (RejectedExecutionException e) {
+            imp.setState(ImportContext.State.PENDING);
+            throw new ServiceUnavailableException("Too many imports in progress, try again later", e);
+        }
+        helper.setTask(future);
+        imports().update(helper.job, imp.getId(), ImportRegistry.RUNNING);
+        return get(ws.getName(), helper.job.id(), request);
     }
     
     
@@ -646,13 +1183,96 @@ public class ImportController extends ApiController {
      */
     @RequestMapping(value = "/{wsName}/{id:\\d+}", method = RequestMethod.GET)
     public @ResponseBody JSONObj get(@PathVariable String wsName, @PathVariable Long id, HttpServletRequest request) throws Exception {
-        ImportHelper helper = imports.get(id);
-        if (helper == null) {
+        ImportRegistry.Job<ImportHelper> job = imports().get(id);
+        if (job == null) {
             throw new NotFoundException("Import with id "+id+" does not exist");
         }
-        JSONObj result = new JSONObj().put("id",id);
+        return status(job, null);
+    }
+    
+    /**
+     * API endpoint to follow an import as a stream of Server-Sent Events, instead of polling 
+     * {@link #get(String, Long, HttpServletRequest) get}.
+     * 
+     * Each "progress" event has the same form as the response of get, except that "tasks" only 
+     * contains the tasks whose state has changed since the previous event. The id of each event 
+     * is the version of the import it describes; a client reconnecting with a Last-Event-ID 
+     * header only receives the changes after that version. The stream ends once the import is no 
+     * longer running. The stream is served without the configuration lock, which would 
+     * otherwise be held for as long as the stream is open.
+     * 
+     * @param wsName The workspace
+     * @param id The import id
+     * @param lastEventId The id of the last event received, if reconnecting
+     */
+    @Unlocked
+    @RequestMapping(value = "/{wsName}/{id:\\d+}/events", method = RequestMethod.GET)
+    public void events(@PathVariable String wsName, @PathVariable Long id, 
+            @RequestHeader(value="Last-Event-ID", required=false) Long lastEventId,
+            HttpServletResponse response) throws Exception {
+        ImportRegistry.Job<ImportHelper> job = imports().get(id);
+        if (job == null) {
+            throw new NotFoundException("Import with id "+id+" does not exist");
+        }
+        response.setContentType(EVENT_STREAM);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        PrintWriter out = response.getWriter();
+        
+        long since = lastEventId == null ? -1 : lastEventId;
+        boolean first = true;
+        int idle = 0;
+        while (true) {
+            JSONObj status = status(job, since);
+            Long version = (Long) status.get("version");
+            if (first || (version != null && version > since)) {
+                out.write("id: "+(version == null ? since : version)+"\n");
+                out.write("event: progress\n");
+                out.write("data: "+status.toString()+"\n\n");
+                out.flush();
+                since = version == null ? since : version;
+                first = false;
+            }
+            ImportHelper helper = helper(job);
+            if (helper == null || !status.has("task")) {
+                break;
+            }
+            //task state changes made by the importer itself are not signalled, so check regularly
+            if (helper.progress.await(since, EVENT_POLL_INTERVAL)) {
+                idle = 0;
+            } else if (++idle * EVENT_POLL_INTERVAL >= EVENT_KEEPALIVE_INTERVAL) {
+                out.write(": keepalive\n\n");
+                out.flush();
+                idle = 0;
+            }
+            if (out.checkError()) {
+                //client went away
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Encodes the state of an import.
+     * <p>
+     * Does not change the catalog or the import context, as it is also called by {@link #events} 
+     * without the configuration lock.
+     * </p>
+     * 
+     * @param job The import
+     * @param since If null, all tasks are included. Otherwise only the tasks changed after this 
+     *   version (-1 for all of them) are included, along with the current "version".
+     */
+    JSONObj status(ImportRegistry.Job<ImportHelper> job, Long since) throws Exception {
+        JSONObj result = new JSONObj().put("id",job.id());
         
-        Task<ImportContext> t = helper.getTask();
+        ImportHelper helper = helper(job);
+        if (helper == null) {
+            //Restored from the journal, but the importer no longer has the context
+            imports().update(job, null, ImportRegistry.EXPIRED);
+            return result.put("state", ImportRegistry.EXPIRED);
+        }
+        Future<ImportContext> t = helper.getTask();
         ImportContext imp = helper.getContext();
         
         if (t != null) {
@@ -663,6 +1283,9 @@ public class ImportController extends ApiController {
             if (t == null) {
                 throw new RuntimeException("Invalid import");
             }
+            if (since != null) {
+                result.put("version", helper.progress.version());
+            }
             return result;
         }
         //Remove this while GeoServer and Composer use seperate Importer objects
@@ -673,7 +1296,11 @@ public class ImportController extends ApiController {
         int completed = 0;
         int pending = 0;
         for (ImportTask task : imp.getTasks()) {
-            tasks.add(task(task));
+            //only encoded when its state has changed
+            JSONObj obj = helper.progress.task(task);
+            if (since == null) {
+                tasks.add(obj);
+            }
             switch(task.getState()) {
                 case READY:
                 case PENDING:
@@ -687,26 +1314,37 @@ public class ImportController extends ApiController {
             }
         }
         
+        if (since != null) {
+            result.put("version", helper.progress.since(since, tasks));
+        }
         result.put("tasksCompleted", completed);
         result.put("tasksTotal", imp.getTasks().size());
         
-        //If there are no more tasks to run, consider the import complete
-        if (pending == 0) {
-            imp.setState(ImportContext.State.COMPLETE);
+        //If there are no more tasks to run, consider the import complete. The context itself is 
+        //left alone, as this also runs for events() without the configuration lock.
+        ImportContext.State impState = pending == 0 ? ImportContext.State.COMPLETE : imp.getState();
+        if (t == null && impState == ImportContext.State.RUNNING) {
+            //nothing is running, such as a context restored after a restart
+            impState = ImportContext.State.PENDING;
         }
-        switch(imp.getState()) {
+        String state = null;
+        switch(impState) {
             case COMPLETE:
-                result.put("state", "complete");
+                state = ImportRegistry.COMPLETE;
                 break;
             case PENDING:
-                result.put("state", "pending");
+                state = ImportRegistry.PENDING;
                 break;
             case RUNNING:
-                result.put("state", "running");
+                state = ImportRegistry.RUNNING;
                 break;
             default:
                 break;
         }
+        if (state != null) {
+            result.put("state", state);
+        }
+        imports().update(job, imp.getId(), state);
         return result;
     }
 
@@ -747,13 +1385,14 @@ public class ImportController extends ApiController {
 
         Catalog catalog = geoServer.getCatalog();
         WorkspaceInfo ws = findWorkspace(wsName, catalog);
-        ImportHelper helper = imports.get(id);
+        ImportRegistry.Job<ImportHelper> job = imports().get(id);
+        ImportHelper helper = job == null ? null : helper(job);
         if (helper == null) {
             throw new NotFoundException("Import with id "+id+" does not exist");
         }
         JSONObj result = new JSONObj().put("id",id);
         
-        Task<ImportContext> t = helper.getTask();
+        Future<ImportContext> t = helper.getTask();
         ImportContext imp = helper.getContext();
         
         //If this import is currently running, we should not start another job
@@ -824,9 +1463,13 @@ public class ImportController extends ApiController {
      * as those described by the DataFormat of this ImportContext, in order to test if the store 
      * that would be created by this import already exists.
      * 
-     * For better matching, only compares the required parameters of the store.
+     * Looked up in the store connection index when available; otherwise each store is compared 
+     * in turn, on the required parameters of the store only.
      */
     StoreInfo findStore(Map<String, Serializable> params, WorkspaceInfo ws) throws Exception {
+        if (storeIndex != null) {
+            return storeIndex.find(ws, params);
+        }
         Catalog catalog = geoServer.getCatalog();
         
         Map<String, Serializable> requiredParams = new HashMap<String, Serializable>();
@@ -864,18 +1507,18 @@ public class ImportController extends ApiController {
         return null;
     }
     
-    void touch(ImportTask task) {
-        LayerInfo l = task.getLayer();
-        l = catalog().getLayer(l.getId());
-        if (l != null) {
-            Date now = new Date();
-            //If we have already touched this task, don't update
-            if (Metadata.created(l) == null) {
-                Metadata.created(l, now);
-            }
-            Metadata.modified(l, now);
-            geoServer.getCatalog().save(l);
+    /**
+     * Sets the created and modified dates of an imported layer, to be saved by the caller. Done 
+     * once the task has completed rather than when it is encoded, as the status of an import is 
+     * also encoded by {@link #events}, which runs without the configuration lock.
+     */
+    void touch(LayerInfo l) {
+        Date now = new Date();
+        //If we have already touched this layer, don't update
+        if (Metadata.created(l) == null) {
+            Metadata.created(l, now);
         }
+        Metadata.modified(l, now);
     }
 
     /**
@@ -908,7 +1551,6 @@ public class ImportController extends ApiController {
                 break;
             case COMPLETE:
                 obj.put("status", task.getState().toString());
-                touch(task);
                 LayerInfo layer = task.getLayer();
                 IO.layerDetails(obj.putObject("layer"), layer, null);
                 
@@ -930,8 +1572,6 @@ public class ImportController extends ApiController {
     }
 
     JSONObj complete(ImportTask task) {
-        touch(task);
-
         LayerInfo layer = task.getLayer();
         JSONObj obj = task(task);
         IO.layerDetails(obj.putObject("layer"), layer, null);
@@ -974,6 +1614,55 @@ public class ImportController extends ApiController {
         return "null";
     }
     
+    /**
+     * Runs the selected tasks of an import one after another, with the credentials of the 
+     * requester. Each task is encoded into the progress of the import as soon as it has run.
+     * <p>
+     * The importer runs and saves the whole context, and is not safe to run on the same context 
+     * from several threads, so the tasks of one import do not run in parallel. A task that fails 
+     * is marked as failed rather than failing the import, so the remaining tasks still run and 
+     * the import completes. Cancelling the import stops it before the next task.
+     * </p>
+     */
+    Callable<ImportContext> importTasks(final ImportContext imp, final List<ImportTask> tasks, 
+            final ImportProgress progress) {
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return new Callable<ImportContext>() {
+            @Override
+            public ImportContext call() throws Exception {
+                final Authentication oldAuth = SecurityContextHolder.getContext().getAuthentication();
+                SecurityContextHolder.getContext().setAuthentication(auth);
+                try {
+                    for (ImportTask task : tasks) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            break;
+                        }
+                        importTask(imp, task, progress);
+                    }
+                } finally {
+                    SecurityContextHolder.getContext().setAuthentication(oldAuth);
+                }
+                return imp;
+            }
+        };
+    }
+    
+    void importTask(ImportContext imp, ImportTask task, ImportProgress progress) {
+        try {
+            importer.run(imp, new TaskIdFilter(Collections.singletonList(task.getId())));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to import task "+task.getId()+" of import "+imp.getId(), e);
+            task.setError(e);
+            task.setState(State.ERROR);
+        }
+        try {
+            progress.task(task);
+        } catch (Exception e) {
+            //encoded again on the next status request
+            LOG.log(Level.FINE, "Unable to encode task "+task.getId()+" of import "+imp.getId(), e);
+        }
+    }
+    
     static class TaskIdFilter implements ImportFilter {
         List<Long> tasks;
         
@@ -988,19 +1677,17 @@ public class ImportController extends ApiController {
     }
     
     /**
-     * Create a new ImportHelper and add it to {@code imports}, tracking the index.
+     * Create a new ImportHelper and register it with {@code imports}, which assigns the id.
+     * Also removes any imports that have expired.
+     * @param ws
      * @param t
      * @return
      */
-    private Long createImport(Task<ImportContext> t) {
-        ImportHelper i = new ImportHelper(t);
-        //Make sure we get the right index
-        synchronized (id) {
-            imports.put(id, i);
-            i.id = id;
-            id++;
-        }
-        return i.id;
+    private Long createImport(WorkspaceInfo ws, Future<ImportContext> t) {
+        expire();
+        ImportRegistry.Job<ImportHelper> job = imports().create(ws.getName(), null);
+        job.helper = new ImportHelper(job, t);
+        return job.id();
     }
     
     /**
@@ -1012,19 +1699,29 @@ public class ImportController extends ApiController {
      *
      */
     private class ImportHelper {
-        private Task<ImportContext> currentTask = null;
+        private Future<ImportContext> currentTask = null;
         private ImportContext context = null;
-        Long id = -1L;
+        final ImportRegistry.Job<ImportHelper> job;
+        final ImportProgress progress = new ImportProgress(ImportController.this::task);
         
-        protected ImportHelper(Task<ImportContext> initTask) {
+        protected ImportHelper(ImportRegistry.Job<ImportHelper> job, Future<ImportContext> initTask) {
             if (initTask == null) {
                 throw new NullPointerException("Initial task cannot be null");
             }
+            this.job = job;
             currentTask = initTask;
-            new Thread(taskListener(initTask)).start();
+            new Thread(taskListener(initTask, progress)).start();
+        }
+        
+        /**
+         * Helper for an import restored from the journal, with no running task.
+         */
+        protected ImportHelper(ImportRegistry.Job<ImportHelper> job, ImportContext context) {
+            this.job = job;
+            this.context = context;
         }
         
-        public ImportContext getContext() {
+        public synchronized ImportContext getContext() {
             return context;
         }
         
@@ -1035,7 +1732,7 @@ public class ImportController extends ApiController {
          * @throws InterruptedException
          * @throws ExecutionException
          */
-        public Task<ImportContext> getTask() throws InterruptedException, ExecutionException {
+        public synchronized Future<ImportContext> getTask() throws InterruptedException, ExecutionException {
             if (currentTask != null && currentTask.isDone())  {
                 context = currentTask.get();
                 currentTask = null;
@@ -1051,9 +1748,9 @@ public class ImportController extends ApiController {
          * @throws InterruptedException
          * @throws ExecutionException
          */
-        public void setTask(Task<ImportContext> t) throws RuntimeException, InterruptedException, ExecutionException {
+        public synchronized void setTask(Future<ImportContext> t) throws RuntimeException, InterruptedException, ExecutionException {
             if (t != null) {
-                new Thread(taskListener(t)).start();
+                new Thread(taskListener(t, progress)).start();
             }
             if (getTask() == null) {
                 currentTask = t;
@@ -1068,7 +1765,7 @@ public class ImportController extends ApiController {
      * when that task completes.
      *
      */
-    private Runnable taskListener(final Task<ImportContext> task) {
+    private Runnable taskListener(final Future<ImportContext> task, final ImportProgress progress) {
         final RequestAttributes parentRequestAttributes = RequestContextHolder.getRequestAttributes();
         final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         Thread parentThread = Thread.currentThread();
@@ -1096,6 +1793,7 @@ public class ImportController extends ApiController {
                         store.setName(NameUtil.sanitizeEnsureUnique(store.getName(), StoreInfo.class, catalog));
                         LayerInfo layer = catalog.getLayer(t.getLayer().getId());
                         layer.setName(NameUtil.sanitizeEnsureUnique(layer.getName(), LayerInfo.class, catalog));
+                        touch(layer);
                         //ResourceInfo resource = catalog.getResource(layer.getResource().getId(), layer.getResource().getClass());
                         //resource.setName(NameUtil.sanitizeEnsureUnique(resource.getName(), ResourceInfo.class, catalog));
                         StyleInfo style = catalog.getStyle(layer.getDefaultStyle().getId());
@@ -1116,9 +1814,16 @@ public class ImportController extends ApiController {
                         }
                     }
                 }
+                //the layers have been renamed, encode the completed tasks again
+                progress.invalidate();
+                for (ImportTask t : context.getTasks()) {
+                    progress.task(t);
+                }
             } catch (InterruptedException | ExecutionException e) {
                 LOG.log(Level.WARNING, "Failed to move imported files", e);
             } finally {
+                //wake up anyone following the import
+                progress.changed();
                 if (Thread.currentThread() != parentThread) {
                     // cleaning request spring context for the current thread
                     RequestContextHolder.resetRequestAttributes();
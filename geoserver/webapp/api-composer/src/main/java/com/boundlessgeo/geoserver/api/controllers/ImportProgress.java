@@ -0,0 +1,120 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.geoserver.importer.ImportTask;
+
+import com.boundlessgeo.geoserver.json.JSONArr;
+import com.boundlessgeo.geoserver.json.JSONObj;
+
+/**
+ * The encoded tasks of an import, re-encoded only when the state of a task changes.
+ * <p>
+ * Encoding a task can be expensive (a completed task reads the layer details from its schema),
+ * so each task is encoded once per state, and every request for the import is answered from that
+ * encoding. Encoding only reads the catalog, as it also runs for requests that do not hold the
+ * configuration lock; the layer of a completed task is saved when the task completes. Each change bumps a version number, so that clients following the
+ * import can be sent only the tasks changed since the version they last saw.
+ * </p>
+ */
+public class ImportProgress {
+
+    final Function<ImportTask, JSONObj> encoder;
+
+    /** Encoded tasks by id, in task order. Guarded by this */
+    final Map<Long, Entry> tasks = new LinkedHashMap<Long, Entry>();
+
+    /** Guarded by this */
+    long version = 0;
+
+    static class Entry {
+        final ImportTask.State state;
+        final JSONObj obj;
+        final long version;
+
+        Entry(ImportTask.State state, JSONObj obj, long version) {
+            this.state = state;
+            this.obj = obj;
+            this.version = version;
+        }
+    }
+
+    /**
+     * @param encoder Encodes a task, called once for each state of each task
+     */
+    public ImportProgress(Function<ImportTask, JSONObj> encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Returns the encoded task, encoding it if its state has changed since it was last encoded.
+     */
+    public synchronized JSONObj task(ImportTask task) {
+        Entry entry = tasks.get(task.getId());
+        if (entry == null || entry.state != task.getState()) {
+            entry = new Entry(task.getState(), encoder.apply(task), ++version);
+            tasks.put(task.getId(), entry);
+            notifyAll();
+        }
+        return entry.obj;
+    }
+
+    /**
+     * Signals a change to the import that is not the state of a task, such as the import
+     * finishing.
+     */
+    public synchronized void changed() {
+        version++;
+        notifyAll();
+    }
+
+    /**
+     * Drops the encoded tasks, so that each is encoded again when next requested. Used when the
+     * imported layers have been changed after the tasks finished.
+     */
+    public synchronized void invalidate() {
+        tasks.clear();
+        changed();
+    }
+
+    /** The current version */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Adds the tasks changed after a version.
+     *
+     * @param since The last version seen, or -1 for all tasks
+     * @param changed Array the tasks are added to
+     * @return The current version
+     */
+    public synchronized long since(long since, JSONArr changed) {
+        for (Entry entry : tasks.values()) {
+            if (entry.version > since) {
+                changed.add(entry.obj);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Waits for the version to move past the given version.
+     *
+     * @return True if it did, false if the time ran out first
+     */
+    public synchronized boolean await(long since, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while (version <= since && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return version > since;
+    }
+}
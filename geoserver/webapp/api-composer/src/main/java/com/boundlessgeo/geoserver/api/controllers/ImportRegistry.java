@@ -0,0 +1,359 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * Registry of the import jobs run through the composer.
+ * <p>
+ * Jobs are identified by a sequential id, and keep track of the workspace, the importer context
+ * and the state of the import. Jobs that are not running are removed once they have not been
+ * updated for the time-to-live, so that the import contexts they hold can be released.
+ * </p>
+ * <p>
+ * Changes are appended to a journal file, one line per change, so that jobs survive a restart.
+ * The journal is compacted to one line per job when it is loaded, and whenever it grows to more
+ * than twice the number of jobs. Jobs loaded from the journal have no helper; it is up to the
+ * caller to recreate it from the importer context. Jobs that were running are loaded as expired,
+ * as their run did not survive the restart, so that they are removed after the time-to-live like
+ * any other job that is not running.
+ * </p>
+ * @param <T> Helper tracking the running import of each job
+ */
+public class ImportRegistry<T> {
+
+    static Logger LOG = Logging.getLogger(ImportRegistry.class);
+
+    public static final String PENDING = "pending";
+    public static final String RUNNING = "running";
+    public static final String COMPLETE = "complete";
+    /** State of a job whose import context no longer exists, or whose run was cut short by a restart */
+    public static final String EXPIRED = "expired";
+
+    /** Journal lines written before compaction is considered */
+    static final int COMPACT_THRESHOLD = 1000;
+
+    static final String REMOVED = "-";
+
+    final File journal;
+    final long ttl;
+
+    final AtomicLong ids = new AtomicLong();
+    final ConcurrentNavigableMap<Long, Job<T>> jobs = new ConcurrentSkipListMap<Long, Job<T>>();
+
+    /** Guarded by this */
+    Writer writer;
+    int lines;
+
+    /**
+     * @param journal Journal file, or null to keep jobs in memory only
+     * @param ttl Time (in milliseconds) idle jobs are kept for
+     */
+    public ImportRegistry(File journal, long ttl) {
+        this.journal = journal;
+        this.ttl = ttl;
+        if (journal != null) {
+            load();
+        }
+    }
+
+    /**
+     * Registers a new job, with the next id.
+     */
+    public Job<T> create(String workspace, T helper) {
+        Job<T> job = new Job<T>(ids.getAndIncrement(), workspace, System.currentTimeMillis());
+        job.helper = helper;
+        jobs.put(job.id, job);
+        write(job);
+        return job;
+    }
+
+    /**
+     * The job with the given id, or null if there is none.
+     */
+    public Job<T> get(long id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Updates the importer context and state of a job, journaling the change if there is one.
+     */
+    public void update(Job<T> job, Long context, String state) {
+        boolean changed = false;
+        synchronized (job) {
+            if (context != null && !context.equals(job.context)) {
+                job.context = context;
+                changed = true;
+            }
+            if (state != null && !state.equals(job.state)) {
+                job.state = state;
+                changed = true;
+            }
+            job.updated = System.currentTimeMillis();
+        }
+        if (changed && jobs.containsKey(job.id)) {
+            write(job);
+        }
+    }
+
+    /**
+     * Removes a job.
+     */
+    public Job<T> remove(long id) {
+        Job<T> job = jobs.remove(id);
+        if (job != null) {
+            write(id + "\t" + REMOVED);
+        }
+        return job;
+    }
+
+    /**
+     * Removes the jobs that are not running, and have not been updated for the time-to-live.
+     *
+     * @return The removed jobs
+     */
+    public List<Job<T>> expire() {
+        long cutoff = System.currentTimeMillis() - ttl;
+        List<Job<T>> expired = new ArrayList<Job<T>>();
+        for (Job<T> job : jobs.values()) {
+            if (!RUNNING.equals(job.state) && job.updated < cutoff && jobs.remove(job.id, job)) {
+                write(job.id + "\t" + REMOVED);
+                expired.add(job);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Number of jobs in a workspace.
+     */
+    public int count(String workspace) {
+        int count = 0;
+        for (Job<T> job : jobs.values()) {
+            if (workspace.equals(job.workspace)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Page of the jobs in a workspace, most recent first.
+     */
+    public List<Job<T>> list(String workspace, int offset, int count) {
+        List<Job<T>> page = new ArrayList<Job<T>>();
+        Iterator<Job<T>> it = jobs.descendingMap().values().iterator();
+        int skipped = 0;
+        while (it.hasNext() && page.size() < count) {
+            Job<T> job = it.next();
+            if (workspace.equals(job.workspace)) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    page.add(job);
+                }
+            }
+        }
+        return page;
+    }
+
+    /** Number of jobs */
+    public int size() {
+        return jobs.size();
+    }
+
+    void write(Job<T> job) {
+        write(line(job));
+    }
+
+    String line(Job<T> job) {
+        synchronized (job) {
+            return job.id + "\t" + clean(job.workspace) + "\t" + (job.context == null ? "" : job.context)
+                + "\t" + job.state + "\t" + job.created + "\t" + job.updated;
+        }
+    }
+
+    synchronized void write(String line) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journal, true), StandardCharsets.UTF_8));
+            }
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+            lines++;
+            if (lines > COMPACT_THRESHOLD && lines > 2 * jobs.size()) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write import journal " + journal.getPath(), e);
+        }
+    }
+
+    /**
+     * Reads the journal, the last line of each job giving its state.
+     */
+    synchronized void load() {
+        if (!journal.exists()) {
+            return;
+        }
+        long next = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journal), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                try {
+                    long id = Long.parseLong(parts[0]);
+                    next = Math.max(next, id + 1);
+                    if (parts.length == 2 && REMOVED.equals(parts[1])) {
+                        jobs.remove(id);
+                    } else if (parts.length == 6) {
+                        Job<T> job = new Job<T>(id, parts[1], Long.parseLong(parts[4]));
+                        job.context = parts[2].isEmpty() ? null : Long.valueOf(parts[2]);
+                        job.state = parts[3];
+                        job.updated = Long.parseLong(parts[5]);
+                        jobs.put(id, job);
+                    }
+                } catch (NumberFormatException e) {
+                    //a partial line, from a crash while writing
+                    LOG.fine("Skipping invalid import journal line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to read import journal " + journal.getPath(), e);
+        }
+        ids.set(next);
+        for (Job<T> job : jobs.values()) {
+            if (RUNNING.equals(job.state)) {
+                job.state = EXPIRED;
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Rewrites the journal with a single line per job. The highest id is kept, even if the job
+     * was removed, so ids are not reused.
+     */
+    synchronized void compact() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            File tmp = new File(journal.getPath() + ".tmp");
+            lines = 0;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                long last = ids.get() - 1;
+                if (last >= 0 && !jobs.containsKey(last)) {
+                    out.write(last + "\t" + REMOVED + "\n");
+                    lines++;
+                }
+                for (Job<T> job : jobs.values()) {
+                    out.write(line(job) + "\n");
+                    lines++;
+                }
+            }
+            Files.move(tmp.toPath(), journal.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to compact import journal " + journal.getPath(), e);
+        }
+    }
+
+    /**
+     * Closes the journal.
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Error closing import journal", e);
+            }
+            writer = null;
+        }
+    }
+
+    static String clean(String str) {
+        return str == null ? "" : str.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * An import job.
+     */
+    public static class Job<T> {
+        final long id;
+        final String workspace;
+        final long created;
+        volatile long updated;
+        volatile Long context;
+        volatile String state = PENDING;
+        volatile T helper;
+
+        Job(long id, String workspace, long created) {
+            this.id = id;
+            this.workspace = workspace;
+            this.created = created;
+            this.updated = created;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public String workspace() {
+            return workspace;
+        }
+
+        public long created() {
+            return created;
+        }
+
+        public long updated() {
+            return updated;
+        }
+
+        /** Id of the importer context, or null if it has not been created yet */
+        public Long context() {
+            return context;
+        }
+
+        public String state() {
+            return state;
+        }
+
+        public T helper() {
+            return helper;
+        }
+    }
+}
@@ -15,12 +15,14 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.boundlessgeo.geoserver.catalog.BoundsService;
 import com.boundlessgeo.geoserver.util.RecentObjectCache;
 import com.boundlessgeo.geoserver.util.RecentObjectCache.Ref;
 import com.google.common.base.Throwables;
@@ -92,6 +94,8 @@ import com.boundlessgeo.geoserver.api.exceptions.InvalidYsldException;
 import com.boundlessgeo.geoserver.api.exceptions.NotFoundException;
 import com.boundlessgeo.geoserver.json.JSONArr;
 import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.json.JSONStream;
+import com.boundlessgeo.geoserver.json.JSONStreamWriter;
 import com.google.common.io.ByteSource;
 
 @Controller("apiLayerController")
@@ -102,6 +106,9 @@ public class LayerController extends ApiController {
 
     Importer importer;
 
+    @Autowired(required=false)
+    BoundsService bounds;
+
     @Autowired
     public LayerController(GeoServer geoServer, RecentObjectCache recentCache, Importer importer) {
         super(geoServer, recentCache);
@@ -112,23 +119,31 @@ public class LayerController extends ApiController {
      * API endpoint to list layers in a workspace
      * @param wsName The workspace
      * @param page Page of the list
+     * @param cursor Position in the list, instead of page: empty for the first page, then the
+     * "next" cursor of the previous page. See {@link Cursor}.
      * @param count Number of items per page
      * @param sort Sort order (asc or desc)
      * @param textFilter Search filter to limit results
+     * @param withTotal Whether to count all matching layers when paging by cursor
+     * @param fields Comma separated properties of the layers to encode, all of them if omitted
      * @param req HTTP request
-     * @return List of items for the page, encoded as a JSON array
+     * @return List of items for the page, encoded as a JSON array. Layers are encoded as they are 
+     * read from the catalog.
      */
     @RequestMapping(value="/{wsName:.+}", method = RequestMethod.GET)
     public @ResponseBody
-    JSONObj list(@PathVariable String wsName, 
-            @RequestParam(value="page", required=false) Integer page,
-            @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) Integer count,
+    JSONStream list(@PathVariable String wsName, 
+            @RequestParam(value="page", required=false) final Integer page,
+            @RequestParam(value="cursor", required=false) String cursor,
+            @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) final Integer count,
             @RequestParam(value="sort", required=false) String sort, 
             @RequestParam(value="filter", required=false) String textFilter, 
-            HttpServletRequest req) {
-        JSONObj obj = new JSONObj();
-
-        Catalog cat = geoServer.getCatalog();
+            @RequestParam(value="total", required=false) Boolean withTotal,
+            @RequestParam(value="fields", required=false) String fields,
+            final HttpServletRequest req) {
+        final Catalog cat = geoServer.getCatalog();
+        final Fields requested = Fields.parse(fields);
+        final Cursor position = Cursor.parse(cursor, parseSort(sort));
 
         if ("default".equals(wsName)) {
             WorkspaceInfo def = cat.getDefaultWorkspace();
@@ -140,24 +155,67 @@ public class LayerController extends ApiController {
         if (textFilter != null) {
             filter = Predicates.and(filter, Predicates.fullTextSearch(textFilter));
         }
-        Integer total = cat.count(LayerInfo.class, filter);
-
-        SortBy sortBy = parseSort(sort);
-
-        obj.put("total", total);
-        obj.put("page", page != null ? page : 0);
-        obj.put("count", Math.min(total, count != null ? count : total));
-
-        JSONArr arr = obj.putArray("layers");
-        try (
-            CloseableIterator<LayerInfo> it = cat.list(LayerInfo.class, filter, offset(page, count), count, sortBy);
-        ) {
-            while (it.hasNext()) {
-                layer(arr.addObject(), it.next(), req);
+        final Integer total = counted(withTotal, position) ? cat.count(LayerInfo.class, filter) : null;
+
+        if (position != null) {
+            final Filter query = position.filter(filter);
+            final int size = count != null ? count : DEFAULT_PAGESIZE;
+            return new JSONStream() {
+                @Override
+                public void write(JSONStreamWriter out) throws IOException {
+                    out.object();
+                    if (total != null) {
+                        out.put("total", total);
+                    }
+                    out.putArray("layers");
+                    int n = 0;
+                    String last = null;
+                    boolean more = false;
+                    try (
+                        // one more than the page, to tell if there is a next page
+                        CloseableIterator<LayerInfo> it = cat.list(LayerInfo.class, query, null, size + 1, position.sort());
+                    ) {
+                        while (it.hasNext()) {
+                            LayerInfo l = it.next();
+                            if (n == size) {
+                                more = true;
+                                break;
+                            }
+                            out.value(layer(new JSONObj(), l, req, requested));
+                            last = l.getName();
+                            n++;
+                        }
+                    }
+                    out.endArray().put("count", n);
+                    if (more) {
+                        out.put("next", position.next(last).encode());
+                    }
+                    out.endObject();
+                }
+            };
+        }
+
+        final SortBy sortBy = parseSort(sort);
+        final Filter query = filter;
+
+        return new JSONStream() {
+            @Override
+            public void write(JSONStreamWriter out) throws IOException {
+                out.object()
+                    .put("total", total)
+                    .put("page", page != null ? page : 0)
+                    .put("count", Math.min(total, count != null ? count : total))
+                    .putArray("layers");
+                try (
+                    CloseableIterator<LayerInfo> it = cat.list(LayerInfo.class, query, offset(page, count), count, sortBy);
+                ) {
+                    while (it.hasNext()) {
+                        out.value(layer(new JSONObj(), it.next(), req, requested));
+                    }
+                }
+                out.endArray().endObject();
             }
-        }
-
-        return obj;
+        };
     }
 
     /**
@@ -213,7 +271,7 @@ public class LayerController extends ApiController {
             }
             r.setSRS(srs);
             try {
-                new CatalogBuilder(cat).setupBounds(r);
+                setupBounds(r, cat);
             } catch (IOException e) {
                 throw new RuntimeException("Unable to set projection on resource: " + e.getMessage(), e);
             }
@@ -226,9 +284,16 @@ public class LayerController extends ApiController {
                     new ReferencedEnvelope(IO.bounds(bbox.object("native")), r.getCRS()));
             }
             if (bbox.has("lonlat")) {
-                r.setNativeBoundingBox(
+                r.setLatLonBoundingBox(
                     new ReferencedEnvelope(IO.bounds(bbox.object("lonlat")), DefaultGeographicCRS.WGS84));
+            } else if (bbox.has("native") && Metadata.boundsEstimated(r)) {
+                try {
+                    computeLatLonBounds(r, cat);
+                } catch (Exception e) {
+                    throw new BadRequestException("Unable to transform bbox: " + e.getMessage(), e);
+                }
             }
+            Metadata.boundsEstimated(r, false);
         }
         if (r.getSRS() == null) {
             throw new IncompleteRequestException(
@@ -238,10 +303,6 @@ public class LayerController extends ApiController {
             throw new IncompleteRequestException(
                     "Resource bounds unavailable, bbox required for layer " + name);
         }
-        if (r.getLatLonBoundingBox() == null) {
-            throw new IncompleteRequestException(
-                    "Resource bounds unavailable, bbox required for layer " + name);
-        }
 
         // restore name in case it was replaced by duplicate
         l.getResource().setName(name);
@@ -276,6 +337,7 @@ public class LayerController extends ApiController {
         cat.add(l.getDefaultStyle());
         cat.add(l.getResource());
         cat.add(l);
+        computeBounds(l.getResource());
 
         Metadata.modified(ws, created);
         cat.save(ws);
@@ -342,10 +404,13 @@ public class LayerController extends ApiController {
                 throw new RuntimeException(e);
             }
 
-            DataAccess data = dataStore.getDataStore(null);
+            // leave reading the data for the bounds to the background if possible
+            if (bounds == null || !bounds.estimate(ft)) {
+                DataAccess data = dataStore.getDataStore(null);
 
-            FeatureSource source = data.getFeatureSource(resourceName);
-            builder.setupBounds(ft, source);
+                FeatureSource source = data.getFeatureSource(resourceName);
+                builder.setupBounds(ft, source);
+            }
 
             return builder.buildLayer(ft);
         }
@@ -413,13 +478,15 @@ public class LayerController extends ApiController {
      * API endpoint to get details on a specific layer
      * @param wsName The workspace name
      * @param name The layer name
+     * @param fields Comma separated properties to encode, all of them if omitted
      * @param req The HTTP request
      * @return The layer, encoded as a JSON object
      */
     @RequestMapping(value="/{wsName}/{name:.+}", method = RequestMethod.GET)
-    public @ResponseBody JSONObj get(@PathVariable String wsName, @PathVariable String name, HttpServletRequest req) {
+    public @ResponseBody JSONObj get(@PathVariable String wsName, @PathVariable String name,
+            @RequestParam(value="fields", required=false) String fields, HttpServletRequest req) {
         LayerInfo l = findLayer(wsName, name, geoServer.getCatalog());
-        return layer(new JSONObj(), l, req);
+        return layer(new JSONObj(), l, req, Fields.parse(fields));
     }
 
     /**
@@ -517,6 +584,7 @@ public class LayerController extends ApiController {
                     //If the native bbox has changed, update the latlon bbox
                     computeLatLonBounds(resource, geoServer.getCatalog());
                 }
+                Metadata.boundsEstimated(resource, false);
             } else if ("proj".equals(prop)) {
                 String srs = obj.str("proj");
                 try {
@@ -527,7 +595,11 @@ public class LayerController extends ApiController {
                 resource.setSRS(srs);
                 //If bbox is not defined, update it.
                 if (obj.get("bbox") == null) {
-                    computeLatLonBounds(resource, geoServer.getCatalog());
+                    if (canEstimateBounds(resource)) {
+                        setupBounds(resource, geoServer.getCatalog());
+                    } else {
+                        computeLatLonBounds(resource, geoServer.getCatalog());
+                    }
                 }
             } else if ("timeout".equals(prop)){
                 layer.getMetadata().put("timeout", (Serializable)obj.get("timeout"));
@@ -538,6 +610,7 @@ public class LayerController extends ApiController {
         Catalog cat = geoServer.getCatalog();
         cat.save(resource);
         cat.save(layer);
+        computeBounds(resource);
 
         recent.add(LayerInfo.class, layer, ws.getName());
         recent.add(WorkspaceInfo.class, ws);
@@ -545,6 +618,40 @@ public class LayerController extends ApiController {
         return IO.layerDetails(new JSONObj(), layer, req);
     }
     
+    boolean canEstimateBounds(ResourceInfo r) {
+        return bounds != null && r instanceof FeatureTypeInfo;
+    }
+
+    /**
+     * Sets up the bounds of a resource for its current CRS. For feature types the bounds are
+     * estimated, to be computed in the background by {@link #computeBounds(ResourceInfo)}.
+     */
+    void setupBounds(ResourceInfo r, Catalog catalog) throws IOException {
+        if (canEstimateBounds(r)) {
+            r.setNativeBoundingBox(null);
+            r.setLatLonBoundingBox(null);
+            if (bounds.estimate(r)) {
+                return;
+            }
+        }
+        Metadata.boundsEstimated(r, false);
+        new CatalogBuilder(catalog).setupBounds(r);
+    }
+
+    /**
+     * Queues the computation of the bounds of a saved resource, if they were estimated.
+     */
+    void computeBounds(ResourceInfo r) {
+        if (bounds != null && Metadata.boundsEstimated(r)) {
+            try {
+                bounds.compute(r);
+            } catch (RejectedExecutionException e) {
+                LOG.warning("Too many bounds computations queued, computing the bounds of "
+                    + r.prefixedName() + " later");
+            }
+        }
+    }
+
     public void computeNativeBounds(ResourceInfo r, Catalog catalog) throws IOException {
         //Need to save the resource for cb to work
         CatalogBuilder cb = new CatalogBuilder(catalog);
@@ -719,22 +826,28 @@ public class LayerController extends ApiController {
     }
     
     @RequestMapping(value="/recent", method = RequestMethod.GET)
-    public @ResponseBody JSONArr recent(HttpServletRequest req) {
+    public @ResponseBody JSONArr recent(@RequestParam(value="fields", required=false) String fields,
+            HttpServletRequest req) {
         Catalog cat = geoServer.getCatalog();
         JSONArr arr = new JSONArr();
+        Fields requested = Fields.parse(fields);
         
         for (Ref ref : recent.list(LayerInfo.class)) {
             LayerInfo layer = cat.getLayer(ref.id);
             if (layer != null) {
-                IO.layerDetails(arr.addObject(), layer, req);
+                IO.layerDetails(arr.addObject(), layer, req, requested);
             }
         }
         return arr;
     }
 
     JSONObj layer(JSONObj obj, LayerInfo l, HttpServletRequest req) {
-        IO.layerDetails(obj, l, req);
-        if (!obj.has("modified")) {
+        return layer(obj, l, req, Fields.ALL);
+    }
+
+    JSONObj layer(JSONObj obj, LayerInfo l, HttpServletRequest req, Fields fields) {
+        IO.layerDetails(obj, l, req, fields);
+        if (fields.has("modified") && !obj.has("modified")) {
             Resource r = dataDir().config(l);
             if (r.getType() != Type.UNDEFINED) {
                 IO.date(obj.putObject("modified"), new Date(r.lastmodified()));
@@ -0,0 +1,234 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.FeatureType;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.util.PropertyUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the parts of a layer description that are slow to encode: the schema and geometry type,
+ * which are looked up from the store of the layer, and the projection and its extent.
+ * <p>
+ * Summaries are kept by layer id, along with a stamp of what they were computed from (the
+ * resource, its store, native name and SRS, and the modification dates of the layer and
+ * resource). They are dropped when the layer, its resource or its store change, and expire after
+ * COMPOSER_LAYER_SUMMARY_TTL minutes (default 10) to pick up schema changes made in the store
+ * itself. At most COMPOSER_LAYER_SUMMARY_CACHE summaries (default 1000) are kept.
+ * </p>
+ */
+@Component
+public class LayerSummaryCache implements CatalogListener, InitializingBean, DisposableBean {
+
+    static Logger LOG = Logging.getLogger(LayerSummaryCache.class);
+
+    static final int DEFAULT_TTL = 10;
+    static final int DEFAULT_SIZE = 1000;
+
+    /** The cache used by {@link IO}, once the application context is up */
+    static volatile LayerSummaryCache instance;
+
+    @Autowired
+    Catalog catalog;
+
+    Cache<String, Summary> cache;
+
+    public LayerSummaryCache() {
+    }
+
+    public LayerSummaryCache(Catalog catalog, long ttl, int size) {
+        this.catalog = catalog;
+        this.cache = build(ttl, size);
+    }
+
+    static Cache<String, Summary> build(long ttl, int size) {
+        return CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, TimeUnit.MINUTES)
+            .maximumSize(size)
+            .recordStats()
+            .build();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        cache = build(PropertyUtil.property("COMPOSER_LAYER_SUMMARY_TTL", DEFAULT_TTL),
+            PropertyUtil.property("COMPOSER_LAYER_SUMMARY_CACHE", DEFAULT_SIZE));
+        catalog.addListener(this);
+        instance = this;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        catalog.removeListener(this);
+        if (instance == this) {
+            instance = null;
+        }
+    }
+
+    /**
+     * The summary of a layer, from the cache if there is one.
+     */
+    static Summary summary(LayerInfo layer) {
+        LayerSummaryCache cache = instance;
+        if (cache == null || layer.getId() == null) {
+            return Summary.of(layer, null);
+        }
+        return cache.get(layer);
+    }
+
+    /**
+     * The summary of a layer, computed if it is not cached or is out of date.
+     */
+    public Summary get(LayerInfo layer) {
+        String stamp = stamp(layer);
+        Summary summary = cache.getIfPresent(layer.getId());
+        if (summary == null || !summary.stamp.equals(stamp)) {
+            summary = Summary.of(layer, stamp);
+            if (summary.complete) {
+                cache.put(layer.getId(), summary);
+            }
+        }
+        return summary;
+    }
+
+    static String stamp(LayerInfo layer) {
+        ResourceInfo r = layer.getResource();
+        StringBuilder stamp = new StringBuilder();
+        stamp.append(r.getId()).append('|')
+            .append(r.getStore() == null ? null : r.getStore().getId()).append('|')
+            .append(r.getNativeName()).append('|')
+            .append(r.getSRS()).append('|')
+            .append(time(Metadata.modified(layer))).append('|')
+            .append(time(Metadata.modified(r)));
+        return stamp.toString();
+    }
+
+    static long time(Date date) {
+        return date == null ? 0 : date.getTime();
+    }
+
+    /**
+     * Drops the summaries of a layer, or of all layers of a resource or store.
+     */
+    public void invalidate(CatalogInfo info) {
+        if (info instanceof LayerInfo) {
+            cache.invalidate(info.getId());
+        } else if (info instanceof ResourceInfo || info instanceof StoreInfo) {
+            for (Map.Entry<String, Summary> e : cache.asMap().entrySet()) {
+                if (info.getId().equals(e.getValue().resource) || info.getId().equals(e.getValue().store)) {
+                    cache.invalidate(e.getKey());
+                }
+            }
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * The encoded projection, projection extent, geometry type and schema of a layer. The
+     * encoded objects are shared, and copied into responses by {@link IO}.
+     */
+    public static class Summary {
+        final String stamp;
+        final String resource;
+        final String store;
+
+        JSONObj proj;
+        JSONObj projectionExtent;
+        String geometry;
+        JSONObj schema;
+
+        /** False if part of the summary could not be computed, and should not be cached */
+        boolean complete = true;
+
+        Summary(String stamp, ResourceInfo r) {
+            this.stamp = stamp;
+            this.resource = r.getId();
+            this.store = r.getStore() == null ? null : r.getStore().getId();
+        }
+
+        static Summary of(LayerInfo layer, String stamp) {
+            ResourceInfo r = layer.getResource();
+            Summary s = new Summary(stamp, r);
+            s.proj = IO.proj(new JSONObj(), r.getCRS(), r.getSRS());
+            s.projectionExtent = IO.bounds(new JSONObj(), CRS.getEnvelope(r.getCRS()));
+            if (r instanceof FeatureTypeInfo) {
+                FeatureTypeInfo ft = (FeatureTypeInfo) r;
+                try {
+                    FeatureType schema = ft.getFeatureType();
+                    s.geometry = IO.geometry(schema);
+                    s.schema = IO.schema(new JSONObj(), schema, true);
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Error looking up schema "+ft.getNativeName(), e);
+                    s.complete = false;
+                }
+            } else if (r instanceof CoverageInfo) {
+                s.geometry = "raster";
+                s.schema = IO.schemaGrid(new JSONObj(), (CoverageInfo) r, true);
+            } else if (r instanceof WMSLayerInfo) {
+                s.geometry = "layer";
+            }
+            return s;
+        }
+
+        public String geometry() {
+            return geometry;
+        }
+    }
+}
@@ -62,8 +62,11 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 
 import com.boundlessgeo.geoserver.api.exceptions.BadRequestException;
 import com.boundlessgeo.geoserver.api.exceptions.NotFoundException;
+import com.boundlessgeo.geoserver.catalog.MapIndex;
 import com.boundlessgeo.geoserver.json.JSONArr;
 import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.json.JSONStream;
+import com.boundlessgeo.geoserver.json.JSONStreamWriter;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -77,6 +80,9 @@ public class MapController extends ApiController {
     @Autowired
     LayerController layerController;
 
+    @Autowired(required=false)
+    MapIndex maps;
+
     @Autowired
     public MapController(GeoServer geoServer, RecentObjectCache recentCache) {
         super(geoServer, recentCache);
@@ -218,15 +224,19 @@ public class MapController extends ApiController {
      * API endpoint to get details on a specific map
      * @param wsName The workspace name
      * @param name The map name
+     * @param fields Comma separated properties to encode, all of them if omitted. Properties of
+     * the map layers are listed as "layers.title".
      * @param req The HTTP request
      * @return The map, encoded as a JSON object
      */
     @RequestMapping(value="/{wsName}/{name:.+}", method = RequestMethod.GET)
     public @ResponseBody JSONObj get(@PathVariable String wsName,
-                                     @PathVariable String name, HttpServletRequest req) {
+                                     @PathVariable String name,
+                                     @RequestParam(value="fields", required=false) String fields,
+                                     HttpServletRequest req) {
         Catalog cat = catalog();
         LayerGroupInfo map = findMap(wsName, name, cat);
-        return mapDetails(new JSONObj(), map, wsName, req);
+        return mapDetails(new JSONObj(), map, wsName, req, Fields.parse(fields));
     }
 
     /**
@@ -430,16 +440,26 @@ public class MapController extends ApiController {
      * @param count Number of items per page
      * @param sort Sort order (asc or desc)
      * @param textFilter Search filter to limit results
-     * @return List of items for the page, encoded as a JSON array
+     * @param cursor Position in the list, instead of page: empty for the first page, then the
+     * "next" cursor of the previous page. See {@link Cursor}.
+     * @param withTotal Whether to count all matching maps when paging by cursor
+     * @param fields Comma separated properties of the maps to encode, all of them if omitted
+     * @return List of items for the page, encoded as a JSON array. Maps are encoded as they are 
+     * read from the catalog.
      */
     @RequestMapping(value="/{wsName:.+}", method = RequestMethod.GET)
-    public @ResponseBody JSONObj list(@PathVariable String wsName,
-      @RequestParam(value="page", required=false) Integer page,
-      @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) Integer count,
+    public @ResponseBody JSONStream list(@PathVariable String wsName,
+      @RequestParam(value="page", required=false) final Integer page,
+      @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) final Integer count,
       @RequestParam(value="sort", required=false) String sort,
-      @RequestParam(value="filter", required=false) String textFilter) {
+      @RequestParam(value="filter", required=false) String textFilter,
+      @RequestParam(value="cursor", required=false) String cursor,
+      @RequestParam(value="total", required=false) Boolean withTotal,
+      @RequestParam(value="fields", required=false) String fields) {
 
-        Catalog cat = geoServer.getCatalog();
+        final Catalog cat = geoServer.getCatalog();
+        final Fields requested = Fields.parse(fields);
+        final Cursor position = Cursor.parse(cursor, parseSort(sort));
 
         if ("default".equals(wsName)) {
             WorkspaceInfo def = cat.getDefaultWorkspace();
@@ -452,32 +472,91 @@ public class MapController extends ApiController {
         if (textFilter != null) {
             filter = Predicates.and(filter, Predicates.fullTextSearch(textFilter));
         }
+        // leave out layer groups that are not maps in the query, so pages are full and the total
+        // is exact, otherwise check each one as it is read
+        final boolean filtered = maps != null;
+        if (filtered) {
+            filter = maps.filter(filter, cat.getWorkspaceByName(wsName));
+        }
+
+        final String workspace = wsName;
+
+        if (position != null) {
+            final Integer total = counted(withTotal, position) ? cat.count(LayerGroupInfo.class, filter) : null;
+            final Filter query = position.filter(filter);
+            final int size = count != null ? count : DEFAULT_PAGESIZE;
+            return new JSONStream() {
+                @Override
+                public void write(JSONStreamWriter out) throws IOException {
+                    out.object().putArray("maps");
+                    int n = 0;
+                    int hidden = 0;
+                    String last = null;
+                    boolean more = false;
+                    try (
+                        // one more than the page, to tell if there is a next page
+                        CloseableIterator<LayerGroupInfo> it =
+                            cat.list(LayerGroupInfo.class, query, null, size + 1, position.sort());
+                    ) {
+                        while (it.hasNext()) {
+                            LayerGroupInfo map = it.next();
+                            if (n + hidden == size) {
+                                more = true;
+                                break;
+                            }
+                            if( filtered || checkMap( map ) ){
+                                out.value(map(new JSONObj(), map, workspace, requested));
+                                n++;
+                            } else {
+                                hidden++;
+                            }
+                            last = map.getName();
+                        }
+                    }
+                    out.endArray();
+                    if (total != null) {
+                        out.put("total", total - hidden);
+                    }
+                    out.put("count", n);
+                    if (more) {
+                        out.put("next", position.next(last).encode());
+                    }
+                    out.endObject();
+                }
+            };
+        }
 
-        SortBy sortBy = parseSort(sort);
+        final SortBy sortBy = parseSort(sort);
 
-        Integer total = cat.count(LayerGroupInfo.class, filter);
-        
-        JSONObj obj = new JSONObj();
+        final int matched = cat.count(LayerGroupInfo.class, filter);
+        final Filter query = filter;
         
-        JSONArr arr = obj.putArray("maps");
-        try (
-            CloseableIterator<LayerGroupInfo> it =
-                cat.list(LayerGroupInfo.class, filter, offset(page, count), count, sortBy);
-        ) {
-            while (it.hasNext()) {
-                LayerGroupInfo map = it.next();
-                if( checkMap( map ) ){
-                    map(arr.addObject(), map, wsName);
-                } else {
-                    //If a layer group is not shown, also remove it from the total count
-                    total--;
+        return new JSONStream() {
+            @Override
+            public void write(JSONStreamWriter out) throws IOException {
+                int total = matched;
+                out.object().putArray("maps");
+                try (
+                    CloseableIterator<LayerGroupInfo> it =
+                        cat.list(LayerGroupInfo.class, query, offset(page, count), count, sortBy);
+                ) {
+                    while (it.hasNext()) {
+                        LayerGroupInfo map = it.next();
+                        if( filtered || checkMap( map ) ){
+                            out.value(map(new JSONObj(), map, workspace, requested));
+                        } else {
+                            //If a layer group is not shown, also remove it from the total count
+                            total--;
+                        }
+                    }
                 }
+                out.endArray()
+                    .put("total", total)
+                    .put("page", page != null ? page : 0)
+                    .put("count", Math.min(total, count != null ? count : total))
+                    .endObject();
             }
-        }
-        obj.put("total", total);
-        obj.put("page", page != null ? page : 0);
-        obj.put("count", Math.min(total, count != null ? count : total));
-        return obj;
+        };
     }
     
     private JSONArr mapLayerList(LayerGroupInfo map, HttpServletRequest req){
@@ -616,15 +695,16 @@ public class MapController extends ApiController {
     }
     
     @RequestMapping(value="/recent", method = RequestMethod.GET)
-    public @ResponseBody JSONArr listRecentMaps() {
+    public @ResponseBody JSONArr listRecentMaps(@RequestParam(value="fields", required=false) String fields) {
         JSONArr arr = new JSONArr();
         Catalog cat = geoServer.getCatalog();
+        Fields requested = Fields.parse(fields);
 
         for (Ref ref : recent.list(LayerGroupInfo.class)) {
             LayerGroupInfo map = cat.getLayerGroup(ref.id);
             if( map != null && checkMap( map ) ){
                 JSONObj obj = arr.addObject();
-                map(obj, map, map.getWorkspace().getName());
+                map(obj, map, map.getWorkspace().getName(), requested);
             }
         }
         return arr;
@@ -660,90 +740,103 @@ public class MapController extends ApiController {
      * Confirm layer group matches composer definition of a Map.
      * @param map
      * @return true if layergroup can be handled by composer
+     * @see MapIndex#isMap(LayerGroupInfo)
      */
     private boolean checkMap(LayerGroupInfo map) {
-        if( !(map.getMode() == Mode.SINGLE || map.getMode() == Mode.NAMED)) {
-            return false;
-        }
-        for( int i = 0; i < map.styles().size(); i++){
-            LayerInfo style = map.layers().get(i);
-            List<PublishedInfo> layer = map.getLayers();
-            if( layer instanceof LayerInfo &&
-                style != ((LayerInfo)layer).getDefaultStyle() ){
-                return false;
-            }
-            else if (layer instanceof LayerGroupInfo &&
-                     style != ((LayerGroupInfo)layer).getRootLayerStyle() ){
-                return false;
-            }
-        }
-        return true;
+        return maps != null ? maps.contains(map) : MapIndex.isMap(map);
     }
 
     /** Quick map description suitable for display in a list */
     JSONObj map(JSONObj obj, LayerGroupInfo map, String wsName) {
+        return map(obj, map, wsName, Fields.ALL);
+    }
+
+    /** Quick map description with the requested fields */
+    JSONObj map(JSONObj obj, LayerGroupInfo map, String wsName, Fields fields) {
         obj.put("name", map.getName())
            .put("workspace", wsName)
            .put("title", map.getTitle())
            .put("description", map.getAbstract());
         ReferencedEnvelope bounds = map.getBounds();
-        IO.proj(obj.putObject("proj"), bounds.getCoordinateReferenceSystem(), null);
-        IO.bounds(obj.putObject("bbox"), bounds);
-        IO.bounds(obj.putObject("projectionExtent"), CRS.getEnvelope(bounds.getCoordinateReferenceSystem()));
+        if (fields.has("proj")) {
+            IO.proj(obj.putObject("proj"), bounds.getCoordinateReferenceSystem(), null);
+        }
+        if (fields.has("bbox")) {
+            IO.bounds(obj.putObject("bbox"), bounds);
+        }
+        if (fields.has("projectionExtent")) {
+            IO.bounds(obj.putObject("projectionExtent"), CRS.getEnvelope(bounds.getCoordinateReferenceSystem()));
+        }
         obj.put("layer_count", map.getLayers().size());
 
         if (map.getMetadata().containsKey("timeout")) {
             obj.put("timeout", map.getMetadata().get("timeout"));
         }
         IO.metadata(obj, map);
-        if (!obj.has("modified")) {
+        if (fields.has("modified") && !obj.has("modified")) {
             Resource r = dataDir().config(map);
             if (r.getType() != Type.UNDEFINED) {
                 IO.date(obj.putObject("modified"), new Date(r.lastmodified()));
             }
         }
 
-        return obj;
+        return fields.select(obj);
     }
     /** Complete map description suitable for editing. */
     JSONObj mapDetails(JSONObj obj, LayerGroupInfo map, String wsName, HttpServletRequest req) {
-        map(obj,map,wsName);
+        return mapDetails(obj, map, wsName, req, Fields.ALL);
+    }
+
+    /** Complete map description with the requested fields, and those of its layers. */
+    JSONObj mapDetails(JSONObj obj, LayerGroupInfo map, String wsName, HttpServletRequest req, Fields fields) {
+        map(obj,map,wsName,fields);
         
-        List<PublishedInfo> published = Lists.reverse(map.getLayers());
-        JSONArr layers = obj.putArray("layers");
-        for (PublishedInfo l : published) {
-            layer(layers.addObject(), l, req);
+        if (fields.has("layers")) {
+            Fields layerFields = fields.nested("layers");
+            List<PublishedInfo> published = Lists.reverse(map.getLayers());
+            JSONArr layers = obj.putArray("layers");
+            for (PublishedInfo l : published) {
+                layer(layers.addObject(), l, req, layerFields);
+            }
         }
         return obj;
     }
     
     private JSONObj layer(JSONObj obj, PublishedInfo l, HttpServletRequest req) {
+        return layer(obj, l, req, Fields.ALL);
+    }
+
+    private JSONObj layer(JSONObj obj, PublishedInfo l, HttpServletRequest req, Fields fields) {
         if (l instanceof LayerInfo) {
             LayerInfo info = (LayerInfo) l;
             
-            IO.layerDetails(obj, info, req);
+            IO.layerDetails(obj, info, req, fields);
             
             ResourceInfo r = info.getResource();
             String wsName = r.getNamespace().getPrefix();
 //            obj.put("workspace", wsName);
 //            obj.put("name", info.getName());
-            obj.put("url",IO.url(req,"/layers/%s/%s",wsName,r.getName()));
+            if (fields.has("url")) {
+                obj.put("url",IO.url(req,"/layers/%s/%s",wsName,r.getName()));
+            }
 //            obj.put("title", IO.title(info));
 //            obj.put("description", IO.description(info));
 //            obj.put("type",IO.Type.of(info.getResource()).toString());
-            StoreInfo store = r.getStore();
-            obj.putObject("resource")
-                .put("name",r.getNativeName())
-                .put("workspace",wsName)
-                .put("store",store.getName())
-                    .put("url",
-                         IO.url(req, "/stores/%s/%s/%s", wsName, store.getName(),r.getNativeName())
-                );
+            if (fields.has("resource")) {
+                StoreInfo store = r.getStore();
+                obj.putObject("resource")
+                    .put("name",r.getNativeName())
+                    .put("workspace",wsName)
+                    .put("store",store.getName())
+                        .put("url",
+                             IO.url(req, "/stores/%s/%s/%s", wsName, store.getName(),r.getNativeName())
+                    );
+            }
             
         } else if (l instanceof LayerGroupInfo) {
             LayerGroupInfo group = (LayerGroupInfo) l;
             
-            IO.layerDetails(obj, group, req);
+            IO.layerDetails(obj, group, req, fields);
 //            String wsName = group.getWorkspace().getName();
 //            obj.put("workspace", wsName);
 //            obj.put("name", group.getName());
@@ -21,6 +21,7 @@ public class Metadata {
     static final String CREATED = "created";
     static final String MODIFIED = "modified";
     static final String IMPORTED = "imported";
+    static final String BOUNDS_ESTIMATED = "boundsEstimated";
     
     public static void created(Info obj, Date created) {
         MetadataMap map = map(obj);
@@ -40,6 +41,21 @@ public class Metadata {
         return Converters.convert(map(obj).get(MODIFIED), Date.class);
     }
 
+    /**
+     * Flags the bounds of a resource as estimated, while the actual bounds are computed.
+     */
+    public static void boundsEstimated(Info obj, boolean estimated) {
+        if (estimated) {
+            map(obj).put(BOUNDS_ESTIMATED, Boolean.TRUE);
+        } else {
+            map(obj).remove(BOUNDS_ESTIMATED);
+        }
+    }
+
+    public static boolean boundsEstimated(Info obj) {
+        return Boolean.TRUE.equals(Converters.convert(map(obj).get(BOUNDS_ESTIMATED), Boolean.class));
+    }
+
     static MetadataMap map(Info obj) {
         Object map = OwsUtils.get(obj, "metadata");
         if (map != null && map instanceof MetadataMap) {
@@ -59,6 +59,8 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 
 import com.boundlessgeo.geoserver.json.JSONArr;
 import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.json.JSONStream;
+import com.boundlessgeo.geoserver.json.JSONStreamWriter;
 
 /**
  * Used to connect to data storage (file, database, or service).
@@ -84,20 +86,30 @@ import com.boundlessgeo.geoserver.json.JSONObj;
      * @param count Number of items per page
      * @param sort Sort order (asc or desc)
      * @param textFilter Search filter to limit results
+     * @param cursor Position in the list, instead of page: empty for the first page, then the
+     * "next" cursor of the previous page. See {@link Cursor}.
+     * @param withTotal Whether to count all matching stores when paging by cursor
+     * @param fields Comma separated properties of the stores to encode, all of them if omitted
      * @param req The HTTP request
      * @return A JSONObj containing the current page, the number of items returned, the total number
-     * of stores matching the current filter, and the list of stores for the current page.
+     * of stores matching the current filter, and the list of stores for the current page. Stores 
+     * are encoded as they are read from the catalog.
      */
     @RequestMapping(value = "/{wsName:.+}", method = RequestMethod.GET)
     public @ResponseBody
-    JSONObj list(@PathVariable String wsName, 
-            @RequestParam(value="page", required=false) Integer page,
-            @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) Integer count,
+    JSONStream list(@PathVariable String wsName, 
+            @RequestParam(value="page", required=false) final Integer page,
+            @RequestParam(value="count", required=false, defaultValue=""+DEFAULT_PAGESIZE) final Integer count,
             @RequestParam(value="sort", required=false) String sort,
             @RequestParam(value="filter", required=false) String textFilter, 
-            HttpServletRequest req) {
+            @RequestParam(value="cursor", required=false) String cursor,
+            @RequestParam(value="total", required=false) Boolean withTotal,
+            @RequestParam(value="fields", required=false) String fields,
+            final HttpServletRequest req) {
         
-        Catalog cat = geoServer.getCatalog();
+        final Catalog cat = geoServer.getCatalog();
+        final Fields requested = Fields.parse(fields);
+        final Cursor position = Cursor.parse(cursor, parseSort(sort));
         
         if ("default".equals(wsName)) {
             WorkspaceInfo def = cat.getDefaultWorkspace();
@@ -111,26 +123,70 @@ import com.boundlessgeo.geoserver.json.JSONObj;
             filter = Predicates.and(filter, Predicates.fullTextSearch(textFilter));
         }
         
-        SortBy sortBy = parseSort(sort);
+        final Integer total = counted(withTotal, position) ? cat.count(StoreInfo.class, filter) : null;
         
-        Integer total = cat.count(StoreInfo.class, filter);
+        if (position != null) {
+            final Filter query = position.filter(filter);
+            final int size = count != null ? count : DEFAULT_PAGESIZE;
+            return new JSONStream() {
+                @Override
+                public void write(JSONStreamWriter out) throws IOException {
+                    out.object();
+                    if (total != null) {
+                        out.put("total", total);
+                    }
+                    out.putArray("stores");
+                    int n = 0;
+                    String last = null;
+                    boolean more = false;
+                    try (
+                        // one more than the page, to tell if there is a next page
+                        CloseableIterator<StoreInfo> it =
+                            cat.list(StoreInfo.class, query, null, size + 1, position.sort());
+                    ) {
+                        while (it.hasNext()) {
+                            StoreInfo store = it.next();
+                            if (n == size) {
+                                more = true;
+                                break;
+                            }
+                            out.value(IO.store(new JSONObj(), store, req, geoServer, requested));
+                            last = store.getName();
+                            n++;
+                        }
+                    }
+                    out.endArray().put("count", n);
+                    if (more) {
+                        out.put("next", position.next(last).encode());
+                    }
+                    out.endObject();
+                }
+            };
+        }
         
-        JSONObj obj = new JSONObj();
-        obj.put("total", total);
-        obj.put("page", page != null ? page : 0);
-        obj.put("count", Math.min(total, count != null ? count : total));
+        final SortBy sortBy = parseSort(sort);
+        final Filter query = filter;
         
-        JSONArr arr = obj.putArray("stores");
-        try (
-            CloseableIterator<StoreInfo> it =
-                cat.list(StoreInfo.class, filter, offset(page, count), count, sortBy);
-        ) {
-            while (it.hasNext()) {
-                StoreInfo store = it.next();
-                IO.store(arr.addObject(), store, req, geoServer);
+        return new JSONStream() {
+            @Override
+            public void write(JSONStreamWriter out) throws IOException {
+                out.object()
+                    .put("total", total)
+                    .put("page", page != null ? page : 0)
+                    .put("count", Math.min(total, count != null ? count : total))
+                    .putArray("stores");
+                try (
+                    CloseableIterator<StoreInfo> it =
+                        cat.list(StoreInfo.class, query, offset(page, count), count, sortBy);
+                ) {
+                    while (it.hasNext()) {
+                        StoreInfo store = it.next();
+                        out.value(IO.store(new JSONObj(), store, req, geoServer, requested));
+                    }
+                }
+                out.endArray().endObject();
             }
-        }
-        return obj;
+        };
     }
     
     /**
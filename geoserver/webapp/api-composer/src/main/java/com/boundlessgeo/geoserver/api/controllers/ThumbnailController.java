@@ -3,9 +3,7 @@
  */
 package com.boundlessgeo.geoserver.api.controllers;
 
-import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.File;
@@ -13,47 +11,98 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.imageio.ImageIO;
+import javax.media.jai.PlanarImage;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.io.IOUtils;
 import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupHelper;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.config.GeoServer;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.WebMap;
 import org.geoserver.wms.WebMapService;
+import org.geoserver.wms.map.RenderedImageMap;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
+import org.geotools.styling.Style;
 import org.geotools.util.logging.Logging;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import com.boundlessgeo.geoserver.AppConfiguration;
+import com.boundlessgeo.geoserver.CacheManager;
 import com.boundlessgeo.geoserver.catalog.ThumbnailInvalidatingCatalogListener;
+import com.boundlessgeo.geoserver.catalog.ThumbnailWarmer;
+import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.util.CoalescingExecutor;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import static com.boundlessgeo.geoserver.api.controllers.ApiController.API_PATH;
+import static com.boundlessgeo.geoserver.util.PropertyUtil.property;
 
 @Controller("apiThumbnailController")
 @RequestMapping(API_PATH+"/thumbnails")
-public class ThumbnailController extends ApiController {
+public class ThumbnailController extends ApiController implements InitializingBean, DisposableBean {
     
     private static Logger LOG = Logging.getLogger(ThumbnailController.class);
     static final String TYPE = "png";
@@ -62,6 +111,23 @@ public class ThumbnailController extends ApiController {
     public static final String EXTENSION_HR = "@2x.png";
     public static final int THUMBNAIL_SIZE = 75;
     
+    /** Number of threads rendering thumbnails */
+    static final int DEFAULT_THREADS = 2;
+    /** Number of thumbnail renders that may wait for a thread before requests are turned away */
+    static final int DEFAULT_QUEUE_SIZE = 100;
+    /** Time (in seconds) a request waits for a render before returning a placeholder */
+    static final int DEFAULT_TIMEOUT = 30;
+    /** Retry-After (in seconds) sent with a placeholder */
+    static final int RETRY_AFTER = 2;
+    /** Size (in bytes) of the in-memory thumbnail cache */
+    static final long DEFAULT_MEMORY_CACHE_SIZE = 16 * 1024 * 1024;
+    /** Time (in seconds) clients may reuse a thumbnail before revalidating it */
+    static final int DEFAULT_MAX_AGE = 3600;
+    /** Time (in hours) thumbnail files no longer used by any layer or map are kept */
+    static final int DEFAULT_RETENTION = 24;
+    /** Interval (in minutes) between removals of unused thumbnail files */
+    static final int DEFAULT_GC_INTERVAL = 60;
+    
     @Autowired
     @Qualifier("wmsServiceTarget")
     WebMapService wms;
@@ -69,11 +135,116 @@ public class ThumbnailController extends ApiController {
     @Autowired
     AppConfiguration config;
     
-    Striped<Semaphore> semaphores = Striped.semaphore(4, 1);
+    @Autowired
+    ThumbnailWarmer warmer;
+    
+    /** Guards thumbnail files while they are being written */
+    Striped<Lock> locks = Striped.lazyWeakLock(64);
+    
+    /** Thumbnail files, addressed by a hash of the render inputs */
+    ThumbnailStore store;
+    
+    /** Encodes rendered images into thumbnail files */
+    ThumbnailEncoder encoder = new ThumbnailEncoder();
+    
+    /** Removes thumbnail files no longer used */
+    ScheduledExecutorService collector;
+    
+    /** Renders thumbnails, sharing a single render between requests for the same thumbnail */
+    CoalescingExecutor<String, Void> renderer;
+    
+    int timeout;
+    
+    /** Encoded thumbnails recently read from the cache directory, keyed by {@link #cacheKey} */
+    Cache<String, Thumbnail> memoryCache;
+    
+    /** 
+     * Revision of each thumbnail file, incremented every time the file is written. Dropped once 
+     * the files are collected, see {@link #forget()}.
+     */
+    final ConcurrentMap<String, AtomicLong> revisions = new ConcurrentHashMap<String, AtomicLong>();
+    
+    int maxAge;
+    
+    /** Whether the layers and maps of the catalog have been bound since startup */
+    boolean bound;
     
     @Autowired
     public ThumbnailController(GeoServer geoServer) {
         super(geoServer);
+        renderer = new CoalescingExecutor<String, Void>("composer-thumbnail",
+                property("COMPOSER_THUMBNAIL_THREADS", DEFAULT_THREADS),
+                property("COMPOSER_THUMBNAIL_QUEUE", DEFAULT_QUEUE_SIZE));
+        timeout = property("COMPOSER_THUMBNAIL_TIMEOUT", DEFAULT_TIMEOUT);
+        maxAge = property("COMPOSER_THUMBNAIL_MAX_AGE", DEFAULT_MAX_AGE);
+        memoryCache = CacheBuilder.newBuilder()
+            .maximumWeight(property("COMPOSER_THUMBNAIL_MEMORY", DEFAULT_MEMORY_CACHE_SIZE))
+            .weigher(new Weigher<String, Thumbnail>() {
+                @Override
+                public int weigh(String key, Thumbnail value) {
+                    return value.bytes.length;
+                }
+            })
+            .recordStats()
+            .build();
+    }
+    
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        store = new ThumbnailStore(config);
+        
+        final long retention = TimeUnit.HOURS.toMillis(property("COMPOSER_THUMBNAIL_RETENTION", DEFAULT_RETENTION));
+        long interval = property("COMPOSER_THUMBNAIL_GC_INTERVAL", DEFAULT_GC_INTERVAL);
+        collector = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("composer-thumbnail-gc").setDaemon(true).build());
+        collector.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!bound) {
+                        bindAll();
+                        bound = true;
+                    }
+                    store.sweep(catalog());
+                    store.gc(retention);
+                    forget();
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Unable to remove unused thumbnails", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+    
+    /**
+     * Binds every layer and map of the catalog to the key of its thumbnail. Bindings are held in 
+     * memory only, so until this has run after a startup, the files of layers and maps not yet 
+     * requested would look unused to {@link ThumbnailStore#gc(long)}.
+     */
+    void bindAll() {
+        Catalog catalog = catalog();
+        bindAll(catalog, LayerInfo.class);
+        bindAll(catalog, LayerGroupInfo.class);
+    }
+    
+    <T extends PublishedInfo> void bindAll(Catalog catalog, Class<T> type) {
+        try (CloseableIterator<T> it = catalog.list(type, Predicates.acceptAll())) {
+            while (it.hasNext()) {
+                T layer = it.next();
+                try {
+                    thumbnailKey(layer);
+                } catch (Exception e) {
+                    LOG.log(Level.FINE, "Unable to compute the thumbnail key of "+layer.prefixedName(), e);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void destroy() throws Exception {
+        renderer.shutdown();
+        if (collector != null) {
+            collector.shutdownNow();
+        }
     }
     
     /**
@@ -82,21 +253,29 @@ public class ThumbnailController extends ApiController {
      * @param wsName Workspace name
      * @param name Map name
      * @param hiRes Whether or not to return a high-res thumbnail. Optional, defaults to false
+     * @param async Whether to return a placeholder immediately if the thumbnail has to be 
+     * generated. Optional, defaults to false
      * @param request
      * @return HttpEntity containing the thumbnail image as a byte array
      * @throws Exception
      */
     @RequestMapping(value = "/maps/{wsName:.+}/{name:.+}", method = RequestMethod.GET)
-    public HttpEntity<byte[]> getMap(@PathVariable String wsName, 
+    public ResponseEntity<byte[]> getMap(@PathVariable String wsName, 
             @PathVariable String name, 
             @RequestParam(value="hiRes", required=false, defaultValue="false") Boolean hiRes,
+            @RequestParam(value="async", required=false, defaultValue="false") Boolean async,
             HttpServletRequest request) throws Exception {
         
         Catalog catalog = geoServer.getCatalog();
         WorkspaceInfo ws = findWorkspace(wsName, catalog);
         LayerGroupInfo map = findMap(wsName, name, catalog);
         
-        return get(ws, map, hiRes, request);
+        return get(ws, map, hiRes, async, request);
+    }
+    
+    public ResponseEntity<byte[]> getMap(String wsName, String name, Boolean hiRes,
+            HttpServletRequest request) throws Exception {
+        return getMap(wsName, name, hiRes, false, request);
     }
     
     /**
@@ -105,21 +284,95 @@ public class ThumbnailController extends ApiController {
      * @param wsName Workspace name
      * @param name Layer name
      * @param hiRes Whether or not to return a high-res thumbnail. Optional, defaults to false
+     * @param async Whether to return a placeholder immediately if the thumbnail has to be 
+     * generated. Optional, defaults to false
      * @param request
      * @return HttpEntity containing the thumbnail image as a byte array
      * @throws Exception
      */
     @RequestMapping(value = "/layers/{wsName:.+}/{name:.+}", method = RequestMethod.GET)
-    public HttpEntity<byte[]> getLayer(@PathVariable String wsName, 
+    public ResponseEntity<byte[]> getLayer(@PathVariable String wsName, 
             @PathVariable String name, 
             @RequestParam(value="hiRes", required=false, defaultValue="false") Boolean hiRes,
+            @RequestParam(value="async", required=false, defaultValue="false") Boolean async,
             HttpServletRequest request) throws Exception {
         
         Catalog catalog = geoServer.getCatalog();
         WorkspaceInfo ws = findWorkspace(wsName, catalog);
         LayerInfo layer = findLayer(wsName, name, catalog);
         
-        return get(ws, layer, hiRes, request);
+        return get(ws, layer, hiRes, async, request);
+    }
+    
+    public ResponseEntity<byte[]> getLayer(String wsName, String name, Boolean hiRes,
+            HttpServletRequest request) throws Exception {
+        return getLayer(wsName, name, hiRes, false, request);
+    }
+    
+    /**
+     * API endpoint to regenerate the thumbnails of all layers and maps in a workspace in the 
+     * background, for instance after a bulk import. 
+     * @param wsName The workspace name
+     * @return JSON object containing the number of layers and maps "queued"
+     */
+    @RequestMapping(value = "/warm/{wsName:.+}", method = RequestMethod.POST)
+    public @ResponseBody JSONObj warm(@PathVariable String wsName) {
+        WorkspaceInfo ws = findWorkspace(wsName, geoServer.getCatalog());
+        return new JSONObj().put("queued", warmer.warm(ws));
+    }
+    
+    /**
+     * Endpoint reporting the state of the thumbnail renderer:
+     * {
+     *   "queued": 0,
+     *   "active": 1,
+     *   "rendered": 20,
+     *   "failed": 0,
+     *   "coalesced": 12,
+     *   "rejected": 0,
+     *   "warming": 3,
+     *   "renderTime": { "total": 4000, "average": 200, "max": 350 }
+     * }
+     * Times are in milliseconds. Also reports the "memory" thumbnail cache entries, hits, 
+     * misses and evictions, and the number of thumbnail "files" in use and collected.
+     * @return JSON object containing the renderer metrics
+     */
+    @RequestMapping(value = "/stats", method = RequestMethod.GET)
+    public @ResponseBody JSONObj stats() {
+        JSONObj obj = new JSONObj();
+        long finished = renderer.completed() + renderer.failed();
+        obj.put("queued", renderer.queued())
+           .put("active", renderer.active())
+           .put("rendered", renderer.completed())
+           .put("failed", renderer.failed())
+           .put("coalesced", renderer.coalesced())
+           .put("rejected", renderer.rejected())
+           .put("warming", warmer == null ? 0 : warmer.pending());
+        obj.putObject("renderTime")
+           .put("total", renderer.totalTime())
+           .put("average", finished == 0 ? 0 : renderer.totalTime() / finished)
+           .put("max", renderer.maxTime());
+        CacheStats cacheStats = memoryCache.stats();
+        obj.putObject("memory")
+           .put("entries", memoryCache.size())
+           .put("hits", cacheStats.hitCount())
+           .put("misses", cacheStats.missCount())
+           .put("evictions", cacheStats.evictionCount());
+        obj.putObject("files")
+           .put("keys", store.refs.size())
+           .put("collected", store.collected())
+           .put("swept", store.swept());
+        CacheManager cache = config.cache();
+        if (cache != null) {
+            obj.putObject("cache")
+               .put("files", cache.size())
+               .put("bytes", cache.bytes())
+               .put("maxFiles", cache.maxFiles())
+               .put("maxBytes", cache.maxBytes())
+               .put("evicted", cache.evicted())
+               .put("failedDeletes", cache.failed());
+        }
+        return obj;
     }
     
     /**
@@ -130,26 +383,237 @@ public class ThumbnailController extends ApiController {
      * @return HttpEntity containing the thumbnail image as a byte array
      * @throws Exception
      */
-    public HttpEntity<byte[]> get(WorkspaceInfo ws, PublishedInfo layer, boolean hiRes, HttpServletRequest request) throws Exception {
-        String path = thumbnailFilename(layer, hiRes);
-        FileInputStream in = null;
-        
-        File thumbnailFile;
-        //If the file has been deleted, recreate it
-        if (!config.cacheFile(path).exists()) {
-            createThumbnail(ws, layer, request);
+    public ResponseEntity<byte[]> get(WorkspaceInfo ws, PublishedInfo layer, boolean hiRes, HttpServletRequest request) throws Exception {
+        return get(ws, layer, hiRes, false, request);
+    }
+    
+    /**
+     * Retrieve or create the thumbnail for a PublishedInfo.
+     * 
+     * If the thumbnail has to be generated, the render is queued on the thumbnail renderer. 
+     * Unless async is set, the request then waits for the render to complete. If async is set, 
+     * the render queue is full, or the render takes too long, a blank placeholder is returned 
+     * with a 202 status and a Retry-After header, so that the client can poll for the thumbnail.
+     * 
+     * Thumbnails are served from memory when possible, falling back to the cache directory. The 
+     * response carries a strong ETag derived from the thumbnail contents, and a conditional 
+     * request (If-None-Match / If-Modified-Since) for an unchanged thumbnail gets a 304 response.
+     * 
+     * @param ws Workspace for the layer
+     * @param layer LayerInfo or LayerGroupInfo to get the thumbnail of
+     * @param hiRes Flag to return hi-res (x2) thumbnail
+     * @param async Flag to return a placeholder rather than wait for the thumbnail to render
+     * @return HttpEntity containing the thumbnail image as a byte array
+     * @throws Exception
+     */
+    public ResponseEntity<byte[]> get(WorkspaceInfo ws, PublishedInfo layer, boolean hiRes, boolean async, HttpServletRequest request) throws Exception {
+        String key = thumbnailKey(layer);
+        Thumbnail thumbnail = memoryCache.getIfPresent(cacheKey(key, hiRes));
+        if (thumbnail != null) {
+            store.accessed(key, hiRes);
+            return thumbnail(thumbnail, request);
+        }
+        //If there is no file for the current render inputs, create it, or join the render in progress.
+        //Files are only written once the render succeeds, so an existing file is always complete.
+        if (!store.file(key, hiRes).exists()) {
+            Future<Void> render;
+            try {
+                render = queueThumbnail(ws, layer);
+            } catch (RejectedExecutionException e) {
+                LOG.fine("Thumbnail queue full, returning placeholder for "+layer.prefixedName());
+                return placeholder(layer, hiRes);
+            }
+            if (async) {
+                return placeholder(layer, hiRes);
+            }
+            try {
+                render.get(timeout, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                return placeholder(layer, hiRes);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), Exception.class);
+                throw e;
+            }
         }
         try {
-            thumbnailFile = config.cacheFile(path);
-            in = new FileInputStream(thumbnailFile);
-            byte[] bytes = IOUtils.toByteArray(in);
-            final HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(MIME_TYPE));
-            headers.setLastModified(thumbnailFile.lastModified());
-            return new HttpEntity<byte[]>(bytes, headers);
-        } finally {
-            if (in != null) { in.close(); }
+            return thumbnail(readThumbnail(key, hiRes), request);
+        } catch (FileNotFoundException e) {
+            //Evicted from the cache directory since the check, render it again
+            LOG.fine("Thumbnail evicted while reading, returning placeholder for "+layer.prefixedName());
+            try {
+                queueThumbnail(ws, layer);
+            } catch (RejectedExecutionException re) {
+                //picked up by the next request
+            }
+            return placeholder(layer, hiRes);
+        }
+    }
+    
+    /**
+     * Reads a thumbnail from the cache directory into the memory cache, under the current 
+     * revision of its key (see {@link #cacheKey}), so a copy read before the file is written 
+     * again is never served afterwards. The bytes are shared by every response served from 
+     * memory, and are not to be modified.
+     */
+    Thumbnail readThumbnail(String key, boolean hiRes) throws IOException {
+        //Read the revision before the file, so a concurrent update is never cached under the new revision
+        String cacheKey = cacheKey(key, hiRes);
+        File thumbnailFile = store.file(key, hiRes);
+        try (FileChannel channel = new FileInputStream(thumbnailFile).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                //read until full
+            }
+            byte[] bytes = buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+            Thumbnail thumbnail = new Thumbnail(bytes, thumbnailFile.lastModified());
+            memoryCache.put(cacheKey, thumbnail);
+            store.accessed(key, hiRes);
+            return thumbnail;
+        }
+    }
+    
+    /**
+     * Response for a thumbnail, or 304 if the client already holds the current version.
+     */
+    ResponseEntity<byte[]> thumbnail(Thumbnail thumbnail, HttpServletRequest request) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(MIME_TYPE));
+        headers.setLastModified(thumbnail.lastModified);
+        headers.setETag(thumbnail.etag);
+        headers.setCacheControl("private, max-age="+maxAge);
+        if (notModified(thumbnail, request)) {
+            return new ResponseEntity<byte[]>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<byte[]>(thumbnail.bytes, headers, HttpStatus.OK);
+    }
+    
+    static boolean notModified(Thumbnail thumbnail, HttpServletRequest request) {
+        if (request == null) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            //If-None-Match takes precedence over If-Modified-Since
+            for (String etag : ifNoneMatch.split(",")) {
+                etag = etag.trim();
+                if (etag.equals("*") || etag.equals(thumbnail.etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        //HTTP dates have second precision
+        return ifModifiedSince != -1 && thumbnail.lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+    
+    /**
+     * Key of a thumbnail in the memory cache. Includes the thumbnail revision, so that entries 
+     * cached before the thumbnail was updated are never returned.
+     */
+    String cacheKey(String key, boolean hiRes) {
+        return ThumbnailStore.filename(key, hiRes)+"@"+revision(key).get();
+    }
+    
+    AtomicLong revision(String key) {
+        AtomicLong revision = revisions.get(key);
+        if (revision == null) {
+            AtomicLong created = new AtomicLong();
+            revision = revisions.putIfAbsent(key, created);
+            if (revision == null) {
+                revision = created;
+            }
+        }
+        return revision;
+    }
+    
+    /**
+     * Moves a thumbnail to a new revision, dropping the copies held in memory.
+     */
+    void invalidate(String key) {
+        memoryCache.invalidate(cacheKey(key, false));
+        memoryCache.invalidate(cacheKey(key, true));
+        revision(key).incrementAndGet();
+    }
+    
+    /**
+     * Drops the revisions of thumbnails that are no longer bound and whose files have been 
+     * collected, along with any copies held in memory, so revisions are only kept for thumbnails 
+     * that are in use or still on disk.
+     */
+    void forget() {
+        for (Map.Entry<String, AtomicLong> e : revisions.entrySet()) {
+            String key = e.getKey();
+            if (store.refCount(key) == 0 && !store.file(key, false).exists() && !store.file(key, true).exists()) {
+                memoryCache.invalidate(ThumbnailStore.filename(key, false)+"@"+e.getValue().get());
+                memoryCache.invalidate(ThumbnailStore.filename(key, true)+"@"+e.getValue().get());
+                revisions.remove(key, e.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Encoded thumbnail held in memory.
+     */
+    static class Thumbnail {
+        final byte[] bytes;
+        final long lastModified;
+        final String etag;
+        
+        Thumbnail(byte[] bytes, long lastModified) {
+            this.bytes = bytes;
+            this.lastModified = lastModified;
+            this.etag = "\""+Hashing.sha256().hashBytes(bytes).toString().substring(0, 32)+"\"";
+        }
+    }
+    
+    /**
+     * Queues the creation of a thumbnail on the thumbnail renderer. If a render of the same 
+     * thumbnail is already queued or running, returns that render instead.
+     * 
+     * @param ws The workspace of the layer
+     * @param layer The layer or layerGroup to create the thumbnail for
+     * @return Future completing when the thumbnail has been written to the cache, already done if 
+     * the thumbnail files exist
+     * @throws RejectedExecutionException If the render queue is full
+     */
+    public Future<Void> queueThumbnail(final WorkspaceInfo ws, final PublishedInfo layer) throws RejectedExecutionException, IOException {
+        String key = thumbnailKey(layer);
+        if (store.file(key, false).exists() && store.file(key, true).exists()) {
+            return Futures.immediateFuture(null);
         }
+        //Render with the credentials of the requester
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return renderer.submit(key, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final Authentication oldAuth = SecurityContextHolder.getContext().getAuthentication();
+                SecurityContextHolder.getContext().setAuthentication(auth);
+                try {
+                    createThumbnail(ws, layer);
+                } finally {
+                    SecurityContextHolder.getContext().setAuthentication(oldAuth);
+                }
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Blank thumbnail returned while the actual thumbnail is being rendered.
+     */
+    ResponseEntity<byte[]> placeholder(PublishedInfo layer, boolean hiRes) throws IOException {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(MIME_TYPE));
+        headers.setCacheControl("no-cache, no-store");
+        headers.setETag("W/\"pending-"+AppConfiguration.sanitizeFilename(layer.getId())+"\"");
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER));
+        return new ResponseEntity<byte[]>(ThumbnailEncoder.BLANK.bytes(hiRes), headers, HttpStatus.ACCEPTED);
     }
     
     /**
@@ -159,144 +623,235 @@ public class ThumbnailController extends ApiController {
      * @return The thumbnail image as a Resource
      * @throws Exception
      */
-    protected void createThumbnail(WorkspaceInfo ws, PublishedInfo layer, HttpServletRequest baseRequest) throws Exception {
-        //Sync against this map/layer
-        Semaphore s = semaphores.get(layer);
-        s.acquire();
+    protected void createThumbnail(WorkspaceInfo ws, PublishedInfo layer) throws Exception {
+        //Only write once rendered: the files are addressed by content, so a placeholder written 
+        //under the key would be served as the actual thumbnail by every other request
+        BufferedImage image = renderThumbnail(layer);
+        if (image == null) {
+            throw new RuntimeException("Failed to encode thumbnail for "+ws.getName()+":"+layer.getName());
+        }
+        writeThumbnail(layer, image);
+    }
+    
+    /**
+     * Renders the hi-res thumbnail image for a layer or map by calling the WMS GetMap operation 
+     * directly, rather than issuing a request back to the /wms/reflect endpoint.
+     * 
+     * The smallest bbox dimension is used as the min dimension, so that the other dimension can 
+     * later be cropped to give a square thumbnail.
+     * 
+     * @param layer LayerInfo or LayerGroupInfo to render
+     * @return The rendered image, or null if the WMS did not produce an image
+     * @throws Exception If there is an error rendering the map
+     */
+    protected BufferedImage renderThumbnail(PublishedInfo layer) throws Exception {
+        GetMapRequest request = new GetMapRequest();
+        Map<String, String> kvp = new HashMap<String, String>();
+        
+        RenderInputs inputs = renderInputs(layer);
+        List<MapLayerInfo> layers = new ArrayList<MapLayerInfo>();
+        List<Style> styles = new ArrayList<Style>();
+        for (int i = 0; i < inputs.layers.size(); i++) {
+            StyleInfo style = inputs.styles.get(i);
+            layers.add(new MapLayerInfo(inputs.layers.get(i)));
+            styles.add(style == null ? null : style.getStyle());
+        }
+        ReferencedEnvelope bbox = inputs.bbox;
+        CoordinateReferenceSystem crs = bbox.getCoordinateReferenceSystem();
+        
+        //Set the size of the HR thumbnail
+        int width, height;
+        if (bbox.getWidth() < bbox.getHeight()) {
+            width = 2*THUMBNAIL_SIZE;
+            height = (int) (2*THUMBNAIL_SIZE*Math.round(bbox.getHeight()/bbox.getWidth()));
+        } else {
+            height = 2*THUMBNAIL_SIZE;
+            width = (int) (2*THUMBNAIL_SIZE*Math.round(bbox.getWidth()/bbox.getHeight()));
+        }
+        
+        request.setLayers(layers);
+        request.setStyles(styles);
+        request.setBbox(bbox);
+        request.setCrs(crs);
+        request.setSRS(crs == null ? null : CRS.toSRS(crs));
+        request.setWidth(width);
+        request.setHeight(height);
+        request.setFormat(MIME_TYPE);
+        request.setTransparent(true);
+        
+        kvp.put("FORMAT", MIME_TYPE);
+        kvp.put("WIDTH", String.valueOf(width));
+        kvp.put("HEIGHT", String.valueOf(height));
+        request.setRawKvp(kvp);
+        
+        //Run the getMap request directly against the WMS, in process
+        WebMap map = wms.getMap(request);
         try {
-            //(SUITE-1072) Initialize the thumbnail to a blank image in case the WMS request crashes geoserver
-            BufferedImage blankImage = new BufferedImage(THUMBNAIL_SIZE*2, THUMBNAIL_SIZE*2, BufferedImage.TYPE_4BYTE_ABGR);
-            Graphics2D g = blankImage.createGraphics();
-            g.setColor(new Color(0, 0, 0, 0));
-            g.fillRect(0, 0, blankImage.getWidth(), blankImage.getHeight());
-            writeThumbnail(layer, blankImage);
-            
-            //Set up getMap request
-            String url = baseRequest.getScheme()+"://localhost:"+baseRequest.getLocalPort()
-            + baseRequest.getContextPath()+"/"+ws.getName()+"/wms/reflect";
-            
-            url += "?FORMAT="+MIME_TYPE;
-            
-            ReferencedEnvelope bbox = null;
-            if (layer instanceof LayerInfo) {
-                url += "&LAYERS="+layer.getName();
-                url += "&STYLES="+((LayerInfo)layer).getDefaultStyle().getName();
-                bbox = ((LayerInfo)layer).getResource().boundingBox();
-            } else if (layer instanceof LayerGroupInfo) {
-                
-                LayerGroupHelper helper = new LayerGroupHelper((LayerGroupInfo)layer);
-                bbox = ((LayerGroupInfo)layer).getBounds();
-                url+="&CRS="+CRS.toSRS(bbox.getCoordinateReferenceSystem());
-                
-                List<LayerInfo> layerList = helper.allLayersForRendering();
-                if (layerList.size() > 0) {
-                    url += "&LAYERS=";
-                    for (int i = 0; i  < layerList.size(); i++) {
-                        if (i > 0) {
-                            url+=",";
-                        }
-                        url+=layerList.get(i) == null ? "" : layerList.get(i).getName();
-                    }
-                }
-                List<StyleInfo> styleList = helper.allStylesForRendering();
-                if (styleList.size() > 0) {
-                    url += "&STYLES=";
-                    for (int i = 0; i  < styleList.size(); i++) {
-                        if (i > 0) {
-                            url+=",";
-                        }
-                        if (styleList.get(i) == null) {
-                            url += layerList.get(i).getDefaultStyle() == null ? "" : layerList.get(i).getDefaultStyle().getName();
-                        } else {
-                            url += styleList.get(i) == null ? "" : styleList.get(i).getName();
-                        }
-                    }
-                }
-            } else {
-                throw new RuntimeException("layer must be one of LayerInfo or LayerGroupInfo");
-            }
-            //Set the size of the HR thumbnail
-            //Take the smallest bbox dimension as the min dimension. We can then crop the other 
-            //dimension to give a square thumbnail
-            url+="&BBOX="+((float)bbox.getMinX())+","+((float)bbox.getMinY())+","
-                         +((float)bbox.getMaxX())+","+((float)bbox.getMaxY());
-            if (bbox.getWidth() < bbox.getHeight()) {
-                url+="&WIDTH="+(2*THUMBNAIL_SIZE);
-                url+="&HEIGHT="+(2*THUMBNAIL_SIZE*Math.round(bbox.getHeight()/bbox.getWidth()));
-            } else {
-                url+="&HEIGHT="+(2*THUMBNAIL_SIZE);
-                url+="&WIDTH="+(2*THUMBNAIL_SIZE*Math.round(bbox.getWidth()/bbox.getHeight()));
+            if (!(map instanceof RenderedImageMap)) {
+                return null;
             }
-            
-            //Run the getMap request through the WMS Reflector
-            //WebMap response = wms.reflect(request);            
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-            con.setRequestMethod("GET");
-            BufferedImage image = ImageIO.read(con.getInputStream());
+            RenderedImage image = ((RenderedImageMap) map).getImage();
             if (image == null) {
-                throw new RuntimeException("Failed to encode thumbnail for "+ws.getName()+":"+layer.getName());
+                return null;
+            }
+            if (image instanceof BufferedImage) {
+                return (BufferedImage) image;
             }
-            writeThumbnail(layer, image);
+            return PlanarImage.wrapRenderedImage(image).getAsBufferedImage();
         } finally {
-            s.release();
+            map.dispose();
         }
     }
     
     /**
-     * Clears any cached thumbnail information (called by {@link ThumbnailInvalidatingCatalogListener} when a layer is removed).
-     * 
-     * @param layer
-     * @throws InterruptedException 
+     * Layers, styles and bounds rendered for the thumbnail of a layer or map.
      */
-    public void clearThumbnail(PublishedInfo layer) {
-        Semaphore s = semaphores.get(layer);
-        try {
-            s.acquire();
-        } catch (InterruptedException e) {
-            LOG.finer("Unable to clear thumbnail for "+layer.prefixedName()+":"+e.getMessage());
-            return;
-        }
-        try {
-            File loRes = config.cacheFile(thumbnailFilename(layer));
-            if( loRes.exists() ){
-                boolean removed = loRes.delete();
-                if (!removed) {
-                    loRes.deleteOnExit();
+    static class RenderInputs {
+        final List<LayerInfo> layers = new ArrayList<LayerInfo>();
+        final List<StyleInfo> styles = new ArrayList<StyleInfo>();
+        ReferencedEnvelope bbox;
+    }
+    
+    RenderInputs renderInputs(PublishedInfo layer) {
+        RenderInputs inputs = new RenderInputs();
+        if (layer instanceof LayerInfo) {
+            LayerInfo l = (LayerInfo) layer;
+            inputs.layers.add(l);
+            inputs.styles.add(l.getDefaultStyle());
+            inputs.bbox = l.getResource().boundingBox();
+        } else if (layer instanceof LayerGroupInfo) {
+            LayerGroupHelper helper = new LayerGroupHelper((LayerGroupInfo)layer);
+            inputs.bbox = ((LayerGroupInfo)layer).getBounds();
+            
+            List<LayerInfo> layerList = helper.allLayersForRendering();
+            List<StyleInfo> styleList = helper.allStylesForRendering();
+            for (int i = 0; i < layerList.size(); i++) {
+                LayerInfo l = layerList.get(i);
+                if (l == null) {
+                    continue;
+                }
+                StyleInfo style = i < styleList.size() ? styleList.get(i) : null;
+                if (style == null) {
+                    style = l.getDefaultStyle();
                 }
+                inputs.layers.add(l);
+                inputs.styles.add(style);
+            }
+        } else {
+            throw new RuntimeException("layer must be one of LayerInfo or LayerGroupInfo");
+        }
+        if (inputs.bbox == null) {
+            throw new RuntimeException("Unable to determine bounds for "+layer.prefixedName());
+        }
+        return inputs;
+    }
+    
+    /**
+     * Computes the content key of the thumbnail of a layer or map: a hash of the data rendered, 
+     * the style bodies, the bounds and the CRS. Layers and maps that render identically get the 
+     * same key, regardless of their own ids.
+     * 
+     * @param layer LayerInfo or LayerGroupInfo
+     * @return Hex encoded hash of the render inputs
+     * @throws IOException If a style could not be read
+     */
+    String renderKey(PublishedInfo layer) throws IOException {
+        RenderInputs inputs = renderInputs(layer);
+        Hasher hasher = Hashing.sha256().newHasher()
+            .putString(MIME_TYPE, Charsets.UTF_8)
+            .putInt(THUMBNAIL_SIZE);
+        for (int i = 0; i < inputs.layers.size(); i++) {
+            ResourceInfo resource = inputs.layers.get(i).getResource();
+            hasher.putString(String.valueOf(resource.getStore().getId()), Charsets.UTF_8)
+                  .putString(String.valueOf(resource.getNativeName()), Charsets.UTF_8);
+            if (resource instanceof FeatureTypeInfo) {
+                hasher.putString(String.valueOf(((FeatureTypeInfo) resource).getCqlFilter()), Charsets.UTF_8);
             }
-            File hiRes = config.cacheFile(thumbnailFilename(layer,true));
-            if( hiRes.exists() ){
-                boolean removed = hiRes.delete();
-                if (!removed) {
-                    hiRes.deleteOnExit();
+            StyleInfo style = inputs.styles.get(i);
+            if (style != null) {
+                hasher.putString(String.valueOf(style.getFormat()), Charsets.UTF_8);
+                Resource body = dataDir().style(style);
+                if (body.getType() == Resource.Type.RESOURCE) {
+                    try (InputStream in = body.in()) {
+                        hasher.putBytes(IOUtils.toByteArray(in));
+                    }
+                } else {
+                    //fall back to the style identity
+                    hasher.putString(String.valueOf(style.getId()), Charsets.UTF_8);
                 }
             }
-        } finally {
-            s.release();
         }
+        ReferencedEnvelope bbox = inputs.bbox;
+        hasher.putDouble(bbox.getMinX()).putDouble(bbox.getMinY())
+              .putDouble(bbox.getMaxX()).putDouble(bbox.getMaxY());
+        CoordinateReferenceSystem crs = bbox.getCoordinateReferenceSystem();
+        if (crs != null) {
+            hasher.putString(String.valueOf(CRS.toSRS(crs)), Charsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+    
+    /**
+     * Key of the current thumbnail of a layer or map, computing and binding it if required.
+     */
+    String thumbnailKey(PublishedInfo layer) throws IOException {
+        String key = store.key(layer);
+        if (key == null) {
+            key = store.bind(layer, renderKey(layer));
+        }
+        return key;
+    }
+    
+    /**
+     * Clears any cached thumbnail information (called by {@link ThumbnailInvalidatingCatalogListener} 
+     * when a layer, or anything it depends upon, is changed or removed).
+     * 
+     * The thumbnail files are not removed, as they may be shared with other layers or maps, or be 
+     * used again if the change is reverted. Files no longer in use are removed by 
+     * {@link ThumbnailStore#gc(long)}.
+     * 
+     * @param layer
+     */
+    public void clearThumbnail(PublishedInfo layer) {
+        store.unbind(layer);
     }
     
     protected void writeThumbnail(PublishedInfo layer, BufferedImage image) throws FileNotFoundException, IOException, InterruptedException {
-      //Write the thumbnail files
+        writeThumbnail(layer, encoder.encode(image));
+    }
+    
+    protected void writeThumbnail(PublishedInfo layer, ThumbnailEncoder.Encoded encoded) throws FileNotFoundException, IOException, InterruptedException {
+        //Write the thumbnail files under the content key of the layer
+        String key = thumbnailKey(layer);
+        File dir = new File(config.cacheDir());
         File loResFile = null;
         File hiResFile = null;
         FileOutputStream loRes = null;
         FileOutputStream hiRes = null;
         
+        Lock lock = locks.get(key);
+        lock.lock();
         try {
-            loResFile = config.createCacheFile(thumbnailFilename(layer));
-            hiResFile = config.createCacheFile(thumbnailFilename(layer, true));
+            //Write to temporary files first, as the files may be read concurrently through other layers
+            loResFile = File.createTempFile(key, CacheManager.TEMP_EXTENSION, dir);
+            hiResFile = File.createTempFile(key, CacheManager.TEMP_EXTENSION, dir);
             loRes = new FileOutputStream(loResFile);
             hiRes = new FileOutputStream(hiResFile);
             
-            ImageIO.write(scaleImage(image, 0.5, true), TYPE, loRes);
-            //Don't scale, but crop to square
-            ImageIO.write(scaleImage(image, 1.0, true), TYPE, hiRes);
-        } catch (Exception e) {
+            encoded.write(false, loRes);
+            encoded.write(true, hiRes);
+            loRes.close();
+            hiRes.close();
+            
+            Files.move(loResFile.toPath(), store.file(key, false).toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(hiResFile.toPath(), store.file(key, true).toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            invalidate(key);
+            store.written(key);
+        } finally {
             Closeables.close(loRes, true);
             Closeables.close(hiRes, true);
-            
             //If there was an error, remove the files we created, as they will be invalid
             if (loResFile != null && loResFile.exists()) {
                 loResFile.delete();
@@ -304,18 +859,16 @@ public class ThumbnailController extends ApiController {
             if (hiResFile != null && hiResFile.exists()) {
                 hiResFile.delete();
             }
-            //propagate the exception
-            throw e;
-        } finally {
-            Closeables.close(loRes, true);
-            Closeables.close(hiRes, true);
+            lock.unlock();
         }
     }
     /**
      * Utility method to generate a consistent thumbnail filename
      * @param layer to create the filename for
      * @return relative filename
+     * @deprecated Thumbnails are stored by content key, see {@link ThumbnailStore#filename(String, boolean)}
      */
+    @Deprecated
     public static final String thumbnailFilename(PublishedInfo layer) {
         return thumbnailFilename(layer, false);
     }
@@ -325,7 +878,9 @@ public class ThumbnailController extends ApiController {
      * @param layer to create the filename for
      * @param hiRes is this the name of a hi-res thumbnail file?
      * @return relative filename
+     * @deprecated Thumbnails are stored by content key, see {@link ThumbnailStore#filename(String, boolean)}
      */
+    @Deprecated
     public static final String thumbnailFilename(PublishedInfo layer, boolean hiRes) {
         if (hiRes) {
             return AppConfiguration.sanitizeFilename(layer.getId())+EXTENSION_HR;
@@ -0,0 +1,182 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.geoserver.map.png.PNGJWriter;
+import org.geotools.image.palette.ColorIndexer;
+import org.geotools.image.palette.ColorIndexerDescriptor;
+import org.geotools.image.palette.Quantizer;
+import org.geotools.util.logging.Logging;
+
+import ar.com.hjg.pngj.FilterType;
+
+/**
+ * Encodes the square lo-res and hi-res (@2x) thumbnail files from a rendered map image.
+ * <p>
+ * The hi-res thumbnail is a square crop of the rendered image, taken without copying the
+ * raster, and the lo-res thumbnail is drawn from that crop in a single scaling pass into an
+ * image reused by the rendering thread. Both are reduced to an 8-bit palette and written with
+ * the PNGJ encoder used by the WMS for PNG8 output, into buffers that are also reused by the
+ * rendering thread.
+ * </p>
+ */
+public class ThumbnailEncoder {
+
+    static Logger LOG = Logging.getLogger(ThumbnailEncoder.class);
+
+    /** Fast deflate level, thumbnails are small */
+    static final int COMPRESSION = 4;
+
+    /** Blank thumbnail, shared by every placeholder */
+    public static final Encoded BLANK = blank(ThumbnailController.THUMBNAIL_SIZE);
+
+    final ThreadLocal<BufferedImage> loResImage = new ThreadLocal<BufferedImage>();
+    final ThreadLocal<Buffer> loResBuffer = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+    final ThreadLocal<Buffer> hiResBuffer = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    /**
+     * Encodes the thumbnails of a rendered image.
+     * <p>
+     * The result is backed by buffers of the calling thread, and is only valid until the next
+     * call to this method from the same thread.
+     * </p>
+     * @param image Rendered image, with the smallest dimension being the hi-res thumbnail size
+     * @return The encoded lo-res and hi-res thumbnails
+     * @throws IOException If there is an error encoding the thumbnails
+     */
+    public Encoded encode(BufferedImage image) throws IOException {
+        //Crop to square around the center; the sub image shares the source raster
+        int size = Math.min(image.getWidth(), image.getHeight());
+        int x = (image.getWidth() - size) / 2;
+        int y = (image.getHeight() - size) / 2;
+        BufferedImage hiRes = image.getSubimage(x, y, size, size);
+
+        BufferedImage loRes = loResImage(size / 2);
+        Graphics2D g = loRes.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, loRes.getWidth(), loRes.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(hiRes, 0, 0, loRes.getWidth(), loRes.getHeight(), null);
+        } finally {
+            g.dispose();
+        }
+
+        Buffer loResOut = loResBuffer.get();
+        Buffer hiResOut = hiResBuffer.get();
+        loResOut.reset();
+        hiResOut.reset();
+        write(loRes, loResOut);
+        write(hiRes, hiResOut);
+        return new Encoded(loResOut.array(), loResOut.size(), hiResOut.array(), hiResOut.size());
+    }
+
+    BufferedImage loResImage(int size) {
+        BufferedImage image = loResImage.get();
+        if (image == null || image.getWidth() != size || image.getHeight() != size) {
+            image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            loResImage.set(image);
+        }
+        return image;
+    }
+
+    /**
+     * Writes an image as an 8-bit palette PNG.
+     */
+    static void write(RenderedImage image, OutputStream out) throws IOException {
+        RenderedImage indexed = image;
+        ColorIndexer indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+        if (indexer != null) {
+            indexed = ColorIndexerDescriptor.create(image, indexer, null);
+        }
+        RenderedImage written = null;
+        try {
+            written = new PNGJWriter().writePNG(indexed, out, COMPRESSION, FilterType.FILTER_NONE);
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Falling back on ImageIO to encode thumbnail", e);
+        }
+        if (written == null) {
+            //PNGJ does not handle this image layout
+            ImageIO.write(indexed, ThumbnailController.TYPE, out);
+        }
+    }
+
+    static Encoded blank(int size) {
+        try {
+            ByteArrayOutputStream loRes = new ByteArrayOutputStream();
+            ByteArrayOutputStream hiRes = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR), ThumbnailController.TYPE, loRes);
+            ImageIO.write(new BufferedImage(size*2, size*2, BufferedImage.TYPE_4BYTE_ABGR), ThumbnailController.TYPE, hiRes);
+            return new Encoded(loRes.toByteArray(), loRes.size(), hiRes.toByteArray(), hiRes.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode blank thumbnail", e);
+        }
+    }
+
+    /**
+     * Encoded lo-res and hi-res thumbnails.
+     */
+    public static class Encoded {
+        final byte[] loRes;
+        final int loResLength;
+        final byte[] hiRes;
+        final int hiResLength;
+
+        Encoded(byte[] loRes, int loResLength, byte[] hiRes, int hiResLength) {
+            this.loRes = loRes;
+            this.loResLength = loResLength;
+            this.hiRes = hiRes;
+            this.hiResLength = hiResLength;
+        }
+
+        public void write(boolean hiRes, OutputStream out) throws IOException {
+            if (hiRes) {
+                out.write(this.hiRes, 0, hiResLength);
+            } else {
+                out.write(loRes, 0, loResLength);
+            }
+        }
+
+        /**
+         * The encoded thumbnail. Shared for the {@link ThumbnailEncoder#BLANK} thumbnail, and
+         * must not be modified.
+         */
+        public byte[] bytes(boolean hiRes) {
+            byte[] bytes = hiRes ? this.hiRes : loRes;
+            int length = hiRes ? hiResLength : loResLength;
+            return bytes.length == length ? bytes : java.util.Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /** Output stream giving access to its buffer, so it can be reused without copying */
+    static class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
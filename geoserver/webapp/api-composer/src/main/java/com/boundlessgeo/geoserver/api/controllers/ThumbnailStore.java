@@ -0,0 +1,241 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.PublishedInfo;
+import org.geotools.util.logging.Logging;
+
+import com.boundlessgeo.geoserver.AppConfiguration;
+import com.boundlessgeo.geoserver.CacheManager;
+
+/**
+ * Content addressed storage of thumbnail files in the composer cache directory.
+ * <p>
+ * Thumbnails are stored as <code>&lt;key&gt;.png</code> and <code>&lt;key&gt;@2x.png</code>,
+ * where the key is a hash of the inputs used to render the thumbnail (see
+ * {@link ThumbnailController#renderKey(PublishedInfo)}). Layers and maps that render the same
+ * way, such as copies of a map, or a style that was reverted to an earlier version, share the
+ * same files.
+ * </p>
+ * <p>
+ * Each layer or map is bound to the key of its current thumbnail, and the store counts the
+ * layers bound to each key. Files whose key is no longer bound to any layer are left in place,
+ * so they can be reused, until {@link #gc(long)} removes them once they have gone unused for
+ * longer than the retention period. Files are also subject to the quota of the cache directory
+ * (see {@link CacheManager}), which evicts the least recently used files, whether bound or not.
+ * </p>
+ */
+public class ThumbnailStore {
+
+    static Logger LOG = Logging.getLogger(ThumbnailStore.class);
+
+    final AppConfiguration config;
+
+    /** Key of the current thumbnail of each layer/map id */
+    final ConcurrentMap<String, String> keys = new ConcurrentHashMap<String, String>();
+    /** Ids of the layers/maps bound to each key */
+    final ConcurrentMap<String, Set<String>> refs = new ConcurrentHashMap<String, Set<String>>();
+    /** Time each key was last bound or released, used to retain recently used files */
+    final ConcurrentMap<String, Long> used = new ConcurrentHashMap<String, Long>();
+
+    final AtomicLong collected = new AtomicLong();
+    final AtomicLong swept = new AtomicLong();
+
+    public ThumbnailStore(AppConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * The key currently bound to a layer or map, or null if there is none.
+     */
+    public String key(PublishedInfo layer) {
+        return keys.get(layer.getId());
+    }
+
+    /**
+     * Binds a layer or map to a key, unless it is already bound to one. A layer is released from
+     * its previous key by {@link #unbind(PublishedInfo)}.
+     *
+     * @return The key bound to the layer. If the layer is already bound, or another key was bound
+     * concurrently, that key is kept and returned.
+     */
+    public String bind(PublishedInfo layer, String key) {
+        final String id = layer.getId();
+        String existing = keys.putIfAbsent(id, key);
+        if (existing != null) {
+            return existing;
+        }
+        //add under the map lock, so a concurrent release cannot drop the set being added to
+        refs.compute(key, (k, ids) -> {
+            if (ids == null) {
+                ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            }
+            ids.add(id);
+            return ids;
+        });
+        used.put(key, System.currentTimeMillis());
+        return key;
+    }
+
+    /**
+     * Releases the key bound to a layer or map. The files are kept until collected.
+     */
+    public void unbind(PublishedInfo layer) {
+        String id = layer.getId();
+        String key = keys.remove(id);
+        if (key != null) {
+            release(id, key);
+        }
+    }
+
+    void release(final String id, String key) {
+        refs.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+        used.put(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Number of layers and maps bound to a key.
+     */
+    public int refCount(String key) {
+        Set<String> ids = refs.get(key);
+        return ids == null ? 0 : ids.size();
+    }
+
+    /**
+     * Relative filename of a thumbnail in the cache directory.
+     */
+    public static String filename(String key, boolean hiRes) {
+        return key + (hiRes ? ThumbnailController.EXTENSION_HR : ThumbnailController.EXTENSION);
+    }
+
+    /**
+     * File of a thumbnail, which may or may not exist.
+     */
+    public File file(String key, boolean hiRes) {
+        return config.cacheFile(filename(key, hiRes));
+    }
+
+    /**
+     * Records thumbnail files written to the cache directory, applying the cache quota.
+     */
+    public void written(String key) {
+        CacheManager cache = config.cache();
+        if (cache != null) {
+            cache.written(filename(key, false));
+            cache.written(filename(key, true));
+        }
+    }
+
+    /**
+     * Records a read of a thumbnail, so that it is the last to be evicted from the cache.
+     */
+    public void accessed(String key, boolean hiRes) {
+        CacheManager cache = config.cache();
+        if (cache != null) {
+            cache.accessed(filename(key, hiRes));
+        }
+    }
+
+    /** Number of files removed by {@link #gc(long)} */
+    public long collected() {
+        return collected.get();
+    }
+
+    /** Number of bindings removed by {@link #sweep(Catalog)} */
+    public long swept() {
+        return swept.get();
+    }
+
+    /**
+     * Releases the keys of layers and maps that no longer exist in the catalog, such as those
+     * removed while catalog events were not delivered. Their files are removed by a later
+     * {@link #gc(long)}.
+     *
+     * @return Number of bindings removed
+     */
+    public int sweep(Catalog catalog) {
+        List<String> removed = new ArrayList<String>();
+        for (String id : keys.keySet()) {
+            if (catalog.getLayer(id) == null && catalog.getLayerGroup(id) == null) {
+                removed.add(id);
+            }
+        }
+        for (String id : removed) {
+            String key = keys.remove(id);
+            if (key != null) {
+                release(id, key);
+            }
+        }
+        swept.addAndGet(removed.size());
+        return removed.size();
+    }
+
+    /**
+     * Removes thumbnail files that are not bound to any layer or map, and have not been used for
+     * the given time.
+     * <p>
+     * Candidates are taken from the index of the cache directory, rather than by listing it.
+     * </p>
+     *
+     * @param retention Time (in milliseconds) unbound files are retained for
+     * @return Number of files removed
+     */
+    public int gc(long retention) {
+        CacheManager cache = config.cache();
+        if (cache == null) {
+            return 0;
+        }
+        final long cutoff = System.currentTimeMillis() - retention;
+        List<String> files = cache.files(new CacheManager.EntryFilter() {
+            @Override
+            public boolean accept(String name, long modified, long accessed) {
+                return name.endsWith(ThumbnailController.EXTENSION) && modified < cutoff;
+            }
+        });
+        int count = 0;
+        for (String file : files) {
+            String key = key(file);
+            if (refs.containsKey(key)) {
+                continue;
+            }
+            Long lastUsed = used.get(key);
+            if (lastUsed != null && lastUsed > cutoff) {
+                continue;
+            }
+            if (cache.delete(file)) {
+                count++;
+                //forget the key once both resolutions are gone
+                if (lastUsed != null && !file(key, false).exists() && !file(key, true).exists()) {
+                    used.remove(key, lastUsed);
+                }
+            }
+        }
+        if (count > 0) {
+            LOG.fine("Removed "+count+" unused thumbnail files");
+        }
+        collected.addAndGet(count);
+        return count;
+    }
+
+    static String key(String filename) {
+        if (filename.endsWith(ThumbnailController.EXTENSION_HR)) {
+            return filename.substring(0, filename.length() - ThumbnailController.EXTENSION_HR.length());
+        }
+        return filename.substring(0, filename.length() - ThumbnailController.EXTENSION.length());
+    }
+}
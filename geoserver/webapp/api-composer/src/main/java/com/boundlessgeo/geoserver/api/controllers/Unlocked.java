@@ -0,0 +1,24 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler method that runs without the configuration lock.
+ * <p>
+ * For requests that do not modify the catalog but may take a long time, such as introspecting a
+ * remote data source or streaming events, during which holding the lock would block every other
+ * request. See {@link ConfigurationLockInterceptor}.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Unlocked {
+}
@@ -0,0 +1,329 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import com.boundlessgeo.geoserver.util.ChecksumInputStream;
+
+/**
+ * A resumable upload of a single file, sent as byte ranges that may arrive in any order, in
+ * parallel, and more than once.
+ * <p>
+ * The file is preallocated to its full size in its own directory, and each range is written in
+ * place. The ranges received so far are saved next to that directory (as
+ * <code>&lt;id&gt;.session</code>) after each write, so that an upload can be resumed after a
+ * restart. Once every byte has been received, the directory is handed to the importer.
+ * </p>
+ */
+public class UploadSession {
+
+    static final String EXTENSION = ".session";
+
+    static final Pattern ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    final String id;
+    final String workspace;
+    final String name;
+    final long size;
+    final String sha256;
+
+    final File dir;
+    final File file;
+    final File meta;
+
+    /** Received ranges, start to end (exclusive), merged. Guarded by this */
+    final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+
+    volatile long updated = System.currentTimeMillis();
+
+    /** Whether the session has ended. Guarded by this */
+    boolean closed;
+
+    UploadSession(File staging, String id, String workspace, String name, long size, String sha256) {
+        this.id = id;
+        this.workspace = workspace;
+        this.name = name;
+        this.size = size;
+        this.sha256 = sha256;
+        this.dir = new File(staging, id);
+        this.file = new File(dir, name);
+        this.meta = new File(staging, id + EXTENSION);
+    }
+
+    /**
+     * Starts an upload, preallocating the file.
+     *
+     * @param staging Directory to upload into
+     * @param workspace Workspace the file is uploaded to
+     * @param name Name of the file
+     * @param size Size of the file in bytes
+     * @param sha256 Expected checksum of the file, or null if it is not to be checked
+     */
+    public static UploadSession create(File staging, String workspace, String name, long size, String sha256)
+            throws IOException {
+        String filename = FilenameUtils.getName(name);
+        if (filename == null || filename.isEmpty() || filename.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid file name: "+name);
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid file size: "+size);
+        }
+        UploadSession session = new UploadSession(staging, UUID.randomUUID().toString(), workspace,
+            filename, size, sha256 == null ? null : sha256.toLowerCase());
+        if (!session.dir.mkdirs()) {
+            throw new IOException("Unable to create upload directory "+session.dir.getPath());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(session.file, "rw")) {
+            raf.setLength(size);
+        }
+        session.save();
+        return session;
+    }
+
+    /**
+     * Loads an upload saved in a staging directory.
+     *
+     * @return The upload, or null if there is no such upload
+     */
+    public static UploadSession load(File staging, String id) throws IOException {
+        if (!ID.matcher(id).matches()) {
+            return null;
+        }
+        File meta = new File(staging, id + EXTENSION);
+        if (!meta.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(meta)) {
+            props.load(in);
+        }
+        UploadSession session = new UploadSession(staging, id, props.getProperty("workspace"),
+            props.getProperty("name"), Long.parseLong(props.getProperty("size")), props.getProperty("sha256"));
+        String ranges = props.getProperty("ranges", "");
+        for (String range : ranges.split(",")) {
+            if (!range.isEmpty()) {
+                String[] bounds = range.split("-");
+                session.ranges.put(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+            }
+        }
+        session.updated = meta.lastModified();
+        return session;
+    }
+
+    /**
+     * Loads every upload saved in a staging directory. Uploads whose session can not be read are
+     * skipped.
+     */
+    public static List<UploadSession> list(File staging) {
+        List<UploadSession> sessions = new ArrayList<UploadSession>();
+        File[] files = staging.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            for (File f : files) {
+                String id = f.getName().substring(0, f.getName().length() - EXTENSION.length());
+                try {
+                    UploadSession session = load(staging, id);
+                    if (session != null) {
+                        sessions.add(session);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    //corrupt or removed while listing
+                }
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Writes a range of the file.
+     * <p>
+     * Ranges already received are acknowledged without reading them again, so clients can retry
+     * freely. Each range is written through its own channel at its own position, so ranges can
+     * be written concurrently.
+     * </p>
+     *
+     * @param start Offset of the first byte
+     * @param end Offset after the last byte
+     * @param in The bytes of the range
+     * @return The number of bytes written
+     */
+    public long write(long start, long end, InputStream in) throws IOException {
+        if (start < 0 || end > size || start > end) {
+            throw new IllegalArgumentException("Invalid range "+start+"-"+end+" for a file of "+size+" bytes");
+        }
+        updated = System.currentTimeMillis();
+        if (received(start, end)) {
+            return 0;
+        }
+        long written = 0;
+        ReadableByteChannel src = Channels.newChannel(in);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            while (written < end - start) {
+                long n = channel.transferFrom(src, start + written, end - start - written);
+                if (n <= 0) {
+                    break;
+                }
+                written += n;
+            }
+        } finally {
+            //record whatever made it to disk, so a dropped connection only loses the rest
+            if (written > 0) {
+                add(start, start + written);
+            }
+        }
+        save();
+        return written;
+    }
+
+    synchronized boolean received(long start, long end) {
+        Map.Entry<Long, Long> range = ranges.floorEntry(start);
+        return range != null && range.getValue() >= end;
+    }
+
+    synchronized void add(long start, long end) {
+        //merge with overlapping or adjacent ranges
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> after = ranges.ceilingEntry(start);
+        while (after != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            ranges.remove(after.getKey());
+            after = ranges.ceilingEntry(start);
+        }
+        ranges.put(start, end);
+    }
+
+    /** Number of bytes received */
+    public synchronized long received() {
+        long received = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            received += range.getValue() - range.getKey();
+        }
+        return received;
+    }
+
+    /** Ranges received, as [start, end) pairs */
+    public synchronized List<long[]> ranges() {
+        List<long[]> list = new ArrayList<long[]>();
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            list.add(new long[]{range.getKey(), range.getValue()});
+        }
+        return list;
+    }
+
+    /** True once every byte has been received */
+    public boolean complete() {
+        return size == 0 || received(0, size);
+    }
+
+    /**
+     * Checks the file against the expected checksum, if one was given.
+     */
+    public boolean verify() throws IOException {
+        if (sha256 == null) {
+            return true;
+        }
+        try (ChecksumInputStream in = new ChecksumInputStream(new FileInputStream(file), -1)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                //read through
+            }
+            return sha256.equals(in.sha256());
+        }
+    }
+
+    synchronized void save() throws IOException {
+        if (closed) {
+            //a range written while the upload was completed
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("workspace", workspace);
+        props.setProperty("name", name);
+        props.setProperty("size", String.valueOf(size));
+        if (sha256 != null) {
+            props.setProperty("sha256", sha256);
+        }
+        StringBuilder str = new StringBuilder();
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (str.length() > 0) {
+                str.append(",");
+            }
+            str.append(range.getKey()).append("-").append(range.getValue());
+        }
+        props.setProperty("ranges", str.toString());
+
+        File tmp = new File(meta.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        Files.move(tmp.toPath(), meta.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Ends the session once the file has been handed over, keeping the directory.
+     */
+    public synchronized void close() {
+        closed = true;
+        meta.delete();
+    }
+
+    /**
+     * Removes the upload, along with the file.
+     */
+    public synchronized void delete() {
+        closed = true;
+        meta.delete();
+        FileUtils.deleteQuietly(dir);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String workspace() {
+        return workspace;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public File dir() {
+        return dir;
+    }
+
+    public File file() {
+        return file;
+    }
+}
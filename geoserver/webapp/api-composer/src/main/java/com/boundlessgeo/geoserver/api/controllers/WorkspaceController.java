@@ -6,6 +6,8 @@ package com.boundlessgeo.geoserver.api.controllers;
 import com.boundlessgeo.geoserver.api.exceptions.BadRequestException;
 import com.boundlessgeo.geoserver.json.JSONArr;
 import com.boundlessgeo.geoserver.json.JSONObj;
+import com.boundlessgeo.geoserver.json.JSONStream;
+import com.boundlessgeo.geoserver.json.JSONStreamWriter;
 import com.boundlessgeo.geoserver.util.RecentObjectCache;
 
 import org.apache.commons.fileupload.FileItemIterator;
@@ -26,6 +28,7 @@ import com.boundlessgeo.geoserver.bundle.BundleExporter;
 import com.boundlessgeo.geoserver.bundle.BundleImporter;
 import com.boundlessgeo.geoserver.bundle.ExportOpts;
 import com.boundlessgeo.geoserver.bundle.ImportOpts;
+import com.boundlessgeo.geoserver.catalog.StoreConnectionIndex;
 
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resource.Type;
@@ -43,6 +46,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -56,38 +60,51 @@ public class WorkspaceController extends ApiController {
 
     public static final String APPLICATION_ZIP_VALUE = "application/zip";
 
+    /** Stores by connection, to reuse existing stores when importing a bundle */
+    @Autowired(required = false)
+    StoreConnectionIndex storeIndex;
+
     @Autowired
     public WorkspaceController(GeoServer geoServer, RecentObjectCache recentCache) {
         super(geoServer, recentCache);
     }
 
+    /**
+     * API endpoint to list the workspaces, default workspace first. Workspaces are encoded as they 
+     * are read from the catalog.
+     */
     @RequestMapping(method = RequestMethod.GET)
     public @ResponseBody
-    JSONArr list() {
-        JSONArr arr = new JSONArr();
+    JSONStream list() {
+        return new JSONStream() {
+            @Override
+            public void write(JSONStreamWriter out) throws IOException {
+                out.array();
 
-        Catalog cat = geoServer.getCatalog();
+                Catalog cat = geoServer.getCatalog();
 
-        WorkspaceInfo def = cat.getDefaultWorkspace();
-        if (def != null) {
-           workspace(arr.addObject(), def, namespaceFor(def), true);
-        }
+                WorkspaceInfo def = cat.getDefaultWorkspace();
+                if (def != null) {
+                   out.value(workspace(new JSONObj(), def, namespaceFor(def), true));
+                }
 
-        try (
-            CloseableIterator<WorkspaceInfo> list = cat.list(WorkspaceInfo.class, Predicates.acceptAll());
-        ) {
-            while(list.hasNext()) {
-                WorkspaceInfo ws = list.next();
-                if (def != null && ws.getName().equals(def.getName())) {
-                    continue;
+                try (
+                    CloseableIterator<WorkspaceInfo> list = cat.list(WorkspaceInfo.class, Predicates.acceptAll());
+                ) {
+                    while(list.hasNext()) {
+                        WorkspaceInfo ws = list.next();
+                        if (def != null && ws.getName().equals(def.getName())) {
+                            continue;
+                        }
+
+                        NamespaceInfo ns = namespaceFor(ws);
+                        out.value(workspace(new JSONObj(), ws, ns, false));
+                    }
                 }
 
-                NamespaceInfo ns = namespaceFor(ws);
-                workspace(arr.addObject(), ws, ns, false);
+                out.endArray();
             }
-        }
-
-        return arr;
+        };
     }
 
     @RequestMapping(value = "/recent", method = RequestMethod.GET)
@@ -273,7 +290,7 @@ public class WorkspaceController extends ApiController {
         try (InputStream stream = item.openStream()) {
             IOUtils.copy(stream, zip.toFile());
         }
-        BundleImporter importer = new BundleImporter(cat, new ImportOpts(ws));
+        BundleImporter importer = new BundleImporter(cat, new ImportOpts(ws).stores(storeIndex));
         importer.unzip(zip);
         importer.run();
     }
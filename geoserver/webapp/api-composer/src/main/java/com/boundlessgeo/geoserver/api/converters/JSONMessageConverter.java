@@ -3,6 +3,8 @@
  */
 package com.boundlessgeo.geoserver.api.converters;
 
+import com.boundlessgeo.geoserver.json.JSONStream;
+import com.boundlessgeo.geoserver.json.JSONStreamWriter;
 import com.boundlessgeo.geoserver.json.JSONWrapper;
 import org.geoserver.platform.ExtensionPriority;
 import org.geoserver.rest.converters.BaseMessageConverter;
@@ -14,13 +16,17 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
- * Parses/encodes JSON.
+ * Parses/encodes JSON. Also encodes {@link JSONStream} responses, as they are written.
  */
 @Component
-public class JSONMessageConverter extends BaseMessageConverter<JSONWrapper> {
+public class JSONMessageConverter extends BaseMessageConverter<Object> {
 
     public JSONMessageConverter() {
         super(MediaType.APPLICATION_JSON);
@@ -28,17 +34,28 @@ public class JSONMessageConverter extends BaseMessageConverter<JSONWrapper> {
 
     @Override
     protected boolean supports(Class<?> clazz) {
-        return JSONWrapper.class.isAssignableFrom(clazz);
+        return JSONWrapper.class.isAssignableFrom(clazz) || JSONStream.class.isAssignableFrom(clazz);
     }
 
     @Override
-    protected JSONWrapper readInternal(Class<? extends JSONWrapper> clazz, HttpInputMessage message) throws IOException, HttpMessageNotReadableException {
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return JSONWrapper.class.isAssignableFrom(clazz) && super.canRead(clazz, mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<? extends Object> clazz, HttpInputMessage message) throws IOException, HttpMessageNotReadableException {
         return JSONWrapper.read(message.getBody());
     }
 
     @Override
-    protected void writeInternal(JSONWrapper obj, HttpOutputMessage message) throws IOException, HttpMessageNotWritableException {
-        JSONWrapper.write(obj, message.getBody());
+    protected void writeInternal(Object obj, HttpOutputMessage message) throws IOException, HttpMessageNotWritableException {
+        if (obj instanceof JSONStream) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(message.getBody(), StandardCharsets.UTF_8));
+            ((JSONStream) obj).write(new JSONStreamWriter(out));
+            out.flush();
+        } else {
+            JSONWrapper.write((JSONWrapper<?>) obj, message.getBody());
+        }
     }
 
     @Override
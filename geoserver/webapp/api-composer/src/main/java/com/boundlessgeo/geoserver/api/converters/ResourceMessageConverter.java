@@ -6,6 +6,7 @@ package com.boundlessgeo.geoserver.api.converters;
 import org.apache.commons.io.IOUtils;
 import org.geoserver.platform.ExtensionPriority;
 import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resource.Type;
 import org.geoserver.rest.converters.BaseMessageConverter;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
@@ -14,11 +15,18 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 
 /**
  * Message converter that can encode GeoServer resources.
+ * <p>
+ * Resources are streamed to the response through a small buffer, without reading the whole 
+ * contents into memory. Resources backed by a file are sent with a Content-Length.
+ * </p>
  */
 @Component
 public class ResourceMessageConverter extends BaseMessageConverter<Resource> {
@@ -36,13 +44,38 @@ public class ResourceMessageConverter extends BaseMessageConverter<Resource> {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    protected Long getContentLength(Resource resource, MediaType contentType) throws IOException {
+        File file = file(resource);
+        return file == null ? null : file.length();
+    }
+
     @Override
     protected void writeInternal(Resource resource, HttpOutputMessage msg) throws IOException, HttpMessageNotWritableException {
+        File file = file(resource);
+        if (file != null) {
+            OutputStream body = msg.getBody();
+            Files.copy(file.toPath(), body);
+            body.flush();
+            return;
+        }
         try (InputStream in = resource.in()) {
             IOUtils.copy(in, msg.getBody());
         }
     }
 
+    /**
+     * The file backing the resource, or null if the resource is not available as a file.
+     */
+    static File file(Resource resource) {
+        //file() creates missing resources, so only call it for existing ones
+        if (resource.getType() != Type.RESOURCE) {
+            return null;
+        }
+        File file = resource.file();
+        return file != null && file.isFile() ? file : null;
+    }
+
     @Override
     public int getPriority() {
         return ExtensionPriority.HIGHEST;
@@ -0,0 +1,22 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Payload Too Large (413) error, used when an upload does not fit in the space available.
+ */
+@ResponseStatus(value = HttpStatus.PAYLOAD_TOO_LARGE)
+public class PayloadTooLargeException extends RuntimeException {
+
+    public PayloadTooLargeException(String message) {
+        this(message, null);
+    }
+
+    public PayloadTooLargeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
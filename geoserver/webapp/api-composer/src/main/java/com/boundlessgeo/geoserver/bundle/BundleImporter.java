@@ -155,7 +155,15 @@ public class BundleImporter {
         StoreInfo s = depersist(file, StoreInfo.class);
         s.setWorkspace(workspace);
         updateConnectionParams(s);
-        catalog.add(s);
+
+        // reuse a store already connected to the same data, rather than adding a duplicate
+        StoreInfo existing = options.stores() != null ?
+            options.stores().find(workspace, s.getConnectionParameters()) : null;
+        if (existing != null) {
+            s = existing;
+        } else {
+            catalog.add(s);
+        }
 
         for (File dir : storeDir.listFiles(DIRECTORY)) {
             loadResource(dir, s);
@@ -196,6 +204,10 @@ public class BundleImporter {
         }
 
         ResourceInfo r = depersist(file, ResourceInfo.class);
+        if (catalog.getResourceByStore(s, r.getName(), ResourceInfo.class) != null) {
+            // existing store that already publishes this resource
+            return;
+        }
         r.setStore(s);
         r.setNamespace(namespace);
         catalog.add(r);
@@ -5,6 +5,8 @@ package com.boundlessgeo.geoserver.bundle;
 
 import org.geoserver.catalog.WorkspaceInfo;
 
+import com.boundlessgeo.geoserver.catalog.StoreConnectionIndex;
+
 /**
  * Options for workspace bundle import.
  */
@@ -12,6 +14,8 @@ public class ImportOpts {
 
     WorkspaceInfo workspace;
 
+    StoreConnectionIndex stores;
+
     public ImportOpts(WorkspaceInfo workspace) {
         this.workspace = workspace;
     }
@@ -22,4 +26,23 @@ public class ImportOpts {
     public WorkspaceInfo workspace() {
         return workspace;
     }
+
+    /**
+     * Index used to find stores of the bundle that already exist in the workspace.
+     * <p>
+     * No index means every store of the bundle is added.
+     * </p>
+     */
+    public StoreConnectionIndex stores() {
+        return stores;
+    }
+
+    /**
+     * Sets the index of existing stores.
+     * @see {@link #stores()}
+     */
+    public ImportOpts stores(StoreConnectionIndex stores) {
+        this.stores = stores;
+        return this;
+    }
 }
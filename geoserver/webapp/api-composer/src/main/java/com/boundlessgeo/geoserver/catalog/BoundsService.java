@@ -0,0 +1,264 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.GeoServerConfigurationLock;
+import org.geoserver.GeoServerConfigurationLock.LockType;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogBuilder;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.impl.GeoServerRole;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.geometry.Envelope;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.boundlessgeo.geoserver.api.controllers.Metadata;
+import com.boundlessgeo.geoserver.util.CoalescingExecutor;
+import com.boundlessgeo.geoserver.util.PropertyUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Computes the bounds of resources in the background.
+ * <p>
+ * Computing the bounds of a large or remote data set can mean reading all of it. Instead of doing
+ * so while a layer is created, the layer is published with estimated bounds (the area of use of
+ * its CRS, see {@link #estimate(ResourceInfo)}), flagged as such in its metadata, and the actual
+ * bounds are computed by {@link #compute(ResourceInfo)} on a background thread. The data store
+ * is asked for its bounds, which uses a spatial index or the database statistics where the store
+ * supports them. The resource is saved with the actual bounds once they are known, unless its
+ * bounds have been set explicitly in the meantime.
+ * </p>
+ * <p>
+ * Computations for the same resource are coalesced. Uses COMPOSER_BOUNDS_THREADS threads
+ * (default 2).
+ * </p>
+ * <p>
+ * Pending computations are not persisted. Instead the catalog is swept every
+ * COMPOSER_BOUNDS_RESUME_INTERVAL minutes (default 10, first shortly after startup) by
+ * {@link #resume()}, which queues the resources still flagged as estimated. This picks up the
+ * computations lost in a restart, and those rejected because the queue was full.
+ * </p>
+ */
+@Component
+public class BoundsService implements InitializingBean, DisposableBean {
+
+    static Logger LOG = Logging.getLogger(BoundsService.class);
+
+    static final int DEFAULT_THREADS = 2;
+    static final int DEFAULT_QUEUE = 1000;
+    static final long DEFAULT_RESUME_INTERVAL = 10;
+
+    /** Number of times the bounds are recomputed if the CRS changes while computing them */
+    static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    Catalog catalog;
+
+    CoalescingExecutor<String, ReferencedEnvelope> executor;
+
+    ScheduledExecutorService resumer;
+
+    public BoundsService() {
+    }
+
+    public BoundsService(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        executor = new CoalescingExecutor<String, ReferencedEnvelope>("composer-bounds",
+            PropertyUtil.property("COMPOSER_BOUNDS_THREADS", DEFAULT_THREADS), DEFAULT_QUEUE);
+
+        long interval = PropertyUtil.property("COMPOSER_BOUNDS_RESUME_INTERVAL", DEFAULT_RESUME_INTERVAL);
+        if (interval > 0) {
+            resumer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("composer-bounds-resume").setDaemon(true).build());
+            resumer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        resume();
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "Unable to resume bounds computations", e);
+                    }
+                }
+            }, 1, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (resumer != null) {
+            resumer.shutdownNow();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Sets estimated bounds on a resource that has none, from the area of use of its CRS.
+     *
+     * @return True if the bounds were estimated, false if the resource already has bounds or its
+     *   CRS has no known area of use
+     */
+    public boolean estimate(ResourceInfo r) throws IOException {
+        if (r.getNativeBoundingBox() != null && r.getLatLonBoundingBox() != null) {
+            return false;
+        }
+        CoordinateReferenceSystem crs = r.getCRS();
+        Envelope area = crs == null ? null : CRS.getEnvelope(crs);
+        if (area == null) {
+            return false;
+        }
+        ReferencedEnvelope bounds = new ReferencedEnvelope(area.getMinimum(0), area.getMaximum(0),
+            area.getMinimum(1), area.getMaximum(1), crs);
+        r.setNativeBoundingBox(bounds);
+        r.setLatLonBoundingBox(new CatalogBuilder(catalog).getLatLonBounds(bounds, crs));
+        Metadata.boundsEstimated(r, true);
+        return true;
+    }
+
+    /**
+     * Queues the computation of the actual bounds of a resource, which must have been added to the
+     * catalog. Runs with the credentials of the caller.
+     *
+     * @return Future completing with the native bounds, or null if they could not be computed
+     * @throws RejectedExecutionException If the queue is full
+     */
+    public Future<ReferencedEnvelope> compute(ResourceInfo r) throws RejectedExecutionException {
+        final String id = r.getId();
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return executor.submit(id, new Callable<ReferencedEnvelope>() {
+            @Override
+            public ReferencedEnvelope call() throws Exception {
+                final Authentication oldAuth = SecurityContextHolder.getContext().getAuthentication();
+                SecurityContextHolder.getContext().setAuthentication(auth);
+                try {
+                    return update(id);
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Unable to compute bounds of resource "+id, e);
+                    throw e;
+                } finally {
+                    SecurityContextHolder.getContext().setAuthentication(oldAuth);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues the computation of the bounds of every resource still flagged as estimated, until
+     * the queue is full. Runs as administrator, there being no caller to take the credentials of.
+     *
+     * @return The number of resources queued
+     */
+    public int resume() {
+        final Authentication oldAuth = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+            "composer-bounds", null, Collections.singletonList(GeoServerRole.ADMIN_ROLE)));
+        int queued = 0;
+        try (CloseableIterator<ResourceInfo> it = catalog.list(ResourceInfo.class, Predicates.acceptAll())) {
+            while (it.hasNext()) {
+                ResourceInfo r = it.next();
+                if (Metadata.boundsEstimated(r)) {
+                    compute(r);
+                    queued++;
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            LOG.fine("Bounds queue full, resuming the remaining computations later");
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(oldAuth);
+        }
+        if (queued > 0) {
+            LOG.info("Resumed the bounds computation of "+queued+" resources");
+        }
+        return queued;
+    }
+
+    /**
+     * Computes and saves the bounds of a resource, without holding the configuration lock while
+     * reading the data.
+     */
+    ReferencedEnvelope update(String id) throws Exception {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            ResourceInfo r = catalog.getResource(id, ResourceInfo.class);
+            if (r == null || !Metadata.boundsEstimated(r)) {
+                //removed, or bounds set explicitly
+                return null;
+            }
+            String srs = r.getSRS();
+            CatalogBuilder cb = new CatalogBuilder(catalog);
+            ReferencedEnvelope nativeBounds = nativeBounds(r);
+            ReferencedEnvelope latLonBounds = nativeBounds == null || nativeBounds.isNull() ?
+                null : cb.getLatLonBounds(nativeBounds, r.getCRS());
+
+            GeoServerConfigurationLock lock = GeoServerExtensions.bean(GeoServerConfigurationLock.class);
+            if (lock != null) {
+                lock.lock(LockType.WRITE);
+            }
+            try {
+                r = catalog.getResource(id, ResourceInfo.class);
+                if (r == null || !Metadata.boundsEstimated(r)) {
+                    return null;
+                }
+                if (!Objects.equals(srs, r.getSRS())) {
+                    //reprojected while computing, start over
+                    continue;
+                }
+                if (latLonBounds != null) {
+                    r.setNativeBoundingBox(nativeBounds);
+                    r.setLatLonBoundingBox(latLonBounds);
+                } else {
+                    //empty data, keep the estimate
+                    LOG.fine("No bounds for resource "+r.getName()+", keeping the estimated bounds");
+                }
+                Metadata.boundsEstimated(r, false);
+                catalog.save(r);
+                return nativeBounds;
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+        LOG.warning("Gave up computing bounds of resource "+id+", its CRS keeps changing");
+        return null;
+    }
+
+    /**
+     * Reads the bounds of the data of a resource.
+     */
+    ReferencedEnvelope nativeBounds(ResourceInfo r) throws IOException {
+        return new CatalogBuilder(catalog).getNativeBounds(r);
+    }
+
+    /** Number of computations waiting for a thread */
+    public int queued() {
+        return executor.queued();
+    }
+}
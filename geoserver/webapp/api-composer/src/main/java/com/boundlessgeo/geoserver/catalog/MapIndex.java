@@ -0,0 +1,283 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerGroupInfo.Mode;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Index of the layer groups that composer does not handle as maps, so that map lists can leave
+ * them out in the catalog query rather than after reading each page.
+ * <p>
+ * A layer group is a map (see {@link #isMap(LayerGroupInfo)}) if it is in single or named mode
+ * and draws each of its layers with one of the styles of that layer. Whether a group is a map
+ * changes when the group changes, or when the styles of one of its layers do, so the index keeps
+ * the groups each layer or group belongs to.
+ * </p>
+ * <p>
+ * The index is built from the catalog on first use, and afterwards kept up to date from catalog
+ * events.
+ * </p>
+ */
+@Component
+public class MapIndex implements CatalogListener, InitializingBean, DisposableBean {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    @Autowired
+    Catalog catalog;
+
+    /** Workspace ids of the layer groups that are not maps, by layer group id */
+    final Map<String, String> excluded = new LinkedHashMap<String, String>();
+    /** Ids of the layer groups each layer or layer group belongs to */
+    final Map<String, Set<String>> groups = new HashMap<String, Set<String>>();
+    /** Ids of the layers and layer groups of each indexed group */
+    final Map<String, List<String>> members = new HashMap<String, List<String>>();
+
+    boolean loaded = false;
+
+    public MapIndex() {
+    }
+
+    public MapIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        catalog.removeListener(this);
+    }
+
+    /**
+     * Confirm layer group matches composer definition of a map: single or named mode, with each
+     * layer drawn with its default style or one of its other styles (or the root layer style, for
+     * a nested group).
+     *
+     * @return true if the layer group can be handled by composer
+     */
+    public static boolean isMap(LayerGroupInfo map) {
+        if (!(map.getMode() == Mode.SINGLE || map.getMode() == Mode.NAMED)) {
+            return false;
+        }
+        List<PublishedInfo> layers = map.getLayers();
+        List<StyleInfo> styles = map.getStyles();
+        for (int i = 0; i < layers.size(); i++) {
+            StyleInfo style = i < styles.size() ? styles.get(i) : null;
+            PublishedInfo layer = layers.get(i);
+            if (style == null || layer == null) {
+                //default style
+                continue;
+            }
+            if (layer instanceof LayerInfo) {
+                if (!styled(style, (LayerInfo) layer)) {
+                    return false;
+                }
+            } else if (!same(style, layer instanceof LayerGroupInfo
+                    ? ((LayerGroupInfo) layer).getRootLayerStyle() : null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a style is the default style of a layer, or one of its other styles. Composer
+     * stores the style of each map layer explicitly, so the map keeps a former default style of
+     * the layer until the map is edited.
+     */
+    static boolean styled(StyleInfo style, LayerInfo layer) {
+        if (same(style, layer.getDefaultStyle())) {
+            return true;
+        }
+        if (layer.getStyles() != null) {
+            for (StyleInfo s : layer.getStyles()) {
+                if (same(style, s)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean same(StyleInfo style, StyleInfo other) {
+        if (style == other) {
+            return true;
+        }
+        return other != null && style.getId() != null && style.getId().equals(other.getId());
+    }
+
+    /**
+     * Limits a layer group filter to maps.
+     *
+     * @param filter Filter selecting the layer groups of a workspace
+     * @param ws The workspace, only the layer groups of which are excluded, or null for none
+     */
+    public Filter filter(Filter filter, WorkspaceInfo ws) {
+        if (ws == null) {
+            return filter;
+        }
+        List<Filter> ids = new ArrayList<Filter>();
+        synchronized (this) {
+            load();
+            for (Map.Entry<String, String> e : excluded.entrySet()) {
+                if (ws.getId().equals(e.getValue())) {
+                    ids.add(Predicates.equal("id", e.getKey()));
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return filter;
+        }
+        return Predicates.and(filter, Predicates.not(FF.or(ids)));
+    }
+
+    /**
+     * Determines if a layer group is a map, from the index.
+     */
+    public synchronized boolean contains(LayerGroupInfo map) {
+        load();
+        return !excluded.containsKey(map.getId());
+    }
+
+    /**
+     * Drops the index, to be rebuilt from the catalog on next use.
+     */
+    public synchronized void clear() {
+        excluded.clear();
+        groups.clear();
+        members.clear();
+        loaded = false;
+    }
+
+    void load() {
+        if (loaded) {
+            return;
+        }
+        try (CloseableIterator<LayerGroupInfo> it = catalog.list(LayerGroupInfo.class, Filter.INCLUDE)) {
+            while (it.hasNext()) {
+                index(it.next());
+            }
+        }
+        loaded = true;
+    }
+
+    void index(LayerGroupInfo map) {
+        unindex(map.getId());
+        List<String> ids = new ArrayList<String>();
+        for (PublishedInfo layer : map.getLayers()) {
+            if (layer != null) {
+                ids.add(layer.getId());
+                Set<String> in = groups.get(layer.getId());
+                if (in == null) {
+                    in = new LinkedHashSet<String>();
+                    groups.put(layer.getId(), in);
+                }
+                in.add(map.getId());
+            }
+        }
+        members.put(map.getId(), ids);
+        if (!isMap(map)) {
+            excluded.put(map.getId(), map.getWorkspace() != null ? map.getWorkspace().getId() : null);
+        }
+    }
+
+    void unindex(String id) {
+        excluded.remove(id);
+        List<String> ids = members.remove(id);
+        if (ids == null) {
+            return;
+        }
+        for (String layer : ids) {
+            Set<String> in = groups.get(layer);
+            if (in != null) {
+                in.remove(id);
+                if (in.isEmpty()) {
+                    groups.remove(layer);
+                }
+            }
+        }
+    }
+
+    synchronized void update(CatalogInfo source) {
+        if (!loaded || !(source instanceof PublishedInfo)) {
+            return;
+        }
+        if (source instanceof LayerGroupInfo) {
+            LayerGroupInfo map = catalog.getLayerGroup(source.getId());
+            if (map != null) {
+                index(map);
+            }
+        }
+        // the styles of a member may have changed
+        Set<String> in = groups.get(source.getId());
+        if (in != null) {
+            for (String id : new ArrayList<String>(in)) {
+                LayerGroupInfo map = catalog.getLayerGroup(id);
+                if (map != null) {
+                    index(map);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        update(event.getSource());
+    }
+
+    @Override
+    public synchronized void handleRemoveEvent(CatalogRemoveEvent event) {
+        if (loaded && event.getSource() instanceof LayerGroupInfo) {
+            unindex(event.getSource().getId());
+        }
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        //indexed once the change is applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        update(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+}
@@ -0,0 +1,304 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import java.io.File;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geotools.data.DataAccessFactory;
+import org.geotools.data.DataAccessFactory.Param;
+import org.geotools.data.Parameter;
+import org.geotools.data.DataUtilities;
+import org.geotools.util.logging.Logging;
+import org.opengis.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.vfny.geoserver.util.DataStoreUtils;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Index of data stores by a fingerprint of their connection, used to tell whether a store for a
+ * given connection already exists in a workspace without comparing against every store.
+ * <p>
+ * The fingerprint covers the data store factory, the required parameters of that factory, and
+ * the parameters identifying the data: host, port, database, schema and url. Passwords are left
+ * out, so the fingerprint can be handed to clients. Values are
+ * normalized (host names are compared ignoring case, file urls by their absolute path, and
+ * missing parameters take the factory default) so that a store read from disk matches the
+ * parameters of a new connection.
+ * </p>
+ * <p>
+ * The index is built from the catalog on first use, and afterwards kept up to date from catalog
+ * events.
+ * </p>
+ */
+@Component
+public class StoreConnectionIndex implements CatalogListener, InitializingBean, DisposableBean {
+
+    static Logger LOG = Logging.getLogger(StoreConnectionIndex.class);
+
+    /** Parameters identifying the data of a connection, besides the required ones */
+    static final List<String> KEYS = Arrays.asList("host", "port", "database", "schema", "url");
+
+    @Autowired
+    Catalog catalog;
+
+    /** Store ids by workspace id and fingerprint */
+    final Map<String, Set<String>> stores = new HashMap<String, Set<String>>();
+    /** Key of each indexed store id */
+    final Map<String, String> keys = new HashMap<String, String>();
+
+    boolean loaded = false;
+
+    public StoreConnectionIndex() {
+    }
+
+    public StoreConnectionIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        catalog.removeListener(this);
+    }
+
+    /**
+     * Finds a data store of a workspace with the same connection.
+     *
+     * @param ws The workspace
+     * @param params Connection parameters
+     * @return The store, or null if there is none (or no factory handles the parameters)
+     */
+    public StoreInfo find(WorkspaceInfo ws, Map<String, Serializable> params) {
+        Map<String, Serializable> resolved = resolve(params);
+        DataAccessFactory factory = factory(resolved);
+        if (factory == null) {
+            return null;
+        }
+        String key = key(ws.getId(), fingerprint(factory, resolved));
+        Set<String> ids;
+        synchronized (this) {
+            load();
+            ids = stores.get(key);
+            ids = ids == null ? null : new LinkedHashSet<String>(ids);
+        }
+        if (ids != null) {
+            for (String id : ids) {
+                StoreInfo store = catalog.getStore(id, StoreInfo.class);
+                if (store != null) {
+                    return store;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the fingerprint of a connection.
+     *
+     * @param factory Factory handling the connection
+     * @param params Connection parameters, with file urls already resolved
+     */
+    public static String fingerprint(DataAccessFactory factory, Map<String, Serializable> params) {
+        Map<String, Param> info = new HashMap<String, Param>();
+        Set<String> keys = new LinkedHashSet<String>(KEYS);
+        for (Param p : factory.getParametersInfo()) {
+            info.put(p.getName(), p);
+            if (p.isRequired() && !isPassword(p)) {
+                keys.add(p.getName());
+            }
+        }
+        Map<String, Serializable> normalized = new TreeMap<String, Serializable>();
+        for (String key : keys) {
+            Object value = params.get(key);
+            if (value == null && info.containsKey(key)) {
+                value = info.get(key).sample;
+            }
+            if (value != null) {
+                normalized.put(key, normalize(key, value));
+            }
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(factory.getClass().getName(), StandardCharsets.UTF_8);
+        for (Map.Entry<String, Serializable> e : normalized.entrySet()) {
+            hasher.putByte((byte) 0)
+                .putString(e.getKey(), StandardCharsets.UTF_8)
+                .putByte((byte) '=')
+                .putString(e.getValue().toString(), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Determines if a connection parameter is a password, as flagged by the factory or by name.
+     */
+    static boolean isPassword(Param p) {
+        if (p.metadata != null && Boolean.TRUE.equals(p.metadata.get(Parameter.IS_PASSWORD))) {
+            return true;
+        }
+        return "passwd".equalsIgnoreCase(p.getName()) || "password".equalsIgnoreCase(p.getName());
+    }
+
+    static String normalize(String key, Object value) {
+        String str = value.toString().trim();
+        if ("host".equals(key)) {
+            return str.toLowerCase(Locale.ENGLISH);
+        }
+        if ("url".equals(key)) {
+            try {
+                File file = DataUtilities.urlToFile(value instanceof URL ? (URL) value : new URL(str));
+                if (file != null) {
+                    return file.getAbsoluteFile().toPath().normalize().toString();
+                }
+            } catch (Exception e) {
+                //not a file url, compare as is
+            }
+        }
+        return str;
+    }
+
+    Map<String, Serializable> resolve(Map<String, Serializable> params) {
+        return ResourcePool.getParams(params, catalog.getResourceLoader());
+    }
+
+    DataAccessFactory factory(Map<String, Serializable> params) {
+        try {
+            return DataStoreUtils.aquireFactory(params);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static String key(String workspaceId, String fingerprint) {
+        return workspaceId + ":" + fingerprint;
+    }
+
+    /**
+     * Drops the index, to be rebuilt from the catalog on next use.
+     */
+    public synchronized void clear() {
+        stores.clear();
+        keys.clear();
+        loaded = false;
+    }
+
+    void load() {
+        if (loaded) {
+            return;
+        }
+        try (CloseableIterator<DataStoreInfo> it = catalog.list(DataStoreInfo.class, Filter.INCLUDE)) {
+            while (it.hasNext()) {
+                index(it.next());
+            }
+        }
+        loaded = true;
+    }
+
+    void index(StoreInfo store) {
+        unindex(store.getId());
+        if (!(store instanceof DataStoreInfo) || store.getWorkspace() == null) {
+            return;
+        }
+        try {
+            Map<String, Serializable> params = resolve(store.getConnectionParameters());
+            DataAccessFactory factory = factory(params);
+            if (factory == null) {
+                return;
+            }
+            String key = key(store.getWorkspace().getId(), fingerprint(factory, params));
+            Set<String> ids = stores.get(key);
+            if (ids == null) {
+                ids = new LinkedHashSet<String>();
+                stores.put(key, ids);
+            }
+            ids.add(store.getId());
+            keys.put(store.getId(), key);
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Unable to index store "+store.getName(), e);
+        }
+    }
+
+    void unindex(String id) {
+        String key = keys.remove(id);
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = stores.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                stores.remove(key);
+            }
+        }
+    }
+
+    synchronized void update(CatalogInfo source) {
+        if (loaded && source instanceof DataStoreInfo) {
+            StoreInfo store = catalog.getStore(source.getId(), StoreInfo.class);
+            if (store != null) {
+                index(store);
+            }
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        update(event.getSource());
+    }
+
+    @Override
+    public synchronized void handleRemoveEvent(CatalogRemoveEvent event) {
+        if (loaded) {
+            unindex(event.getSource().getId());
+        }
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        //indexed once the change is applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        update(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+}
@@ -0,0 +1,174 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.Info;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.opengis.filter.Filter;
+
+/**
+ * Reverse index of the catalog objects a thumbnail depends upon.
+ * <p>
+ * Records which layers and layer groups use each style, and which layer groups contain each
+ * layer or layer group, so that the thumbnails affected by a change can be found without
+ * scanning the catalog. The index is built from the catalog on first use, and afterwards kept
+ * up to date through {@link #update(PublishedInfo)} and {@link #remove(String)}.
+ * </p>
+ */
+public class ThumbnailDependencyIndex {
+
+    final Catalog catalog;
+
+    /** Ids of the layers and groups depending on each style, layer or group id */
+    final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+    /** Ids of the styles, layers and groups each layer or group depends upon */
+    final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+
+    boolean loaded = false;
+
+    public ThumbnailDependencyIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Ids of all layers and layer groups whose thumbnails depend on the given style, layer or
+     * layer group, including layer groups that depend on it through nested groups.
+     *
+     * @param id Id of a StyleInfo, LayerInfo or LayerGroupInfo
+     * @return Ids of the dependent layers and layer groups, nearest first
+     */
+    public synchronized Set<String> dependents(String id) {
+        load();
+        Set<String> found = new LinkedHashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            Set<String> direct = dependents.get(queue.poll());
+            if (direct == null) {
+                continue;
+            }
+            for (String dependent : direct) {
+                //guard against cycles, and against including the source itself
+                if (!dependent.equals(id) && found.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Indexes the dependencies of a layer or layer group that was added or modified.
+     */
+    public synchronized void update(PublishedInfo info) {
+        if (!loaded || info == null) {
+            //picked up when the index is loaded
+            return;
+        }
+        index(info);
+    }
+
+    /**
+     * Removes a style, layer or layer group from the index.
+     */
+    public synchronized void remove(String id) {
+        if (!loaded) {
+            return;
+        }
+        unlink(id);
+        //objects depending on the removed one keep their entry, until they are updated themselves
+    }
+
+    /**
+     * Drops the index, to be rebuilt from the catalog on next use.
+     */
+    public synchronized void clear() {
+        dependents.clear();
+        dependencies.clear();
+        loaded = false;
+    }
+
+    void load() {
+        if (loaded) {
+            return;
+        }
+        try (CloseableIterator<LayerInfo> it = catalog.list(LayerInfo.class, Filter.INCLUDE)) {
+            while (it.hasNext()) {
+                index(it.next());
+            }
+        }
+        try (CloseableIterator<LayerGroupInfo> it = catalog.list(LayerGroupInfo.class, Filter.INCLUDE)) {
+            while (it.hasNext()) {
+                index(it.next());
+            }
+        }
+        loaded = true;
+    }
+
+    void index(PublishedInfo info) {
+        String id = info.getId();
+        unlink(id);
+        if (info instanceof LayerInfo) {
+            link(id, ((LayerInfo) info).getDefaultStyle());
+        } else if (info instanceof LayerGroupInfo) {
+            LayerGroupInfo group = (LayerGroupInfo) info;
+            for (PublishedInfo layer : group.getLayers()) {
+                link(id, layer);
+            }
+            for (StyleInfo style : group.getStyles()) {
+                link(id, style);
+            }
+            link(id, group.getRootLayer());
+            link(id, group.getRootLayerStyle());
+        }
+    }
+
+    void link(String id, Info dependency) {
+        if (dependency == null || dependency.getId() == null) {
+            return;
+        }
+        String dependencyId = dependency.getId();
+        Set<String> set = dependencies.get(id);
+        if (set == null) {
+            set = new LinkedHashSet<String>();
+            dependencies.put(id, set);
+        }
+        set.add(dependencyId);
+
+        set = dependents.get(dependencyId);
+        if (set == null) {
+            set = new LinkedHashSet<String>();
+            dependents.put(dependencyId, set);
+        }
+        set.add(id);
+    }
+
+    void unlink(String id) {
+        Set<String> old = dependencies.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String dependencyId : old) {
+            Set<String> set = dependents.get(dependencyId);
+            if (set != null) {
+                set.remove(id);
+                if (set.isEmpty()) {
+                    dependents.remove(dependencyId);
+                }
+            }
+        }
+    }
+}
@@ -4,132 +4,258 @@
 package com.boundlessgeo.geoserver.catalog;
 
 import com.boundlessgeo.geoserver.api.controllers.ThumbnailController;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.geoserver.catalog.*;
 import org.geoserver.catalog.event.*;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * Removes thumbnail metadata from LayerInfo and LayerGroupInfo objects when those objects or any
  * StyleInfo objects they depend upon are changed. This ensures the thumbnail listed in the metadata
- * is always up to date.
+ * is always up to date. Invalidated thumbnails are handed to the {@link ThumbnailWarmer} to be
+ * regenerated.
+ * <p>
+ * Dependent layers and maps are looked up in a {@link ThumbnailDependencyIndex}, maintained from
+ * the catalog events, rather than by scanning the catalog. Dependencies are followed
+ * transitively, so maps containing a changed map are invalidated as well.
+ * </p>
+ * <p>
+ * The catalog callbacks only record which objects changed. Changes are collected in a queue that
+ * holds each object at most once, and are processed by a single background thread. Events raised
+ * by that thread while it is invalidating thumbnails are ignored, so invalidation can not recurse.
+ * </p>
  */
 @Component
-public class ThumbnailInvalidatingCatalogListener implements CatalogListener, InitializingBean {
+public class ThumbnailInvalidatingCatalogListener implements CatalogListener, InitializingBean, DisposableBean {
+
+    static Logger LOG = Logging.getLogger(ThumbnailInvalidatingCatalogListener.class);
+
     @Autowired
     Catalog catalog;
     @Autowired
     ThumbnailController controller;
-    
-    /** Flag to prevent recursion during layer, layergroup events */
-    private boolean modifying = false;
-    
+    @Autowired
+    ThumbnailWarmer warmer;
+
+    /** Styles, layers and groups each thumbnail depends upon */
+    ThumbnailDependencyIndex index;
+
+    /** Flag to prevent recursion, set on the thread processing invalidations */
+    private static final ThreadLocal<Boolean> INVALIDATING = new ThreadLocal<Boolean>();
+
+    /** Changed objects waiting to be processed, in order of arrival */
+    final Queue<String> queue = new ConcurrentLinkedQueue<String>();
+    /** Pending changes by id; an object is only queued once until it is processed */
+    final ConcurrentMap<String, Change> pending = new ConcurrentHashMap<String, Change>();
+    /** Whether a drain of the queue has been submitted and not yet started */
+    final AtomicBoolean draining = new AtomicBoolean();
+
+    ExecutorService executor;
+
     public ThumbnailInvalidatingCatalogListener() { }
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        index = new ThumbnailDependencyIndex(catalog);
+        executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("composer-thumbnail-invalidator").setDaemon(true).build());
         catalog.addListener(this);
     }
-    
+
+    @Override
+    public void destroy() throws Exception {
+        catalog.removeListener(this);
+        executor.shutdownNow();
+    }
+
     @Override
     public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
         // No change on add, as thumbnails will not have been generated yet
+        CatalogInfo source = event.getSource();
+        if (source instanceof PublishedInfo) {
+            index.update((PublishedInfo) source);
+        }
     }
 
     @Override
     public void handleRemoveEvent(CatalogRemoveEvent event)
             throws CatalogException {
         CatalogInfo source = event.getSource();
-        
+
         //If we delete a style or layer used by a layer or map, invalidate upstream thumbnails
-        if (!modifying) {
-            try {
-                modifying = true;
-                if (source instanceof StyleInfo) {
-                    // Consider cache directory based on naming convention to prevent full catalog scan                    
-                    StyleInfo style = (StyleInfo) source;
-
-                    // Invalidate any maps or layers using this style
-                    for (LayerInfo layer : catalog.getLayers(style)) {
-                        
-                        if (source.equals(layer.getDefaultStyle())) {
-                            controller.clearThumbnail(layer);
-                        }
-                    }
-                    for (LayerGroupInfo layerGroup : catalog.getLayerGroups()) {
-                        if (layerGroup.getStyles().contains(source)) {
-                            controller.clearThumbnail(layerGroup);
-                        }
-                    }
-                } else if(source instanceof LayerInfo) {
-                    LayerInfo layer = (LayerInfo) source;
-                    controller.clearThumbnail(layer);
-                } else if (source instanceof LayerGroupInfo) {
-                    LayerGroupInfo layerGroup = (LayerGroupInfo) source;
-                    controller.clearThumbnail(layerGroup);
-                }
-            } finally {
-                modifying = false;
-            }
+        if (source instanceof StyleInfo || source instanceof PublishedInfo) {
+            queue(source, true);
         }
+        index.remove(source.getId());
     }
-    
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event)
+            throws CatalogException {
+        //Handled once the change is saved, see handlePostModifyEvent
+    }
+
     /**
-     * Invalidates all thumbnails that depend on the modified resources, by removing the thumbnail 
-     * entry from the associated metadata map. Only affects LayerInfo and LayerGroupInfo objects, 
-     * and only runs for StyleInfo, LayerInfo, or LayerGroupInfo objects.
-     * If the event updates the thumbnail entry, this new value is preserved for the source object, 
+     * Invalidates all thumbnails that depend on the modified resources, by removing the thumbnail
+     * entry from the associated metadata map. Only affects LayerInfo and LayerGroupInfo objects,
+     * and only runs for StyleInfo, LayerInfo, LayerGroupInfo or ResourceInfo objects. A changed
+     * resource (such as its bounds, once computed in the background) invalidates the layers
+     * publishing it.
+     * If the event updates the thumbnail entry, this new value is preserved for the source object,
      * but the thumbnails for all dependent objects are still invalidated.
+     * <p>
+     * Runs after the change is saved, so a thumbnail regenerated straight away is rendered from
+     * the new state rather than the old one.
+     * </p>
      */
     @Override
-    public void handleModifyEvent(CatalogModifyEvent event)
+    public void handlePostModifyEvent(CatalogPostModifyEvent event)
             throws CatalogException {
-        //Handle all modifications postModify, so metadata is updated correctly
-        
+        //Reindex with the new dependencies
         CatalogInfo source = event.getSource();
-        
-        if (!modifying) {
+        if (source instanceof LayerInfo) {
+            index.update(catalog.getLayer(source.getId()));
+        } else if (source instanceof LayerGroupInfo) {
+            index.update(catalog.getLayerGroup(source.getId()));
+        }
+        if (source instanceof StyleInfo || source instanceof PublishedInfo) {
+            queue(source, false);
+        } else if (source instanceof ResourceInfo) {
+            for (LayerInfo layer : catalog.getLayers((ResourceInfo) source)) {
+                queue(layer, false);
+            }
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        index.clear();
+    }
+
+    /**
+     * Records a change, and makes sure the queue is drained. A change to an object that is
+     * already waiting in the queue is merged into the waiting one.
+     */
+    void queue(CatalogInfo source, boolean removed) {
+        if (Boolean.TRUE.equals(INVALIDATING.get())) {
+            return;
+        }
+        String id = source.getId();
+        Change change = new Change(source, removed, SecurityContextHolder.getContext().getAuthentication());
+        while (true) {
+            Change existing = pending.putIfAbsent(id, change);
+            if (existing == null) {
+                queue.offer(id);
+                break;
+            }
+            //a removal supersedes a modification
+            if (!removed || existing.removed || pending.replace(id, existing, change)) {
+                break;
+            }
+        }
+        if (draining.compareAndSet(false, true)) {
             try {
-                modifying = true;
-                if (source instanceof StyleInfo) {
-                    //Invalidate any maps or layers using this style
-                    for (LayerInfo layer : catalog.getLayers()) {
-                        if (source.equals(layer.getDefaultStyle())) {
-                            controller.clearThumbnail(layer);
-                        }
-                    }
-                    for (LayerGroupInfo layerGroup : catalog.getLayerGroups()) {
-                        if (layerGroup.getStyles().contains(source)) {
-                            controller.clearThumbnail(layerGroup);
-                        }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        draining.set(false);
+                        drain();
                     }
-                } else if(source instanceof LayerInfo) {
-                    //Invalidate layer, plus any maps using this layer
-                    LayerInfo layer = catalog.getLayer(source.getId());
-                    controller.clearThumbnail(layer);
-                    for (LayerGroupInfo layerGroup : catalog.getLayerGroups()) {
-                        if (layerGroup.getLayers().contains(source)) {
-                            controller.clearThumbnail(layerGroup);
-                        }
-                    }
-                } else if (source instanceof LayerGroupInfo) {
-                    //Only invalidate map
-                    LayerGroupInfo layerGroup = catalog.getLayerGroup(source.getId());
-                    controller.clearThumbnail(layerGroup);
+                });
+            } catch (RejectedExecutionException e) {
+                //shutting down
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Processes all queued changes.
+     */
+    void drain() {
+        INVALIDATING.set(Boolean.TRUE);
+        try {
+            String id;
+            while ((id = queue.poll()) != null) {
+                Change change = pending.remove(id);
+                if (change == null) {
+                    continue;
+                }
+                //Act for whoever made the change, so the warmer renders with their credentials
+                SecurityContextHolder.getContext().setAuthentication(change.auth);
+                try {
+                    process(change);
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Unable to invalidate thumbnails for "+id, e);
+                } finally {
+                    SecurityContextHolder.clearContext();
                 }
-            } finally {
-                modifying = false;
             }
+        } finally {
+            INVALIDATING.remove();
         }
-        
     }
-    
-    @Override
-    public void handlePostModifyEvent(CatalogPostModifyEvent event)
-            throws CatalogException { }
 
-    @Override
-    public void reloaded() { }
+    void process(Change change) {
+        CatalogInfo source = change.source;
+        if (source instanceof PublishedInfo) {
+            PublishedInfo layer = (PublishedInfo) source;
+            controller.clearThumbnail(layer);
+            if (change.removed) {
+                warmer.removed(layer);
+            } else {
+                warmer.invalidated(layer);
+            }
+        }
+        //Invalidate any maps or layers using this style, layer or map
+        for (String id : index.dependents(source.getId())) {
+            PublishedInfo dependent = catalog.getLayer(id);
+            if (dependent == null) {
+                dependent = catalog.getLayerGroup(id);
+            }
+            if (dependent != null) {
+                invalidate(dependent);
+            }
+        }
+    }
+
+    /**
+     * Clears the thumbnail of a layer or map, and schedules it to be regenerated if warming is
+     * enabled.
+     */
+    void invalidate(PublishedInfo layer) {
+        controller.clearThumbnail(layer);
+        warmer.invalidated(layer);
+    }
+
+    static class Change {
+        final CatalogInfo source;
+        final boolean removed;
+        /** Credentials of the thread that raised the event */
+        final Authentication auth;
+
+        Change(CatalogInfo source, boolean removed, Authentication auth) {
+            this.source = source;
+            this.removed = removed;
+            this.auth = auth;
+        }
+    }
 
 }
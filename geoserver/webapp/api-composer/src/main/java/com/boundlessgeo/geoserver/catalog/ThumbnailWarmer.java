@@ -0,0 +1,284 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.geoserver.catalog.Predicates.equal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.boundlessgeo.geoserver.api.controllers.ThumbnailController;
+import com.boundlessgeo.geoserver.util.PropertyUtil;
+import com.boundlessgeo.geoserver.util.RecentObjectCache;
+import com.boundlessgeo.geoserver.util.RecentObjectCache.Ref;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Regenerates thumbnails in the background after they have been invalidated, so that they are
+ * ready by the time they are next requested.
+ * <p>
+ * Invalidated layers and maps are debounced: a thumbnail is only regenerated once it has not been
+ * invalidated again for {@link #DEFAULT_DELAY} milliseconds (COMPOSER_THUMBNAIL_WARM_DELAY), so a
+ * series of style edits results in a single render. Pending thumbnails are rendered in order of
+ * recent use, as tracked by the {@link RecentObjectCache}. The actual renders are queued on the
+ * {@link ThumbnailController} renderer.
+ * </p>
+ * <p>
+ * Warming of invalidated thumbnails is opt-in, enabled by setting COMPOSER_THUMBNAIL_WARM to
+ * true. Warming a whole workspace through {@link #warm(WorkspaceInfo)} is always available.
+ * </p>
+ */
+@Component
+public class ThumbnailWarmer implements DisposableBean {
+
+    static Logger LOG = Logging.getLogger(ThumbnailWarmer.class);
+
+    /** Quiet period (in milliseconds) before an invalidated thumbnail is regenerated */
+    static final long DEFAULT_DELAY = 2000;
+
+    @Autowired
+    Catalog catalog;
+    @Autowired
+    ThumbnailController controller;
+    @Autowired
+    RecentObjectCache recent;
+
+    final boolean enabled;
+    final long delay;
+
+    /** Pending thumbnails by layer/map id */
+    final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<String, Pending>();
+    final AtomicBoolean scheduled = new AtomicBoolean();
+    final ScheduledExecutorService scheduler;
+
+    public ThumbnailWarmer() {
+        this(Boolean.valueOf(GeoServerExtensions.getProperty("COMPOSER_THUMBNAIL_WARM")), delay());
+    }
+
+    ThumbnailWarmer(boolean enabled, long delay) {
+        this.enabled = enabled;
+        this.delay = delay;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("composer-thumbnail-warmer").setDaemon(true).build());
+    }
+
+    static long delay() {
+        return PropertyUtil.property("COMPOSER_THUMBNAIL_WARM_DELAY", DEFAULT_DELAY);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called when the thumbnail of a layer or map has been invalidated. Does nothing unless
+     * warming is enabled.
+     *
+     * @param layer The invalidated LayerInfo or LayerGroupInfo
+     */
+    public void invalidated(PublishedInfo layer) {
+        if (enabled && layer != null) {
+            schedule(layer.getId(), delay);
+        }
+    }
+
+    /**
+     * Removes a layer or map from the pending thumbnails, when it has been deleted.
+     */
+    public void removed(PublishedInfo layer) {
+        if (layer != null) {
+            pending.remove(layer.getId());
+        }
+    }
+
+    /**
+     * Schedules the thumbnails of all layers and maps in a workspace for regeneration.
+     *
+     * @param ws The workspace
+     * @return The number of layers and maps scheduled
+     */
+    public int warm(WorkspaceInfo ws) {
+        int count = 0;
+        try (CloseableIterator<LayerInfo> it =
+                catalog.list(LayerInfo.class, equal("resource.namespace.prefix", ws.getName()))) {
+            while (it.hasNext()) {
+                schedule(it.next().getId(), 0);
+                count++;
+            }
+        }
+        try (CloseableIterator<LayerGroupInfo> it =
+                catalog.list(LayerGroupInfo.class, equal("workspace.name", ws.getName()))) {
+            while (it.hasNext()) {
+                schedule(it.next().getId(), 0);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Number of thumbnails waiting to be regenerated */
+    public int pending() {
+        return pending.size();
+    }
+
+    void schedule(String id, long wait) {
+        //Render with the credentials of whoever caused the invalidation
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        pending.put(id, new Pending(id, System.currentTimeMillis() + wait, auth));
+        flushLater(wait);
+    }
+
+    void flushLater(long wait) {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduled.set(false);
+                        flush();
+                    }
+                }, wait, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                //shut down
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Queues all pending thumbnails that are due, most recently used first.
+     */
+    void flush() {
+        long now = System.currentTimeMillis();
+        List<Pending> due = new ArrayList<Pending>();
+        long next = Long.MAX_VALUE;
+        for (Iterator<Pending> it = pending.values().iterator(); it.hasNext();) {
+            Pending p = it.next();
+            if (p.due <= now) {
+                if (pending.remove(p.id, p)) {
+                    due.add(p);
+                }
+            } else {
+                next = Math.min(next, p.due);
+            }
+        }
+        Collections.sort(due, priority());
+
+        for (int i = 0; i < due.size(); i++) {
+            Pending p = due.get(i);
+            try {
+                queue(p);
+            } catch (RejectedExecutionException e) {
+                //Render queue is full, try the rest later
+                for (Pending retry : due.subList(i, due.size())) {
+                    pending.putIfAbsent(retry.id, new Pending(retry.id, now + delay, retry.auth));
+                }
+                next = Math.min(next, now + delay);
+                break;
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "Unable to regenerate thumbnail for "+p.id, e);
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            flushLater(Math.max(0, next - System.currentTimeMillis()));
+        }
+    }
+
+    void queue(Pending p) {
+        Authentication oldAuth = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(p.auth);
+        try {
+            PublishedInfo layer = catalog.getLayer(p.id);
+            WorkspaceInfo ws;
+            if (layer != null) {
+                ws = ((LayerInfo) layer).getResource().getStore().getWorkspace();
+            } else {
+                layer = catalog.getLayerGroup(p.id);
+                if (layer == null) {
+                    //Removed since it was scheduled
+                    return;
+                }
+                ws = ((LayerGroupInfo) layer).getWorkspace();
+            }
+            controller.queueThumbnail(ws, layer);
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(oldAuth);
+        }
+    }
+
+    /**
+     * Orders pending thumbnails by how recently the layer or map was used, then by the time they
+     * became due.
+     */
+    Comparator<Pending> priority() {
+        final Map<String, Integer> rank = new HashMap<String, Integer>();
+        int i = 0;
+        for (Ref ref : recent.list(LayerGroupInfo.class)) {
+            rank.put(ref.id, i++);
+        }
+        for (Ref ref : recent.list(LayerInfo.class)) {
+            if (!rank.containsKey(ref.id)) {
+                rank.put(ref.id, i++);
+            }
+        }
+        return new Comparator<Pending>() {
+            @Override
+            public int compare(Pending a, Pending b) {
+                Integer ra = rank.get(a.id);
+                Integer rb = rank.get(b.id);
+                if (ra != null || rb != null) {
+                    if (ra == null) return 1;
+                    if (rb == null) return -1;
+                    return ra.compareTo(rb);
+                }
+                return Long.compare(a.due, b.due);
+            }
+        };
+    }
+
+    static class Pending {
+        final String id;
+        final long due;
+        final Authentication auth;
+
+        Pending(String id, long due, Authentication auth) {
+            this.id = id;
+            this.due = due;
+            this.auth = auth;
+        }
+    }
+}
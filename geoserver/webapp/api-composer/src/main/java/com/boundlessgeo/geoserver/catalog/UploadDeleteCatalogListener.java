@@ -14,13 +14,16 @@ import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.apache.commons.io.FileUtils;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.resource.Files;
 
 import com.boundlessgeo.geoserver.api.controllers.ImportController;
 
 /**
  * Listens for StoreInfo removals and deletes store files that were uploaded using the 
- * Composer Import API or the GeoServer REST Upload API
+ * Composer Import API or the GeoServer REST Upload API, and removes them from the 
+ * {@link UploadSpace} count.
  */
 public class UploadDeleteCatalogListener  implements CatalogListener {
     Catalog catalog;
@@ -44,7 +47,12 @@ public class UploadDeleteCatalogListener  implements CatalogListener {
                 // REST upload API, delete the uploaded file.
                 java.io.File uploadDir = ImportController.uploadDir(catalog, store.getWorkspace(), store);
                 if (uploadDir.exists()) {
+                    long size = FileUtils.sizeOf(uploadDir);
                     Files.delete(uploadDir);
+                    UploadSpace space = GeoServerExtensions.bean(UploadSpace.class);
+                    if (space != null) {
+                        space.add(uploadDir, -size);
+                    }
                 }
             } catch (IOException e) {
                 throw new RuntimeException("Could not delete store files for "+store.getName(), e);
@@ -0,0 +1,329 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.boundlessgeo.geoserver.util.PropertyUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Keeps count of the space used by uploaded files, without walking the upload directories on
+ * every request.
+ * <p>
+ * Bytes are counted per upload root (see ImportController.uploadRoot), as uploads are written,
+ * moved between roots and deleted with {@link #add(File, long)} and {@link #moved(File, File, long)}.
+ * The counters are saved to composer/upload-space.properties in the data directory, and every
+ * root is walked in the background every COMPOSER_UPLOAD_RECONCILE minutes (default 60) to
+ * correct for files changed outside of composer. A root is first walked in the background too, so
+ * its usage is unknown until then.
+ * </p>
+ * <p>
+ * Uploads to a workspace are limited by its quota: the "uploadQuota" metadata of the workspace
+ * in bytes, or COMPOSER_UPLOAD_QUOTA megabytes (default 0, no limit). Workspaces sharing a global
+ * upload root share its usage.
+ * </p>
+ */
+@Component
+public class UploadSpace implements InitializingBean, DisposableBean {
+
+    static Logger LOG = Logging.getLogger(UploadSpace.class);
+
+    /** Workspace metadata key of the upload quota, in bytes */
+    public static final String QUOTA = "uploadQuota";
+
+    /** Default time (in minutes) between walks of the upload roots */
+    static final long DEFAULT_RECONCILE_INTERVAL = 60;
+
+    /** Time (in seconds) between saves of the counters */
+    static final long FLUSH_INTERVAL = 60;
+
+    @Autowired
+    Catalog catalog;
+
+    final ConcurrentMap<String, Counter> roots = new ConcurrentHashMap<String, Counter>();
+
+    File file;
+    long defaultQuota;
+    ScheduledExecutorService executor;
+
+    volatile boolean dirty = false;
+
+    public UploadSpace() {
+    }
+
+    public UploadSpace(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        defaultQuota = PropertyUtil.property("COMPOSER_UPLOAD_QUOTA", 0L) * 1024 * 1024;
+        try {
+            file = new File(catalog.getResourceLoader().findOrCreateDirectory("composer"),
+                "upload-space.properties");
+            load();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to read upload space counters, upload roots will be recounted", e);
+        }
+        long interval = TimeUnit.MINUTES.toSeconds(
+            PropertyUtil.property("COMPOSER_UPLOAD_RECONCILE", DEFAULT_RECONCILE_INTERVAL));
+        executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("composer-upload-space").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.SECONDS);
+        if (interval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    for (String root : roots.keySet()) {
+                        reconcile(root);
+                    }
+                    flush();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Bytes used under an upload root, counting it in the background if it has not been yet.
+     *
+     * @return The bytes used, or -1 if not known yet
+     */
+    public long used(File root) {
+        Counter counter = counter(root);
+        return counter.known ? counter.bytes.get() : -1;
+    }
+
+    /**
+     * The upload quota of a workspace, in bytes, or 0 if there is no limit.
+     */
+    public long quota(WorkspaceInfo ws) {
+        if (ws != null && ws.getMetadata() != null) {
+            Long quota = Converters.convert(ws.getMetadata().get(QUOTA), Long.class);
+            if (quota != null) {
+                return quota;
+            }
+        }
+        return defaultQuota;
+    }
+
+    /**
+     * Bytes that can still be uploaded to a workspace before it goes over quota.
+     *
+     * @param ws The workspace
+     * @param root The upload root of the workspace
+     * @return The bytes left, or Long.MAX_VALUE if there is no limit
+     */
+    public long remaining(WorkspaceInfo ws, File root) {
+        long quota = quota(ws);
+        if (quota <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, quota - Math.max(0, used(root)));
+    }
+
+    /**
+     * Records files written (or, with negative bytes, deleted) under an upload root.
+     *
+     * @param file The file or directory written to
+     * @param bytes The change in size
+     */
+    public void add(File file, long bytes) {
+        Counter counter = find(file);
+        if (counter != null && bytes != 0) {
+            counter.bytes.addAndGet(bytes);
+            counter.pending.addAndGet(bytes);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Records files moved, which only changes the counters if they moved to another upload root.
+     */
+    public void moved(File src, File dest, long bytes) {
+        Counter from = find(src);
+        Counter to = find(dest);
+        if (from != to) {
+            add(src, -bytes);
+            add(dest, bytes);
+        }
+    }
+
+    Counter counter(File root) {
+        String key = root.getAbsoluteFile().toPath().normalize().toString();
+        Counter counter = roots.get(key);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = roots.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+                schedule(key);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * The counter of the upload root a file is under, or null if it is not under a known root.
+     */
+    Counter find(File file) {
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        Counter found = null;
+        int length = -1;
+        for (Map.Entry<String, Counter> e : roots.entrySet()) {
+            if (path.startsWith(e.getKey()) && e.getKey().length() > length) {
+                found = e.getValue();
+                length = e.getKey().length();
+            }
+        }
+        return found;
+    }
+
+    void schedule(final String root) {
+        if (executor == null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                reconcile(root);
+            }
+        });
+    }
+
+    /**
+     * Counts the bytes under an upload root, keeping the changes recorded while counting.
+     */
+    void reconcile(String root) {
+        Counter counter = roots.get(root);
+        if (counter == null) {
+            return;
+        }
+        counter.pending.set(0);
+        final long[] total = new long[1];
+        try {
+            Path path = new File(root).toPath();
+            if (Files.isDirectory(path)) {
+                Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        total[0] += attrs.size();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        //deleted while walking
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to count upload space under "+root, e);
+            return;
+        }
+        long previous = counter.bytes.getAndSet(total[0] + counter.pending.get());
+        counter.known = true;
+        dirty = true;
+        if (previous != counter.bytes.get()) {
+            LOG.fine("Upload space under "+root+" corrected from "+previous+" to "+counter.bytes.get());
+        }
+    }
+
+    void load() throws IOException {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        }
+        for (String root : props.stringPropertyNames()) {
+            try {
+                Counter counter = new Counter();
+                counter.bytes.set(Long.parseLong(props.getProperty(root).trim()));
+                counter.known = true;
+                roots.putIfAbsent(root, counter);
+            } catch (NumberFormatException e) {
+                LOG.warning("Ignoring invalid upload space count for "+root);
+            }
+        }
+    }
+
+    /**
+     * Saves the counters, if they changed.
+     */
+    synchronized void flush() {
+        if (!dirty || file == null) {
+            return;
+        }
+        dirty = false;
+        Properties props = new Properties();
+        for (Map.Entry<String, Counter> e : roots.entrySet()) {
+            if (e.getValue().known) {
+                props.setProperty(e.getKey(), String.valueOf(e.getValue().bytes.get()));
+            }
+        }
+        File tmp = new File(file.getPath()+".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                props.store(out, "Bytes used by composer uploads, by upload root");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            dirty = true;
+            LOG.log(Level.WARNING, "Unable to save upload space counters", e);
+        }
+    }
+
+    static class Counter {
+        final AtomicLong bytes = new AtomicLong();
+        /** Changes recorded since the root was last counted */
+        final AtomicLong pending = new AtomicLong();
+        volatile boolean known = false;
+    }
+}
@@ -141,12 +141,10 @@ public class JSONArr extends JSONWrapper<JSONArray> implements Iterable<Object>
                     out.write("null");
                     continue;
                 }
-                value = wrapOrSelf(value);
-                JSONWrapper.write(value, out);
+                JSONWrapper.encode(value, out);
             }
             out.write(']');
 
         }
-        out.flush();
     }
 }
@@ -144,6 +144,18 @@ public class JSONObj extends JSONWrapper<JSONObject> {
         return arr;
     }
 
+    /**
+     * Removes the property mapped to <tt>key</tt>.
+     *
+     * @return The removed raw value, or <tt>null</tt> if no such property existed.
+     */
+    public Object remove(String key) {
+        if( order != null ){
+            order.remove(key);
+        }
+        return raw.remove(key);
+    }
+
     @Override
     public int size() {
         return raw.size();
@@ -175,10 +187,9 @@ public class JSONObj extends JSONWrapper<JSONObject> {
                 out.write(JSONObject.escape(key));
                 out.write('\"');
                 out.write(':');
-                JSONWrapper.write(value, out);
+                JSONWrapper.encode(value, out);
             }
             out.write('}');
         }
-        out.flush();
     }
 }
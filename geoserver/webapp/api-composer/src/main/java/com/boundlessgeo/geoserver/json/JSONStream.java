@@ -0,0 +1,18 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.json;
+
+import java.io.IOException;
+
+/**
+ * JSON content encoded while it is written to a response, returned by endpoints listing an
+ * arbitrary number of items in place of a {@link JSONObj}.
+ */
+public interface JSONStream {
+
+    /**
+     * Encodes the content. Called once, as the response is written.
+     */
+    void write(JSONStreamWriter out) throws IOException;
+}
@@ -0,0 +1,164 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.json;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Encodes JSON to a writer as it is produced, rather than building a {@link JSONObj} first.
+ * <p>
+ * Objects and arrays are opened and closed explicitly, and values can be any value a
+ * {@link JSONObj} holds, wrappers included. This way each item of a long list can still be built
+ * with the IO helpers, written, and dropped before the next one is read:
+ * <pre>
+ * out.object()
+ *   .put("total", total)
+ *   .putArray("layers");
+ * while (it.hasNext()) {
+ *     out.value(layer(new JSONObj(), it.next()));
+ * }
+ * out.endArray().endObject();
+ * </pre>
+ * </p>
+ */
+public class JSONStreamWriter implements Flushable {
+
+    final Writer out;
+
+    /** The open objects and arrays, innermost first */
+    final Deque<Scope> scopes = new ArrayDeque<Scope>();
+
+    /** Whether a key has been written and its value is expected */
+    boolean key = false;
+
+    public JSONStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Opens an object.
+     */
+    public JSONStreamWriter object() throws IOException {
+        separate();
+        out.write('{');
+        scopes.push(new Scope('}'));
+        return this;
+    }
+
+    /**
+     * Closes the current object.
+     */
+    public JSONStreamWriter endObject() throws IOException {
+        return end('}');
+    }
+
+    /**
+     * Opens an array.
+     */
+    public JSONStreamWriter array() throws IOException {
+        separate();
+        out.write('[');
+        scopes.push(new Scope(']'));
+        return this;
+    }
+
+    /**
+     * Closes the current array.
+     */
+    public JSONStreamWriter endArray() throws IOException {
+        return end(']');
+    }
+
+    /**
+     * Writes the key of the next value of the current object.
+     */
+    public JSONStreamWriter key(String name) throws IOException {
+        if (key || scopes.isEmpty() || scopes.peek().close != '}') {
+            throw new IllegalStateException("Key '"+name+"' not expected");
+        }
+        separate();
+        out.write('\"');
+        out.write(JSONObject.escape(name));
+        out.write("\":");
+        key = true;
+        return this;
+    }
+
+    /**
+     * Writes a value: null, a string, number or boolean, a wrapper, or a map or list of those.
+     */
+    public JSONStreamWriter value(Object value) throws IOException {
+        separate();
+        JSONWrapper.encode(value, out);
+        return this;
+    }
+
+    /**
+     * Writes a property of the current object.
+     */
+    public JSONStreamWriter put(String name, Object value) throws IOException {
+        return key(name).value(value);
+    }
+
+    /**
+     * Opens an array as a property of the current object.
+     */
+    public JSONStreamWriter putArray(String name) throws IOException {
+        return key(name).array();
+    }
+
+    /**
+     * Opens an object as a property of the current object.
+     */
+    public JSONStreamWriter putObject(String name) throws IOException {
+        return key(name).object();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    JSONStreamWriter end(char c) throws IOException {
+        if (key || scopes.isEmpty() || scopes.peek().close != c) {
+            throw new IllegalStateException("Unexpected '"+c+"'");
+        }
+        scopes.pop();
+        out.write(c);
+        return this;
+    }
+
+    /**
+     * Writes the comma before a value, unless it is the first of its object or array, or the
+     * value of a key.
+     */
+    void separate() throws IOException {
+        if (key) {
+            key = false;
+            return;
+        }
+        Scope scope = scopes.peek();
+        if (scope != null) {
+            if (!scope.empty) {
+                out.write(',');
+            }
+            scope.empty = false;
+        }
+    }
+
+    static class Scope {
+        final char close;
+        boolean empty = true;
+
+        Scope(char close) {
+            this.close = close;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.json.simple.JSONValue;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -20,6 +21,7 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -63,29 +65,36 @@ public abstract class JSONWrapper<T extends JSONStreamAware> {
     }
 
     /**
-     * Encodes a wrapper as JSON.
+     * Encodes a wrapper as JSON, in UTF-8.
      *
      * @param obj The wrapper.
      * @param output Target output stream.
      *
      */
     public static void write(JSONWrapper<? extends JSONStreamAware> obj, OutputStream output) throws IOException {
-        write(obj, new OutputStreamWriter(output));
+        write(obj, new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
     }
 
     /**
      * Encodes a wrapper as JSON.
      *
      * @param obj The wrapper.
-     * @param out Target writer.
+     * @param out Target writer, flushed once the value is written.
      *
      */
     public static void write(Object value, Writer out)
             throws IOException {
+        encode(value, out);
+        out.flush();
+    }
+
+    /**
+     * Encodes a value as JSON, without flushing the writer.
+     */
+    static void encode(Object value, Writer out) throws IOException {
         value = wrapOrSelf(value);
         if (value == null ) {
             out.write("null");
-            out.flush();
         }
         else if( value instanceof JSONWrapper){
             ((JSONWrapper<?>)value).write(out);
@@ -107,14 +116,14 @@ public abstract class JSONWrapper<T extends JSONStreamAware> {
     }
 
     /**
-     * Decodes JSON content returning a wrapper.
+     * Decodes UTF-8 JSON content returning a wrapper.
      *
      * @param input Input JSON.
      *
      * @return The wrapper.
      */
     public static JSONWrapper<?> read(InputStream input) throws IOException {
-        return read(new InputStreamReader(input));
+        return read(new InputStreamReader(input, StandardCharsets.UTF_8));
     }
 
     /**
@@ -0,0 +1,115 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Input stream computing the SHA-256 checksum and size of the bytes read through it, and failing
+ * once more than a given number of bytes have been read.
+ * <p>
+ * Used to check uploads as they are streamed to disk, without buffering them.
+ * </p>
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+    final MessageDigest digest;
+    final long limit;
+    long count = 0;
+    boolean exceeded = false;
+
+    /**
+     * @param in The stream to read
+     * @param limit Maximum number of bytes that can be read, or -1 for no limit
+     */
+    public ChecksumInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            digest.update((byte) b);
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            digest.update(b, off, n);
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        //skipped bytes must still be part of the checksum
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    void count(int n) throws IOException {
+        count += n;
+        if (limit >= 0 && count > limit) {
+            exceeded = true;
+            throw new IOException("Upload exceeds the "+limit+" bytes available");
+        }
+    }
+
+    /** Number of bytes read */
+    public long count() {
+        return count;
+    }
+
+    /** True if reading failed because more than the limit was read */
+    public boolean exceeded() {
+        return exceeded;
+    }
+
+    /**
+     * Hex encoded SHA-256 checksum of the bytes read. Only valid once the stream has been read.
+     */
+    public String sha256() {
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+}
@@ -0,0 +1,183 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounded executor that coalesces concurrent submissions for the same key.
+ * <p>
+ * While a task for a key is queued or running, any further submission for that key returns the
+ * future of the existing task instead of scheduling a new one. Once the task completes, the next
+ * submission for the key schedules a new task.
+ * </p>
+ * <p>
+ * The queue of pending tasks is bounded; when it is full {@link #submit(Object, Callable)} throws
+ * a {@link RejectedExecutionException} rather than blocking the caller.
+ * </p>
+ */
+public class CoalescingExecutor<K, V> {
+
+    final ThreadPoolExecutor executor;
+    final ConcurrentMap<K, KeyedTask> inflight = new ConcurrentHashMap<K, KeyedTask>();
+
+    final AtomicLong submitted = new AtomicLong();
+    final AtomicLong coalesced = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong totalTime = new AtomicLong();
+    final AtomicLong maxTime = new AtomicLong();
+
+    /**
+     * @param name Prefix used to name the worker threads
+     * @param threads Number of worker threads
+     * @param queueSize Maximum number of tasks waiting for a worker
+     */
+    public CoalescingExecutor(String name, int threads, int queueSize) {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules a task for the given key, or joins the task already scheduled for that key.
+     *
+     * @param key Key identifying the work to be done
+     * @param task The work to be done
+     * @return Future of the task doing the work for this key
+     * @throws RejectedExecutionException If the queue is full
+     */
+    public Future<V> submit(K key, Callable<V> task) throws RejectedExecutionException {
+        KeyedTask created = new KeyedTask(key, task);
+        KeyedTask existing = inflight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        try {
+            executor.execute(created);
+        } catch (RejectedExecutionException e) {
+            inflight.remove(key, created);
+            rejected.incrementAndGet();
+            throw e;
+        }
+        submitted.incrementAndGet();
+        return created;
+    }
+
+    /**
+     * Returns the future of the task currently queued or running for the key, or null if there
+     * is none.
+     */
+    public Future<V> get(K key) {
+        return inflight.get(key);
+    }
+
+    /** Number of tasks waiting for a worker */
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    /** Number of tasks currently being executed */
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    /** Number of tasks scheduled (not counting coalesced submissions) */
+    public long submitted() {
+        return submitted.get();
+    }
+
+    /** Number of submissions that joined an existing task */
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    /** Number of submissions rejected because the queue was full */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /** Number of tasks that have completed successfully */
+    public long completed() {
+        return completed.get();
+    }
+
+    /** Number of tasks that have completed with an error */
+    public long failed() {
+        return failed.get();
+    }
+
+    /** Total execution time of all finished tasks, in milliseconds */
+    public long totalTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalTime.get());
+    }
+
+    /** Longest execution time of a single task, in milliseconds */
+    public long maxTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxTime.get());
+    }
+
+    /**
+     * Stops accepting new tasks, and interrupts running tasks.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    class KeyedTask extends FutureTask<V> {
+        final K key;
+
+        KeyedTask(K key, Callable<V> task) {
+            super(task);
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                super.run();
+            } finally {
+                long time = System.nanoTime() - start;
+                totalTime.addAndGet(time);
+                long max = maxTime.get();
+                while (time > max && !maxTime.compareAndSet(max, time)) {
+                    max = maxTime.get();
+                }
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed.incrementAndGet();
+            super.setException(t);
+        }
+
+        @Override
+        protected void set(V v) {
+            completed.incrementAndGet();
+            super.set(v);
+        }
+
+        @Override
+        protected void done() {
+            inflight.remove(key, this);
+        }
+    }
+}
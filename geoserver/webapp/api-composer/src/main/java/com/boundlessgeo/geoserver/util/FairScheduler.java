@@ -0,0 +1,200 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executor that shares a fixed number of threads fairly between keys (such as workspaces).
+ * <p>
+ * At most <tt>threads</tt> tasks run at once, and at most <tt>threadsPerKey</tt> of them for
+ * the same key. Waiting tasks are queued per key, and whenever a thread is free the next key in
+ * round-robin order with a waiting task (and below its limit) gets it, so a key with a large
+ * backlog does not hold back the others.
+ * </p>
+ * <p>
+ * The number of waiting tasks is bounded; a submission that would exceed it is rejected with a
+ * {@link RejectedExecutionException} rather than blocking the caller.
+ * </p>
+ */
+public class FairScheduler<K> {
+
+    final int threads;
+    final int threadsPerKey;
+    final int queueSize;
+    final ExecutorService executor;
+
+    /** Waiting tasks of each key, in round-robin order. Guarded by this */
+    final LinkedHashMap<K, Deque<FutureTask<?>>> queues = new LinkedHashMap<K, Deque<FutureTask<?>>>();
+    /** Running tasks of each key. Guarded by this */
+    final Map<K, Integer> running = new HashMap<K, Integer>();
+    int queued = 0;
+    int active = 0;
+
+    /**
+     * @param name Prefix used to name the worker threads
+     * @param threads Maximum number of tasks running at once
+     * @param threadsPerKey Maximum number of tasks running at once for the same key
+     * @param queueSize Maximum number of waiting tasks
+     */
+    public FairScheduler(String name, int threads, int threadsPerKey, int queueSize) {
+        this.threads = threads;
+        this.threadsPerKey = Math.min(threads, threadsPerKey);
+        this.queueSize = queueSize;
+        executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @throws RejectedExecutionException If the queue is full
+     */
+    public <V> Future<V> submit(K key, Callable<V> task) throws RejectedExecutionException {
+        List<Callable<V>> tasks = new ArrayList<Callable<V>>(1);
+        tasks.add(task);
+        return submitAll(key, tasks).get(0);
+    }
+
+    /**
+     * Schedules a group of tasks, all or none of them.
+     *
+     * @throws RejectedExecutionException If the tasks do not all fit in the queue
+     */
+    public synchronized <V> List<Future<V>> submitAll(K key, List<? extends Callable<V>> tasks)
+            throws RejectedExecutionException {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Scheduler has been shut down");
+        }
+        if (tasks.isEmpty()) {
+            return new ArrayList<Future<V>>();
+        }
+        if (queued + tasks.size() > queueSize) {
+            throw new RejectedExecutionException("Queue full: "+queued+" tasks waiting");
+        }
+        Deque<FutureTask<?>> queue = queues.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<FutureTask<?>>();
+            queues.put(key, queue);
+        }
+        List<Future<V>> futures = new ArrayList<Future<V>>(tasks.size());
+        for (Callable<V> task : tasks) {
+            FutureTask<V> future = new FutureTask<V>(task);
+            queue.add(future);
+            futures.add(future);
+        }
+        queued += tasks.size();
+        dispatch();
+        return futures;
+    }
+
+    /**
+     * Hands waiting tasks to free threads, one key at a time.
+     */
+    synchronized void dispatch() {
+        boolean dispatched = true;
+        while (active < threads && queued > 0 && dispatched && !executor.isShutdown()) {
+            dispatched = false;
+            //snapshot the order, keys that get a thread move to the back
+            for (K key : new ArrayList<K>(queues.keySet())) {
+                if (active >= threads) {
+                    break;
+                }
+                Integer count = running.get(key);
+                if (count != null && count >= threadsPerKey) {
+                    continue;
+                }
+                Deque<FutureTask<?>> queue = queues.remove(key);
+                FutureTask<?> task = queue.poll();
+                if (!queue.isEmpty()) {
+                    queues.put(key, queue);
+                }
+                queued--;
+                if (task.isCancelled()) {
+                    dispatched = true;
+                    continue;
+                }
+                running.put(key, count == null ? 1 : count + 1);
+                active++;
+                executor.execute(new Worker(key, task));
+                dispatched = true;
+            }
+        }
+    }
+
+    synchronized void finished(K key) {
+        active--;
+        Integer count = running.get(key);
+        if (count == null || count <= 1) {
+            running.remove(key);
+        } else {
+            running.put(key, count - 1);
+        }
+        dispatch();
+    }
+
+    /** Number of tasks waiting for a thread */
+    public synchronized int queued() {
+        return queued;
+    }
+
+    /** Number of tasks running */
+    public synchronized int active() {
+        return active;
+    }
+
+    /** Number of tasks running for a key */
+    public synchronized int active(K key) {
+        Integer count = running.get(key);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Stops the scheduler, cancelling waiting tasks and interrupting running ones.
+     */
+    public synchronized void shutdown() {
+        for (Deque<FutureTask<?>> queue : queues.values()) {
+            for (Iterator<FutureTask<?>> it = queue.iterator(); it.hasNext();) {
+                it.next().cancel(false);
+            }
+        }
+        queues.clear();
+        queued = 0;
+        executor.shutdownNow();
+    }
+
+    class Worker implements Runnable {
+        final K key;
+        final FutureTask<?> task;
+
+        Worker(K key, FutureTask<?> task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                finished(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Moves a set of files (such as a shapefile and its sidecar files) as a unit.
+ * <p>
+ * Each file is hard linked into place when the source and destination are on the same file
+ * system, renamed when links are not supported there, and copied otherwise. Copies run in
+ * parallel, each into a temporary file that is renamed into place once complete.
+ * </p>
+ * <p>
+ * Nothing is lost until the relocation is committed: if any file fails, every file already
+ * placed is removed (or renamed back), leaving the sources as they were. Sources that were
+ * linked or copied are only deleted by {@link #commit()}.
+ * </p>
+ */
+public class FileRelocation {
+
+    static final Logger LOG = Logging.getLogger(FileRelocation.class);
+
+    static final String TEMP_EXTENSION = ".part";
+
+    /** Shared by all relocations, for copies across file systems */
+    static final ExecutorService COPIER = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors()),
+        new ThreadFactoryBuilder().setNameFormat("composer-copy-%d").setDaemon(true).build());
+
+    /** How a file was put in place */
+    public enum Method {LINK, RENAME, COPY}
+
+    static class Entry {
+        final Path src;
+        final Path dest;
+        Method method;
+
+        Entry(Path src, Path dest) {
+            this.src = src;
+            this.dest = dest;
+        }
+    }
+
+    final List<Entry> entries = new ArrayList<Entry>();
+
+    /** Allows hard links, disabled by tests to exercise the other methods */
+    boolean links = true;
+
+    /**
+     * Adds a file to the relocation.
+     */
+    public FileRelocation add(File src, File dest) {
+        entries.add(new Entry(src.toPath(), dest.toPath()));
+        return this;
+    }
+
+    /**
+     * Puts every file in place, undoing everything if any of them fails.
+     *
+     * @throws FileAlreadyExistsException If a destination exists already, before anything is
+     *   done
+     * @throws IOException If a file could not be put in place
+     */
+    public void run() throws IOException {
+        for (Entry e : entries) {
+            if (Files.exists(e.dest)) {
+                throw new FileAlreadyExistsException(e.dest.toString());
+            }
+        }
+        List<Entry> copies = new ArrayList<Entry>();
+        try {
+            for (Entry e : entries) {
+                Files.createDirectories(e.dest.getParent());
+                if (sameStore(e.src, e.dest)) {
+                    place(e);
+                }
+                if (e.method == null) {
+                    copies.add(e);
+                }
+            }
+            copy(copies);
+        } catch (IOException | RuntimeException e) {
+            rollback();
+            throw e;
+        }
+    }
+
+    boolean sameStore(Path src, Path dest) {
+        try {
+            FileStore store = Files.getFileStore(src);
+            return store.equals(Files.getFileStore(dest.getParent()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Links or renames a file on the same file system, leaving the method unset if neither works.
+     */
+    void place(Entry e) throws IOException {
+        if (links) {
+            try {
+                Files.createLink(e.dest, e.src);
+                e.method = Method.LINK;
+                return;
+            } catch (UnsupportedOperationException | SecurityException ex) {
+                //not supported here
+            } catch (FileAlreadyExistsException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Unable to link "+e.src+", falling back to rename", ex);
+            }
+        }
+        try {
+            Files.move(e.src, e.dest, StandardCopyOption.ATOMIC_MOVE);
+            e.method = Method.RENAME;
+        } catch (AtomicMoveNotSupportedException ex) {
+            //copy instead
+        }
+    }
+
+    void copy(List<Entry> copies) throws IOException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Entry e : copies) {
+            futures.add(COPIER.submit(() -> {
+                copy(e);
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> f : futures) {
+            //wait for all of them, so none is still writing during the rollback
+            try {
+                f.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("Interrupted while copying", ex);
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    Throwable cause = ex.getCause();
+                    failure = cause instanceof IOException ? (IOException) cause
+                        : new IOException("Copy failed", cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    void copy(Entry e) throws IOException {
+        Path tmp = e.dest.resolveSibling(e.dest.getFileName() + TEMP_EXTENSION);
+        try (FileChannel in = FileChannel.open(e.src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(false);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.move(tmp, e.dest, StandardCopyOption.ATOMIC_MOVE);
+        e.method = Method.COPY;
+    }
+
+    /**
+     * Undoes the files put in place so far.
+     */
+    public void rollback() {
+        for (Entry e : entries) {
+            if (e.method == null) {
+                continue;
+            }
+            try {
+                if (e.method == Method.RENAME) {
+                    Files.move(e.dest, e.src, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.deleteIfExists(e.dest);
+                }
+                e.method = null;
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Unable to undo relocation of "+e.src+" to "+e.dest, ex);
+            }
+        }
+    }
+
+    /**
+     * Completes the relocation, deleting the sources that are still in place.
+     */
+    public void commit() {
+        for (Entry e : entries) {
+            if (e.method == Method.LINK || e.method == Method.COPY) {
+                try {
+                    Files.deleteIfExists(e.src);
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, "Unable to remove relocated file "+e.src, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Total size of the files put in place.
+     */
+    public long size() {
+        long size = 0;
+        for (Entry e : entries) {
+            if (e.method != null) {
+                size += e.dest.toFile().length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The method used for a file, or null if it has not been placed.
+     */
+    public Method method(File src) {
+        for (Entry e : entries) {
+            if (e.src.equals(src.toPath())) {
+                return e.method;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,52 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Looks up composer settings, given as system properties, environment variables or servlet
+ * context parameters (see {@link GeoServerExtensions#getProperty(String, ServletContext)}).
+ */
+public class PropertyUtil {
+
+    static final Logger LOG = Logging.getLogger(PropertyUtil.class);
+
+    /**
+     * Looks up a numeric property, falling back to a default if unset or invalid.
+     */
+    public static int property(String name, int defaultValue) {
+        return (int) property(name, (long) defaultValue);
+    }
+
+    /**
+     * Looks up a numeric property, falling back to a default if unset or invalid.
+     */
+    public static long property(String name, long defaultValue) {
+        return property(name, defaultValue, null);
+    }
+
+    /**
+     * Looks up a numeric property, falling back to a default if unset or invalid.
+     *
+     * @param context The servlet context to look up the property in, or null for the current one
+     */
+    public static long property(String name, long defaultValue, ServletContext context) {
+        String value = context != null
+            ? GeoServerExtensions.getProperty(name, context) : GeoServerExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.warning("Invalid value for "+name+": "+value+", using "+defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+}
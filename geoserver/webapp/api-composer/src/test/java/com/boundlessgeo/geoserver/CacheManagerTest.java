@@ -0,0 +1,87 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File write(CacheManager cache, String name, int size, long accessed) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        cache.written(name);
+        cache.entries.get(name).accessed = accessed;
+        return file;
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        FileUtils.writeByteArrayToFile(folder.newFile("a.png"), new byte[10]);
+        FileUtils.writeByteArrayToFile(folder.newFile("b.png"), new byte[20]);
+        File stale = folder.newFile("c.png.tmp");
+        stale.setLastModified(System.currentTimeMillis() - CacheManager.TEMP_FILE_AGE - 1000);
+        File writing = folder.newFile("d.png.tmp");
+
+        CacheManager cache = new CacheManager(folder.getRoot(), 0, 0);
+        assertEquals(2, cache.size());
+        assertEquals(30, cache.bytes());
+        assertFalse(stale.exists());
+        assertTrue(writing.exists());
+    }
+
+    @Test
+    public void testEvictByFiles() throws Exception {
+        CacheManager cache = new CacheManager(folder.getRoot(), 0, 10);
+        File[] files = new File[10];
+        for (int i = 0; i < 10; i++) {
+            files[i] = write(cache, i+".png", 1, i);
+        }
+        assertEquals(10, cache.size());
+        // touching the oldest file keeps it
+        cache.accessed("0.png");
+
+        write(cache, "10.png", 1, 100);
+        // back under the low water mark
+        assertEquals(9, cache.size());
+        assertEquals(2, cache.evicted());
+        assertTrue(files[0].exists());
+        assertFalse(files[1].exists());
+        assertFalse(files[2].exists());
+        assertTrue(files[3].exists());
+    }
+
+    @Test
+    public void testEvictByBytes() throws Exception {
+        CacheManager cache = new CacheManager(folder.getRoot(), 100, 0);
+        File a = write(cache, "a.png", 40, 1);
+        File b = write(cache, "b.png", 40, 2);
+        write(cache, "c.png", 40, 3);
+
+        assertEquals(80, cache.bytes());
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        CacheManager cache = new CacheManager(folder.getRoot(), 0, 0);
+        File a = write(cache, "a.png", 10, 1);
+        assertTrue(cache.delete("a.png"));
+        assertFalse(a.exists());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+}
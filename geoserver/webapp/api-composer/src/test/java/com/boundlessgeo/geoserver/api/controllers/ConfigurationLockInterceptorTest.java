@@ -14,6 +14,7 @@ import static org.mockito.Mockito.when;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.method.HandlerMethod;
 
 public class ConfigurationLockInterceptorTest {
 
@@ -52,4 +53,38 @@ public class ConfigurationLockInterceptorTest {
         assertLock(LockType.WRITE, "delete");
     }
 
+    public static class StreamController extends ApiController {
+        public StreamController() {
+            super(null);
+        }
+
+        @Unlocked
+        public void events() {
+        }
+    }
+
+    @Test
+    public void testUnlocked() throws Exception {
+        HttpServletRequest req = new MockHttpServletRequest("get", "");
+        interceptor.dispatched(req, null, new HandlerMethod(new StreamController(), "events"));
+        assertEquals(null, interceptor.THREAD_LOCK.get());
+        interceptor.finished(req, null);
+    }
+
+    @Test
+    public void testUploadRangeUnlocked() throws Exception {
+        HttpServletRequest req = new MockHttpServletRequest("put", "");
+        interceptor.dispatched(req, null, new HandlerMethod(controller, ImportController.class.getMethod(
+            "uploadRange", String.class, String.class, HttpServletRequest.class)));
+        assertEquals(null, interceptor.THREAD_LOCK.get());
+        interceptor.finished(req, null);
+
+        // completing the upload creates the import, under the lock
+        req = new MockHttpServletRequest("post", "");
+        interceptor.dispatched(req, null, new HandlerMethod(controller, ImportController.class.getMethod(
+            "uploadComplete", String.class, String.class, String.class, HttpServletRequest.class)));
+        assertEquals(LockType.WRITE, interceptor.THREAD_LOCK.get());
+        interceptor.finished(req, null);
+    }
+
 }
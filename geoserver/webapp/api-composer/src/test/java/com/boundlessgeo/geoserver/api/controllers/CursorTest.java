@@ -0,0 +1,55 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.geoserver.catalog.Predicates;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortOrder;
+
+import com.boundlessgeo.geoserver.api.exceptions.BadRequestException;
+
+public class CursorTest {
+
+    @Test
+    public void testFirst() {
+        assertNull(Cursor.parse(null, null));
+
+        Cursor cursor = Cursor.parse("", Predicates.desc("name"));
+        assertFalse(cursor.ascending);
+        assertNull(cursor.last);
+        assertEquals(SortOrder.DESCENDING, cursor.sort().getSortOrder());
+
+        Filter filter = Predicates.equal("workspace.name", "foo");
+        assertSame(filter, cursor.filter(filter));
+    }
+
+    @Test
+    public void testNext() {
+        Cursor next = Cursor.parse("", null).next("roads:main");
+        Cursor parsed = Cursor.parse(next.encode(), null);
+        assertTrue(parsed.ascending);
+        assertEquals("roads:main", parsed.last);
+
+        Filter filter = Predicates.equal("workspace.name", "foo");
+        assertEquals(Predicates.and(filter, Cursor.FF.greater(Cursor.FF.property("name"),
+            Cursor.FF.literal("roads:main"))), parsed.filter(filter));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testSortByOther() {
+        Cursor.parse("", Predicates.asc("title"));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testInvalid() {
+        Cursor.parse("not a cursor!", null);
+    }
+}
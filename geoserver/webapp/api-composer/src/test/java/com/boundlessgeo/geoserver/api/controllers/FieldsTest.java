@@ -0,0 +1,50 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.boundlessgeo.geoserver.json.JSONObj;
+
+public class FieldsTest {
+
+    @Test
+    public void testParse() {
+        assertSame(Fields.ALL, Fields.parse(null));
+        assertSame(Fields.ALL, Fields.parse(" "));
+        assertSame(Fields.ALL, Fields.parse("title,*"));
+
+        Fields fields = Fields.parse("title, modified");
+        assertTrue(fields.has("name"));
+        assertTrue(fields.has("title"));
+        assertTrue(fields.has("modified"));
+        assertFalse(fields.has("schema"));
+        assertTrue(fields.any("schema", "title"));
+    }
+
+    @Test
+    public void testNested() {
+        Fields fields = Fields.parse("title,layers.title");
+        assertTrue(fields.has("layers"));
+        assertFalse(fields.has("bbox"));
+
+        Fields layers = fields.nested("layers");
+        assertTrue(layers.has("title"));
+        assertFalse(layers.has("schema"));
+
+        assertSame(Fields.ALL, Fields.parse("layers").nested("layers"));
+    }
+
+    @Test
+    public void testSelect() {
+        JSONObj obj = new JSONObj().put("name", "one").put("title", "One").put("type", "vector");
+        Fields.parse("title").select(obj);
+        assertEquals("{\"name\":\"one\",\"title\":\"One\"}", obj.toString());
+    }
+}
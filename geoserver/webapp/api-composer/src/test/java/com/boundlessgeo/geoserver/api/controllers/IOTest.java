@@ -2,12 +2,14 @@ package com.boundlessgeo.geoserver.api.controllers;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
 import org.opengis.feature.simple.SimpleFeatureType;
 import com.boundlessgeo.geoserver.Proj;
+import com.boundlessgeo.geoserver.json.JSONArr;
 import com.boundlessgeo.geoserver.json.JSONObj;
 import org.locationtech.jts.geom.Point;
 
@@ -47,4 +49,19 @@ public class IOTest {
         assertEquals("test_schema", schema.get("name"));
         assertEquals("other_geom", schema.get("defaultGeometry"));
     }
+
+    @Test
+    public void TestCopy() {
+        JSONObj shared = new JSONObj();
+        shared.putObject("nested").put("a", 1);
+        shared.putArray("attributes").addObject().put("name", "geom");
+
+        JSONObj copy = IO.copy(new JSONObj(), shared);
+        assertNotSame(shared.get("attributes"), copy.get("attributes"));
+        assertNotSame(shared.get("nested"), copy.get("nested"));
+
+        // changing the copy leaves the shared object alone
+        ((JSONArr) copy.get("attributes")).object(0).put("name", "other");
+        assertEquals("geom", ((JSONArr) shared.get("attributes")).object(0).str("name"));
+    }
 }
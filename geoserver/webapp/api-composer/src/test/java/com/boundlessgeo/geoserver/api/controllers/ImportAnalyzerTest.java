@@ -0,0 +1,86 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geotools.data.DataAccessFactory.Param;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFactorySpi;
+import org.junit.Test;
+
+import com.boundlessgeo.geoserver.catalog.StoreConnectionIndex;
+
+public class ImportAnalyzerTest {
+
+    Map<String, Serializable> params(Object... kvp) {
+        Map<String, Serializable> params = new LinkedHashMap<String, Serializable>();
+        for (int i = 0; i < kvp.length; i += 2) {
+            params.put((String) kvp[i], (Serializable) kvp[i+1]);
+        }
+        return params;
+    }
+
+    @SuppressWarnings("unchecked")
+    DataStoreFactorySpi factory(DataStore store) throws Exception {
+        DataStoreFactorySpi factory = mock(DataStoreFactorySpi.class);
+        when(factory.getParametersInfo()).thenReturn(new Param[] {
+            new Param("database", String.class, "Database", true),
+            new Param("passwd", String.class, "Password", false)
+        });
+        when(factory.createDataStore(anyMap())).thenReturn(store);
+        return factory;
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        DataStore store = mock(DataStore.class);
+        when(store.getTypeNames()).thenReturn(new String[0]);
+        DataStoreFactorySpi factory = factory(store);
+
+        ImportAnalyzer analyzer = new ImportAnalyzer(10, 10);
+        Map<String, Serializable> params = params("database", "gis");
+        assertNull(analyzer.cached(factory, params));
+
+        ImportAnalyzer.Analysis analysis = analyzer.analyze(factory, params, false);
+        assertSame(analysis, analyzer.analyze(factory, params, false));
+        assertSame(analysis, analyzer.cached(factory, params));
+        verify(factory, times(1)).createDataStore(anyMap());
+        verify(store).dispose();
+
+        analyzer.analyze(factory, params, true);
+        verify(factory, times(2)).createDataStore(anyMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCredentials() throws Exception {
+        DataStore store = mock(DataStore.class);
+        when(store.getTypeNames()).thenReturn(new String[0]);
+        DataStoreFactorySpi factory = factory(store);
+
+        ImportAnalyzer analyzer = new ImportAnalyzer(10, 10);
+        ImportAnalyzer.Analysis analysis = analyzer.analyze(factory, params("database", "gis", "passwd", "a"), false);
+        assertEquals(StoreConnectionIndex.fingerprint(factory, params("database", "gis")), analysis.fingerprint());
+
+        // the fingerprint leaves the password out, the cache does not
+        assertNull(analyzer.cached(factory, params("database", "gis", "passwd", "b")));
+        ImportAnalyzer.Analysis other = analyzer.analyze(factory, params("database", "gis", "passwd", "b"), false);
+        assertNotSame(analysis, other);
+        assertEquals(analysis.fingerprint(), other.fingerprint());
+        verify(factory, times(2)).createDataStore(anyMap());
+    }
+}
@@ -0,0 +1,94 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.geoserver.importer.ImportTask;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.boundlessgeo.geoserver.json.JSONArr;
+import com.boundlessgeo.geoserver.json.JSONObj;
+
+public class ImportProgressTest {
+
+    AtomicInteger encoded;
+    ImportProgress progress;
+
+    @Before
+    public void setUp() {
+        encoded = new AtomicInteger();
+        progress = new ImportProgress(new Function<ImportTask, JSONObj>() {
+            @Override
+            public JSONObj apply(ImportTask task) {
+                encoded.incrementAndGet();
+                return new JSONObj().put("task", task.getId()).put("status", task.getState().toString());
+            }
+        });
+    }
+
+    ImportTask task(long id, ImportTask.State state) {
+        ImportTask task = mock(ImportTask.class);
+        when(task.getId()).thenReturn(id);
+        when(task.getState()).thenReturn(state);
+        return task;
+    }
+
+    @Test
+    public void testEncodedOncePerState() {
+        ImportTask task = task(0, ImportTask.State.RUNNING);
+        JSONObj obj = progress.task(task);
+        assertSame(obj, progress.task(task));
+        assertEquals(1, encoded.get());
+
+        when(task.getState()).thenReturn(ImportTask.State.COMPLETE);
+        assertEquals("COMPLETE", progress.task(task).str("status"));
+        progress.task(task);
+        assertEquals(2, encoded.get());
+    }
+
+    @Test
+    public void testSince() {
+        ImportTask t0 = task(0, ImportTask.State.RUNNING);
+        ImportTask t1 = task(1, ImportTask.State.RUNNING);
+        progress.task(t0);
+        progress.task(t1);
+
+        JSONArr all = new JSONArr();
+        long version = progress.since(-1, all);
+        assertEquals(2, all.size());
+
+        when(t1.getState()).thenReturn(ImportTask.State.COMPLETE);
+        progress.task(t0);
+        progress.task(t1);
+
+        JSONArr changed = new JSONArr();
+        assertTrue(progress.since(version, changed) > version);
+        assertEquals(1, changed.size());
+        assertEquals(Long.valueOf(1), changed.object(0).get("task"));
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        final long version = progress.version();
+        assertFalse(progress.await(version, 10));
+
+        new Thread() {
+            @Override
+            public void run() {
+                progress.changed();
+            }
+        }.start();
+        assertTrue(progress.await(version, 10000));
+    }
+}
@@ -0,0 +1,123 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.boundlessgeo.geoserver.api.controllers.ImportRegistry.Job;
+
+public class ImportRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File journal;
+
+    @Before
+    public void setUp() {
+        journal = new File(folder.getRoot(), "imports.journal");
+    }
+
+    @Test
+    public void testIds() {
+        ImportRegistry<String> registry = new ImportRegistry<String>(null, 1000);
+        assertEquals(0, registry.create("ws", "a").id());
+        assertEquals(1, registry.create("ws", "b").id());
+        assertEquals("b", registry.get(1).helper());
+        assertNull(registry.get(2));
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        ImportRegistry<String> registry = new ImportRegistry<String>(journal, 60000);
+        Job<String> one = registry.create("ws", "a");
+        Job<String> two = registry.create("ws", "b");
+        registry.update(one, 12L, ImportRegistry.COMPLETE);
+        registry.create("other", "c");
+        registry.remove(2);
+        registry.close();
+
+        registry = new ImportRegistry<String>(journal, 60000);
+        assertEquals(2, registry.size());
+        Job<String> restored = registry.get(one.id());
+        assertEquals(Long.valueOf(12), restored.context());
+        assertEquals(ImportRegistry.COMPLETE, restored.state());
+        assertEquals("ws", restored.workspace());
+        assertNull(restored.helper());
+        assertEquals(ImportRegistry.PENDING, registry.get(two.id()).state());
+        // removed ids are not reused
+        assertEquals(3, registry.create("ws", "d").id());
+
+        // compacted to one line per job
+        List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        registry.close();
+    }
+
+    @Test
+    public void testRestoreRunning() throws Exception {
+        ImportRegistry<String> registry = new ImportRegistry<String>(journal, 60000);
+        Job<String> job = registry.create("ws", "a");
+        registry.update(job, 12L, ImportRegistry.RUNNING);
+        registry.close();
+
+        // the run did not survive the restart, so the job can expire
+        registry = new ImportRegistry<String>(journal, 0);
+        assertEquals(ImportRegistry.EXPIRED, registry.get(job.id()).state());
+        Thread.sleep(10);
+        assertEquals(1, registry.expire().size());
+        registry.close();
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        ImportRegistry<String> registry = new ImportRegistry<String>(journal, 0);
+        Job<String> done = registry.create("ws", "a");
+        Job<String> running = registry.create("ws", "b");
+        registry.update(running, 1L, ImportRegistry.RUNNING);
+        Thread.sleep(10);
+
+        List<Job<String>> expired = registry.expire();
+        assertEquals(1, expired.size());
+        assertEquals(done.id(), expired.get(0).id());
+        assertNull(registry.get(done.id()));
+        assertNotNull(registry.get(running.id()));
+        registry.close();
+
+        registry = new ImportRegistry<String>(journal, 0);
+        assertNull(registry.get(done.id()));
+        registry.close();
+    }
+
+    @Test
+    public void testList() {
+        ImportRegistry<String> registry = new ImportRegistry<String>(null, 1000);
+        for (int i = 0; i < 5; i++) {
+            registry.create("ws", "a" + i);
+            registry.create("other", "b" + i);
+        }
+        assertEquals(5, registry.count("ws"));
+
+        List<Job<String>> page = registry.list("ws", 0, 2);
+        assertEquals(2, page.size());
+        assertEquals("a4", page.get(0).helper());
+        assertEquals("a3", page.get(1).helper());
+
+        page = registry.list("ws", 4, 2);
+        assertEquals(1, page.size());
+        assertEquals("a0", page.get(0).helper());
+    }
+}
@@ -56,6 +56,7 @@ import java.util.List;
 
 import static junit.framework.TestCase.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -157,6 +158,46 @@ public class LayerControllerTest {
 
     }
 
+    @Test
+    public void testListCursor() throws Exception {
+        MockGeoServer.get().catalog()
+            .workspace("foo", "http://scratch.org", true)
+                .layer("one").style().point().layer()
+                  .featureType().defaults().store("one").workspace()
+                .layer("two").style().point().layer()
+                  .featureType().defaults().store("two").workspace()
+            .geoServer().build(geoServer);
+
+        Catalog catalog = geoServer.getCatalog();
+        final List<LayerInfo> layers = catalog.getLayers();
+        when(catalog.list(eq(LayerInfo.class), any(org.opengis.filter.Filter.class), (Integer) isNull(),
+                eq(2), isA(SortBy.class))).thenAnswer(new Answer<CloseableIteratorAdapter<LayerInfo>>() {
+            @Override
+            public CloseableIteratorAdapter<LayerInfo> answer(InvocationOnMock invocation) throws Throwable {
+                return new CloseableIteratorAdapter<LayerInfo>(layers.iterator());
+            }
+        });
+
+        MvcResult result = mvc.perform(get("/app/api/layers/foo?cursor=&count=1"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+        JSONObj obj = JSONWrapper.read(result.getResponse().getContentAsString()).toObject();
+        assertEquals(1, obj.integer("count").intValue());
+        assertEquals(1, obj.array("layers").size());
+        // not counted unless asked for
+        assertNull(obj.get("total"));
+
+        String first = obj.array("layers").object(0).str("name");
+        Cursor next = Cursor.parse(obj.str("next"), null);
+        assertEquals(first, next.last);
+        assertTrue(next.ascending);
+
+        result = mvc.perform(get("/app/api/layers/foo?cursor=&count=1&sort=title"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+    }
+
     @SuppressWarnings("unused")
     @Test
     public void testGet() throws Exception {
@@ -211,6 +252,33 @@ public class LayerControllerTest {
         //assertTrue(Pattern.compile(".*\\d{2}:\\d{2}").matcher(mod).matches());
     }
 
+    @Test
+    public void testGetFields() throws Exception {
+        MockGeoServer.get().catalog()
+            .workspace("foo", "http://scratch.org", true)
+                .layer("one")
+                    .info("The layer", "This layer is cool!")
+                    .style().point().layer()
+                .featureType().defaults().store("foo")
+            .geoServer().build(geoServer);
+
+        MvcResult result = mvc.perform(get("/app/api/layers/foo/one?fields=title,modified"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+        JSONObj obj = JSONWrapper.read(result.getResponse().getContentAsString()).toObject();
+        assertEquals("one", obj.str("name"));
+        assertEquals("foo", obj.str("workspace"));
+        assertEquals("The layer", obj.str("title"));
+        assertNotNull(obj.get("modified"));
+        assertNull(obj.get("description"));
+        assertNull(obj.get("style"));
+        assertNull(obj.get("proj"));
+        assertNull(obj.get("bbox"));
+        assertNull(obj.get("schema"));
+        assertNull(obj.get("created"));
+    }
+
     @Test
     public void testGetStyle() throws Exception {
         MockGeoServer.get().catalog()
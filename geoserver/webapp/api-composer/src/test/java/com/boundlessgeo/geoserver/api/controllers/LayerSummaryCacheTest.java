@@ -0,0 +1,110 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MetadataMap;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class LayerSummaryCacheTest {
+
+    LayerSummaryCache cache;
+    LayerInfo layer;
+    FeatureTypeInfo ft;
+    DataStoreInfo store;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("points");
+        b.setCRS(DefaultGeographicCRS.WGS84);
+        b.add("geom", Point.class);
+        b.add("name", String.class);
+        SimpleFeatureType schema = b.buildFeatureType();
+
+        store = mock(DataStoreInfo.class);
+        when(store.getId()).thenReturn("store");
+
+        ft = mock(FeatureTypeInfo.class);
+        when(ft.getId()).thenReturn("ft");
+        when(ft.getNativeName()).thenReturn("points");
+        when(ft.getSRS()).thenReturn("EPSG:4326");
+        when(ft.getCRS()).thenReturn(DefaultGeographicCRS.WGS84);
+        when(ft.getMetadata()).thenReturn(new MetadataMap());
+        when(ft.getStore()).thenReturn(store);
+        when(ft.getFeatureType()).thenReturn(schema);
+
+        layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn("layer");
+        when(layer.getResource()).thenReturn(ft);
+        when(layer.getMetadata()).thenReturn(new MetadataMap());
+
+        cache = new LayerSummaryCache(mock(Catalog.class), 10, 100);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        LayerSummaryCache.Summary summary = cache.get(layer);
+        assertEquals("Point", summary.geometry());
+        assertEquals("EPSG:4326", summary.proj.str("srs"));
+        assertEquals("points", summary.schema.str("name"));
+
+        assertSame(summary, cache.get(layer));
+        verify(ft, times(1)).getFeatureType();
+    }
+
+    @Test
+    public void testStamp() throws Exception {
+        LayerSummaryCache.Summary summary = cache.get(layer);
+
+        // modified without a catalog event reaching the cache
+        Metadata.modified(layer, new Date());
+        assertNotSame(summary, cache.get(layer));
+        verify(ft, times(2)).getFeatureType();
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        LayerSummaryCache.Summary summary = cache.get(layer);
+        cache.invalidate(store);
+        LayerSummaryCache.Summary again = cache.get(layer);
+        assertNotSame(summary, again);
+
+        cache.invalidate(ft);
+        assertNotSame(again, cache.get(layer));
+        verify(ft, times(3)).getFeatureType();
+    }
+
+    @Test
+    public void testSchemaError() throws Exception {
+        when(ft.getFeatureType()).thenThrow(new IOException("unavailable"));
+
+        // not cached, tried again next time
+        LayerSummaryCache.Summary summary = cache.get(layer);
+        assertNull(summary.schema);
+        assertEquals("none", IO.geometry(layer));
+        cache.get(layer);
+        verify(ft, times(3)).getFeatureType();
+    }
+}
@@ -0,0 +1,160 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.config.GeoServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.boundlessgeo.geoserver.AppConfiguration;
+
+public class ThumbnailControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    ThumbnailController ctrl;
+    LayerInfo layer;
+    WorkspaceInfo ws;
+    File file;
+
+    @Before
+    public void setUp() throws Exception {
+        ctrl = new ThumbnailController(mock(GeoServer.class));
+        ctrl.config = mock(AppConfiguration.class);
+        when(ctrl.config.cacheDir()).thenReturn(folder.getRoot().getPath());
+        ctrl.afterPropertiesSet();
+
+        ws = mock(WorkspaceInfo.class);
+        layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn("layer1");
+        ctrl.store.bind(layer, "abc");
+
+        file = folder.newFile(ThumbnailStore.filename("abc", false));
+        FileUtils.writeByteArrayToFile(file, new byte[]{1, 2, 3});
+        when(ctrl.config.cacheFile(ThumbnailStore.filename("abc", false))).thenReturn(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ctrl.destroy();
+    }
+
+    @Test
+    public void testGetFromMemory() throws Exception {
+        ResponseEntity<byte[]> response = ctrl.get(ws, layer, false, new MockHttpServletRequest());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(new byte[]{1, 2, 3}, response.getBody());
+        assertNotNull(response.getHeaders().getETag());
+
+        // served from memory, even once the file is gone
+        file.delete();
+        response = ctrl.get(ws, layer, false, new MockHttpServletRequest());
+        assertArrayEquals(new byte[]{1, 2, 3}, response.getBody());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        ResponseEntity<byte[]> response = ctrl.get(ws, layer, false, new MockHttpServletRequest());
+        String etag = response.getHeaders().getETag();
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        response = ctrl.get(ws, layer, false, request);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(etag, response.getHeaders().getETag());
+
+        request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        response = ctrl.get(ws, layer, false, request);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    @Test
+    public void testWriteInvalidatesMemory() throws Exception {
+        ResponseEntity<byte[]> response = ctrl.get(ws, layer, false, new MockHttpServletRequest());
+        String etag = response.getHeaders().getETag();
+
+        FileUtils.writeByteArrayToFile(file, new byte[]{4, 5, 6});
+        ctrl.invalidate("abc");
+
+        response = ctrl.get(ws, layer, false, new MockHttpServletRequest());
+        assertArrayEquals(new byte[]{4, 5, 6}, response.getBody());
+        assertEquals(false, etag.equals(response.getHeaders().getETag()));
+    }
+
+    @Test
+    public void testSharedKey() throws Exception {
+        ctrl.get(ws, layer, false, new MockHttpServletRequest());
+
+        // a copy rendering the same way shares the file and the memory cache
+        LayerInfo copy = mock(LayerInfo.class);
+        when(copy.getId()).thenReturn("layer2");
+        ctrl.store.bind(copy, "abc");
+        file.delete();
+
+        ResponseEntity<byte[]> response = ctrl.get(ws, copy, false, new MockHttpServletRequest());
+        assertArrayEquals(new byte[]{1, 2, 3}, response.getBody());
+        assertEquals(2, ctrl.store.refCount("abc"));
+
+        ctrl.clearThumbnail(layer);
+        assertEquals(1, ctrl.store.refCount("abc"));
+        assertNull(ctrl.store.key(layer));
+    }
+
+    @Test
+    public void testForgetCollected() throws Exception {
+        when(ctrl.config.cacheFile(ThumbnailStore.filename("abc", true))).thenReturn(
+            new File(folder.getRoot(), ThumbnailStore.filename("abc", true)));
+        ctrl.get(ws, layer, false, new MockHttpServletRequest());
+        assertTrue(ctrl.revisions.containsKey("abc"));
+
+        // still bound, or still on disk
+        ctrl.forget();
+        assertTrue(ctrl.revisions.containsKey("abc"));
+        ctrl.clearThumbnail(layer);
+        ctrl.forget();
+        assertTrue(ctrl.revisions.containsKey("abc"));
+
+        // collected
+        file.delete();
+        ctrl.forget();
+        assertFalse(ctrl.revisions.containsKey("abc"));
+        assertEquals(0, ctrl.memoryCache.size());
+    }
+
+    @Test
+    public void testQueueExisting() throws Exception {
+        File hiRes = folder.newFile(ThumbnailStore.filename("abc", true));
+        when(ctrl.config.cacheFile(ThumbnailStore.filename("abc", true))).thenReturn(hiRes);
+
+        // already rendered, nothing to queue
+        Future<Void> render = ctrl.queueThumbnail(ws, layer);
+        assertTrue(render.isDone());
+        assertEquals(0, ctrl.renderer.submitted());
+    }
+}
@@ -0,0 +1,76 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class ThumbnailEncoderTest {
+
+    BufferedImage decode(ThumbnailEncoder.Encoded encoded, boolean hiRes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoded.write(hiRes, out);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        // wide image, with the center square filled
+        BufferedImage image = new BufferedImage(250, 150, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(50, 0, 150, 150);
+        g.dispose();
+
+        ThumbnailEncoder encoder = new ThumbnailEncoder();
+        ThumbnailEncoder.Encoded encoded = encoder.encode(image);
+
+        BufferedImage hiRes = decode(encoded, true);
+        assertEquals(150, hiRes.getWidth());
+        assertEquals(150, hiRes.getHeight());
+        assertEquals(Color.RED.getRGB(), hiRes.getRGB(0, 0));
+        assertEquals(Color.RED.getRGB(), hiRes.getRGB(149, 149));
+
+        BufferedImage loRes = decode(encoded, false);
+        assertEquals(75, loRes.getWidth());
+        assertEquals(75, loRes.getHeight());
+        assertEquals(Color.RED.getRGB(), loRes.getRGB(37, 37));
+    }
+
+    @Test
+    public void testReuseBuffers() throws Exception {
+        ThumbnailEncoder encoder = new ThumbnailEncoder();
+        encoder.encode(new BufferedImage(150, 150, BufferedImage.TYPE_INT_ARGB));
+        BufferedImage loRes = encoder.loResImage.get();
+
+        // a transparent image after an opaque one does not keep the previous pixels
+        BufferedImage image = new BufferedImage(150, 150, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.BLUE);
+        g.fillRect(0, 0, 150, 150);
+        g.dispose();
+        encoder.encode(image);
+        ThumbnailEncoder.Encoded encoded = encoder.encode(new BufferedImage(150, 150, BufferedImage.TYPE_INT_ARGB));
+
+        assertSame(loRes, encoder.loResImage.get());
+        assertEquals(0, decode(encoded, false).getRGB(37, 37) >>> 24);
+    }
+
+    @Test
+    public void testBlank() throws Exception {
+        assertEquals(75, decode(ThumbnailEncoder.BLANK, false).getWidth());
+        assertEquals(150, decode(ThumbnailEncoder.BLANK, true).getWidth());
+        assertSame(ThumbnailEncoder.BLANK.bytes(true), ThumbnailEncoder.BLANK.bytes(true));
+    }
+}
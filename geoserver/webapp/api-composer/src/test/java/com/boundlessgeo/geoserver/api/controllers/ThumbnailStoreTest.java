@@ -0,0 +1,117 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.boundlessgeo.geoserver.AppConfiguration;
+import com.boundlessgeo.geoserver.CacheManager;
+
+public class ThumbnailStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    ThumbnailStore store;
+
+    @Before
+    public void setUp() {
+        AppConfiguration config = mock(AppConfiguration.class);
+        when(config.cacheDir()).thenReturn(folder.getRoot().getPath());
+        when(config.cacheFile(anyString())).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) throws Throwable {
+                return new File(folder.getRoot(), (String) invocation.getArguments()[0]);
+            }
+        });
+        when(config.cache()).thenReturn(new CacheManager(folder.getRoot(), 0, 0));
+        store = new ThumbnailStore(config);
+    }
+
+    LayerInfo layer(String id) {
+        LayerInfo layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn(id);
+        return layer;
+    }
+
+    File thumbnail(String key, boolean hiRes) throws Exception {
+        File file = folder.newFile(ThumbnailStore.filename(key, hiRes));
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        return file;
+    }
+
+    @Test
+    public void testRefCount() {
+        LayerInfo one = layer("one");
+        LayerInfo two = layer("two");
+
+        assertEquals("a", store.bind(one, "a"));
+        assertEquals("a", store.bind(two, "a"));
+        assertEquals(2, store.refCount("a"));
+        // already bound
+        assertEquals("a", store.bind(one, "b"));
+
+        store.unbind(one);
+        assertEquals(1, store.refCount("a"));
+        store.unbind(two);
+        assertEquals(0, store.refCount("a"));
+    }
+
+    @Test
+    public void testGc() throws Exception {
+        LayerInfo one = layer("one");
+        store.bind(one, "a");
+        File a = thumbnail("a", false);
+        File aHr = thumbnail("a", true);
+        File b = thumbnail("b", false);
+        File bHr = thumbnail("b", true);
+        File legacy = thumbnail("LayerInfoImpl-123", false);
+
+        assertEquals(3, store.gc(1000));
+        assertTrue(a.exists());
+        assertTrue(aHr.exists());
+        assertFalse(b.exists());
+        assertFalse(bHr.exists());
+        assertFalse(legacy.exists());
+
+        // recently released files are retained
+        store.unbind(one);
+        assertEquals(0, store.gc(1000));
+        assertTrue(a.exists());
+        assertEquals(2, store.gc(0));
+        assertFalse(a.exists());
+    }
+
+    @Test
+    public void testSweep() throws Exception {
+        LayerInfo one = layer("one");
+        LayerInfo two = layer("two");
+        store.bind(one, "a");
+        store.bind(two, "b");
+
+        // two was removed without the catalog listener seeing it
+        Catalog catalog = mock(Catalog.class);
+        when(catalog.getLayer("one")).thenReturn(one);
+        assertEquals(1, store.sweep(catalog));
+        assertEquals("a", store.key(one));
+        assertEquals(null, store.key(two));
+        assertEquals(0, store.refCount("b"));
+    }
+}
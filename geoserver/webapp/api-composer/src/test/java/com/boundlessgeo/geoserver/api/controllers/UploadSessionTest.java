@@ -0,0 +1,123 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.controllers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+
+public class UploadSessionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    void write(UploadSession session, byte[] bytes, int start, int end) throws Exception {
+        session.write(start, end, new ByteArrayInputStream(Arrays.copyOfRange(bytes, start, end)));
+    }
+
+    @Test
+    public void testOutOfOrder() throws Exception {
+        byte[] bytes = bytes(1000);
+        UploadSession session = UploadSession.create(folder.getRoot(), "ws", "data.tif", 1000, null);
+        assertEquals(1000, session.file().length());
+
+        write(session, bytes, 500, 1000);
+        write(session, bytes, 0, 200);
+        assertFalse(session.complete());
+        assertEquals(700, session.received());
+        assertEquals(2, session.ranges().size());
+
+        // retries are acknowledged without writing
+        assertEquals(0, session.write(0, 100, new ByteArrayInputStream(new byte[0])));
+
+        write(session, bytes, 150, 600);
+        assertTrue(session.complete());
+        assertEquals(1, session.ranges().size());
+        assertArrayEquals(bytes, FileUtils.readFileToByteArray(session.file()));
+    }
+
+    @Test
+    public void testPartialRange() throws Exception {
+        UploadSession session = UploadSession.create(folder.getRoot(), "ws", "data.tif", 100, null);
+        // connection dropped after 40 bytes
+        session.write(0, 100, new ByteArrayInputStream(new byte[40]));
+        assertEquals(40, session.received());
+        assertFalse(session.complete());
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        byte[] bytes = bytes(100);
+        UploadSession session = UploadSession.create(folder.getRoot(), "ws", "data.tif", 100,
+            Hashing.sha256().hashBytes(bytes).toString());
+        write(session, bytes, 0, 50);
+
+        UploadSession loaded = UploadSession.load(folder.getRoot(), session.id());
+        assertEquals("ws", loaded.workspace());
+        assertEquals("data.tif", loaded.name());
+        assertEquals(50, loaded.received());
+
+        write(loaded, bytes, 50, 100);
+        assertTrue(loaded.complete());
+        assertTrue(loaded.verify());
+
+        loaded.delete();
+        assertFalse(loaded.dir().exists());
+        assertNull(UploadSession.load(folder.getRoot(), session.id()));
+    }
+
+    @Test
+    public void testVerifyMismatch() throws Exception {
+        UploadSession session = UploadSession.create(folder.getRoot(), "ws", "data.tif", 10,
+            Hashing.sha256().hashBytes(new byte[]{1}).toString());
+        write(session, new byte[10], 0, 10);
+        assertFalse(session.verify());
+    }
+
+    @Test
+    public void testInvalidId() throws Exception {
+        assertNull(UploadSession.load(folder.getRoot(), "../../etc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidName() throws Exception {
+        UploadSession.create(folder.getRoot(), "ws", ".session", 10, null);
+    }
+
+    @Test
+    public void testList() throws Exception {
+        UploadSession session = UploadSession.create(folder.getRoot(), "ws", "data.tif", 100, null);
+        folder.newFile("other.txt");
+
+        // found again after a restart, so it can be expired
+        List<UploadSession> sessions = UploadSession.list(folder.getRoot());
+        assertEquals(1, sessions.size());
+        assertEquals(session.id(), sessions.get(0).id());
+        assertEquals("ws", sessions.get(0).workspace());
+
+        session.delete();
+        assertTrue(UploadSession.list(folder.getRoot()).isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.api.converters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.platform.resource.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+public class ResourceMessageConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteFile() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File file = folder.newFile("icon.png");
+        FileUtils.writeByteArrayToFile(file, data);
+
+        MockHttpOutputMessage msg = new MockHttpOutputMessage();
+        new ResourceMessageConverter().write(Files.asResource(file), MediaType.IMAGE_PNG, msg);
+
+        assertArrayEquals(data, msg.getBodyAsBytes());
+        assertEquals(data.length, msg.getHeaders().getContentLength());
+    }
+}
@@ -0,0 +1,112 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.MetadataMap;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+import com.boundlessgeo.geoserver.api.controllers.Metadata;
+import com.boundlessgeo.geoserver.util.CoalescingExecutor;
+
+public class BoundsServiceTest {
+
+    Catalog catalog;
+    FeatureTypeInfo ft;
+    BoundsService service;
+
+    ReferencedEnvelope actual = new ReferencedEnvelope(-10, 10, -5, 5, DefaultGeographicCRS.WGS84);
+    int reads = 0;
+
+    @Before
+    public void setUp() {
+        catalog = mock(Catalog.class);
+        ft = mock(FeatureTypeInfo.class);
+        when(ft.getId()).thenReturn("ft");
+        when(ft.getSRS()).thenReturn("EPSG:4326");
+        when(ft.getCRS()).thenReturn(DefaultGeographicCRS.WGS84);
+        when(ft.getMetadata()).thenReturn(new MetadataMap());
+        when(catalog.getResource("ft", ResourceInfo.class)).thenReturn(ft);
+
+        service = new BoundsService(catalog) {
+            @Override
+            ReferencedEnvelope nativeBounds(ResourceInfo r) throws IOException {
+                reads++;
+                return actual;
+            }
+        };
+    }
+
+    @Test
+    public void testEstimate() throws Exception {
+        assertTrue(service.estimate(ft));
+        verify(ft).setNativeBoundingBox(any(ReferencedEnvelope.class));
+        verify(ft).setLatLonBoundingBox(any(ReferencedEnvelope.class));
+        assertTrue(Metadata.boundsEstimated(ft));
+
+        // bounds already known
+        when(ft.getNativeBoundingBox()).thenReturn(actual);
+        when(ft.getLatLonBoundingBox()).thenReturn(actual);
+        Metadata.boundsEstimated(ft, false);
+        assertFalse(service.estimate(ft));
+        assertFalse(Metadata.boundsEstimated(ft));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        Metadata.boundsEstimated(ft, true);
+
+        assertEquals(actual, service.update("ft"));
+        verify(ft).setNativeBoundingBox(actual);
+        verify(catalog).save(ft);
+        assertFalse(Metadata.boundsEstimated(ft));
+    }
+
+    @Test
+    public void testUpdateExplicitBounds() throws Exception {
+        // bounds set by the user before they were computed
+        assertNull(service.update("ft"));
+        assertEquals(0, reads);
+        verify(catalog, never()).save(ft);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        // estimated before a restart
+        Metadata.boundsEstimated(ft, true);
+        ResourceInfo other = mock(ResourceInfo.class);
+        when(other.getMetadata()).thenReturn(new MetadataMap());
+        when(catalog.list(ResourceInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<ResourceInfo>(Arrays.asList(ft, other).iterator()));
+
+        service.executor = new CoalescingExecutor<String, ReferencedEnvelope>("test", 1, 10);
+        try {
+            assertEquals(1, service.resume());
+            verify(catalog, timeout(5000)).save(ft);
+        } finally {
+            service.executor.shutdown();
+        }
+    }
+}
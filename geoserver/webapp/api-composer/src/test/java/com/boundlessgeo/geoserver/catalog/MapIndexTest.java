@@ -0,0 +1,139 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerGroupInfo.Mode;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+public class MapIndexTest {
+
+    Catalog catalog;
+    MapIndex index;
+
+    WorkspaceInfo ws, ws2;
+    StyleInfo point, line;
+    LayerInfo roads;
+    LayerGroupInfo map, other, elsewhere;
+
+    @Before
+    public void setUp() {
+        catalog = mock(Catalog.class);
+        ws = workspace("ws");
+        ws2 = workspace("ws2");
+        point = style("point");
+        line = style("line");
+
+        roads = mock(LayerInfo.class);
+        when(roads.getId()).thenReturn("roads");
+        when(roads.getDefaultStyle()).thenReturn(line);
+
+        map = group("map", Mode.SINGLE, roads, line);
+        other = group("other", Mode.SINGLE, roads, null);
+        elsewhere = group("elsewhere", Mode.SINGLE, roads, line);
+        when(elsewhere.getWorkspace()).thenReturn(ws2);
+
+        when(catalog.list(LayerGroupInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<LayerGroupInfo>(Arrays.asList(map, other, elsewhere).iterator()));
+        index = new MapIndex(catalog);
+    }
+
+    WorkspaceInfo workspace(String id) {
+        WorkspaceInfo ws = mock(WorkspaceInfo.class);
+        when(ws.getId()).thenReturn(id);
+        return ws;
+    }
+
+    StyleInfo style(String id) {
+        StyleInfo style = mock(StyleInfo.class);
+        when(style.getId()).thenReturn(id);
+        return style;
+    }
+
+    LayerGroupInfo group(String id, Mode mode, PublishedInfo layer, StyleInfo style) {
+        LayerGroupInfo group = mock(LayerGroupInfo.class);
+        when(group.getId()).thenReturn(id);
+        when(group.getMode()).thenReturn(mode);
+        when(group.getWorkspace()).thenReturn(ws);
+        List<PublishedInfo> layers = new ArrayList<PublishedInfo>();
+        layers.add(layer);
+        List<StyleInfo> styles = new ArrayList<StyleInfo>();
+        styles.add(style);
+        when(group.getLayers()).thenReturn(layers);
+        when(group.getStyles()).thenReturn(styles);
+        when(catalog.getLayerGroup(id)).thenReturn(group);
+        return group;
+    }
+
+    @Test
+    public void testIsMap() {
+        assertTrue(MapIndex.isMap(map));
+        assertTrue(MapIndex.isMap(other));
+        assertFalse(MapIndex.isMap(group("eo", Mode.EO, roads, null)));
+        assertFalse(MapIndex.isMap(group("styled", Mode.SINGLE, roads, point)));
+
+        // any of the styles of the layer
+        when(roads.getStyles()).thenReturn(new HashSet<StyleInfo>(Arrays.asList(point)));
+        assertTrue(MapIndex.isMap(group("styled", Mode.SINGLE, roads, point)));
+    }
+
+    @Test
+    public void testFilter() {
+        Filter filter = Filter.INCLUDE;
+        assertSame(filter, index.filter(filter, ws));
+
+        // default style changed, map now draws roads with another style
+        when(roads.getDefaultStyle()).thenReturn(point);
+        index.handlePostModifyEvent(event(roads));
+        assertFalse(index.contains(map));
+        assertTrue(index.contains(other));
+        assertFalse(index.contains(elsewhere));
+        assertFalse(index.filter(filter, ws).evaluate(map));
+        assertTrue(index.filter(filter, ws).evaluate(other));
+
+        // layer groups of other workspaces are left out of the filter
+        index.handleRemoveEvent(remove(map));
+        assertSame(filter, index.filter(filter, ws));
+        assertFalse(index.filter(filter, ws2).evaluate(elsewhere));
+
+        // the former default is still one of the styles of the layer
+        when(roads.getStyles()).thenReturn(new HashSet<StyleInfo>(Arrays.asList(line, point)));
+        index.handlePostModifyEvent(event(roads));
+        assertTrue(index.contains(elsewhere));
+        assertSame(filter, index.filter(filter, ws2));
+    }
+
+    CatalogPostModifyEvent event(LayerInfo layer) {
+        CatalogPostModifyEvent e = mock(CatalogPostModifyEvent.class);
+        when(e.getSource()).thenReturn(layer);
+        return e;
+    }
+
+    CatalogRemoveEvent remove(LayerGroupInfo group) {
+        CatalogRemoveEvent e = mock(CatalogRemoveEvent.class);
+        when(e.getSource()).thenReturn(group);
+        return e;
+    }
+}
@@ -0,0 +1,124 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.geotools.data.DataAccessFactory;
+import org.geotools.data.DataAccessFactory.Param;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+public class StoreConnectionIndexTest {
+
+    Catalog catalog;
+    DataAccessFactory factory;
+    StoreConnectionIndex index;
+
+    WorkspaceInfo ws;
+    DataStoreInfo gis, other;
+
+    @Before
+    public void setUp() {
+        factory = mock(DataAccessFactory.class);
+        when(factory.getParametersInfo()).thenReturn(new Param[] {
+            new Param("host", String.class, "Host", true),
+            new Param("database", String.class, "Database", true),
+            new Param("user", String.class, "User", true),
+            new Param("passwd", String.class, "Password", true),
+            new Param("schema", String.class, "Schema", false, "public")
+        });
+
+        catalog = mock(Catalog.class);
+        ws = mock(WorkspaceInfo.class);
+        when(ws.getId()).thenReturn("ws");
+        gis = store("gis", params("host", "db.example.com", "database", "gis", "user", "u"));
+        other = store("other", params("host", "db.example.com", "database", "other", "user", "u"));
+
+        when(catalog.list(DataStoreInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<DataStoreInfo>(Arrays.asList(gis, other).iterator()));
+
+        index = new StoreConnectionIndex(catalog) {
+            @Override
+            Map<String, Serializable> resolve(Map<String, Serializable> params) {
+                return params;
+            }
+
+            @Override
+            DataAccessFactory factory(Map<String, Serializable> params) {
+                return factory;
+            }
+        };
+    }
+
+    Map<String, Serializable> params(String... kvp) {
+        Map<String, Serializable> params = new LinkedHashMap<String, Serializable>();
+        for (int i = 0; i < kvp.length; i += 2) {
+            params.put(kvp[i], kvp[i+1]);
+        }
+        return params;
+    }
+
+    DataStoreInfo store(String id, Map<String, Serializable> params) {
+        DataStoreInfo store = mock(DataStoreInfo.class);
+        when(store.getId()).thenReturn(id);
+        when(store.getName()).thenReturn(id);
+        when(store.getWorkspace()).thenReturn(ws);
+        when(store.getConnectionParameters()).thenReturn(params);
+        when(catalog.getStore(id, StoreInfo.class)).thenReturn(store);
+        return store;
+    }
+
+    @Test
+    public void testFingerprint() {
+        String fp = StoreConnectionIndex.fingerprint(factory,
+            params("host", "DB.example.com", "database", "gis", "user", "u"));
+        // defaults and case of the host do not matter
+        assertEquals(fp, StoreConnectionIndex.fingerprint(factory,
+            params("host", "db.example.com", "database", "gis", "user", "u", "schema", "public")));
+        // nor does the password
+        assertEquals(fp, StoreConnectionIndex.fingerprint(factory,
+            params("host", "db.example.com", "database", "gis", "user", "u", "passwd", "secret")));
+        assertNotEquals(fp, StoreConnectionIndex.fingerprint(factory,
+            params("host", "db.example.com", "database", "gis", "user", "u", "schema", "roads")));
+    }
+
+    @Test
+    public void testFind() {
+        assertSame(gis, index.find(ws, params("host", "db.example.com", "database", "gis", "user", "u")));
+        assertSame(other, index.find(ws, params("host", "db.example.com", "database", "other", "user", "u")));
+        assertNull(index.find(ws, params("host", "db.example.com", "database", "none", "user", "u")));
+
+        WorkspaceInfo ws2 = mock(WorkspaceInfo.class);
+        when(ws2.getId()).thenReturn("ws2");
+        assertNull(index.find(ws2, params("host", "db.example.com", "database", "gis", "user", "u")));
+    }
+
+    @Test
+    public void testRemove() {
+        index.find(ws, params("host", "db.example.com", "database", "gis", "user", "u"));
+
+        CatalogRemoveEvent event = mock(CatalogRemoveEvent.class);
+        when(event.getSource()).thenReturn(gis);
+        index.handleRemoveEvent(event);
+        assertNull(index.find(ws, params("host", "db.example.com", "database", "gis", "user", "u")));
+    }
+}
@@ -0,0 +1,102 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+import com.google.common.collect.ImmutableSet;
+
+public class ThumbnailDependencyIndexTest {
+
+    Catalog catalog;
+    ThumbnailDependencyIndex index;
+
+    StyleInfo point, line;
+    LayerInfo cities, roads;
+    LayerGroupInfo base, world;
+
+    @Before
+    public void setUp() {
+        point = style("point");
+        line = style("line");
+        cities = layer("cities", point);
+        roads = layer("roads", line);
+        // base contains roads (with its default style) and cities with the line style
+        base = group("base", Arrays.<PublishedInfo>asList(roads, cities), Arrays.asList(null, line));
+        // world nests base
+        world = group("world", Arrays.<PublishedInfo>asList(base), Arrays.asList((StyleInfo) null));
+
+        catalog = mock(Catalog.class);
+        when(catalog.list(LayerInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<LayerInfo>(Arrays.asList(cities, roads).iterator()));
+        when(catalog.list(LayerGroupInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<LayerGroupInfo>(Arrays.asList(base, world).iterator()));
+        index = new ThumbnailDependencyIndex(catalog);
+    }
+
+    @Test
+    public void testTransitive() {
+        assertEquals(ImmutableSet.of("roads", "base", "world"), index.dependents("line"));
+        assertEquals(ImmutableSet.of("cities", "base", "world"), index.dependents("point"));
+        assertEquals(ImmutableSet.of("world"), index.dependents("base"));
+        assertTrue(index.dependents("world").isEmpty());
+    }
+
+    @Test
+    public void testUpdate() {
+        index.dependents("point");
+
+        // move cities to the line style, and remove it from base
+        when(cities.getDefaultStyle()).thenReturn(line);
+        index.update(cities);
+        when(base.getLayers()).thenReturn(new ArrayList<PublishedInfo>(Arrays.asList(roads)));
+        when(base.getStyles()).thenReturn(new ArrayList<StyleInfo>(Arrays.asList((StyleInfo) null)));
+        index.update(base);
+
+        assertTrue(index.dependents("point").isEmpty());
+        assertTrue(index.dependents("cities").isEmpty());
+        assertEquals(ImmutableSet.of("roads", "base", "world", "cities"), index.dependents("line"));
+
+        index.remove("world");
+        assertEquals(ImmutableSet.of("roads", "base", "cities"), index.dependents("line"));
+    }
+
+    StyleInfo style(String id) {
+        StyleInfo style = mock(StyleInfo.class);
+        when(style.getId()).thenReturn(id);
+        return style;
+    }
+
+    LayerInfo layer(String id, StyleInfo style) {
+        LayerInfo layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn(id);
+        when(layer.getDefaultStyle()).thenReturn(style);
+        return layer;
+    }
+
+    LayerGroupInfo group(String id, List<PublishedInfo> layers, List<StyleInfo> styles) {
+        LayerGroupInfo group = mock(LayerGroupInfo.class);
+        when(group.getId()).thenReturn(id);
+        when(group.getLayers()).thenReturn(new ArrayList<PublishedInfo>(layers));
+        when(group.getStyles()).thenReturn(new ArrayList<StyleInfo>(styles));
+        return group;
+    }
+}
@@ -0,0 +1,181 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.util.CloseableIteratorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.filter.Filter;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.boundlessgeo.geoserver.api.controllers.ThumbnailController;
+
+public class ThumbnailInvalidatingCatalogListenerTest {
+
+    ThumbnailInvalidatingCatalogListener listener;
+    LayerInfo layer;
+    LayerGroupInfo map;
+    StyleInfo style;
+
+    @Before
+    public void setUp() throws Exception {
+        style = mock(StyleInfo.class);
+        when(style.getId()).thenReturn("style");
+        layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn("layer");
+        when(layer.getDefaultStyle()).thenReturn(style);
+        map = mock(LayerGroupInfo.class);
+        when(map.getId()).thenReturn("map");
+        when(map.getLayers()).thenReturn(Arrays.<PublishedInfo>asList(layer));
+        when(map.getStyles()).thenReturn(Arrays.asList((StyleInfo) null));
+
+        Catalog catalog = mock(Catalog.class);
+        when(catalog.getLayer("layer")).thenReturn(layer);
+        when(catalog.getLayerGroup("map")).thenReturn(map);
+        when(catalog.list(LayerInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<LayerInfo>(Collections.singletonList(layer).iterator()));
+        when(catalog.list(LayerGroupInfo.class, Filter.INCLUDE)).thenReturn(
+            new CloseableIteratorAdapter<LayerGroupInfo>(Collections.singletonList(map).iterator()));
+
+        listener = new ThumbnailInvalidatingCatalogListener();
+        listener.catalog = catalog;
+        listener.controller = mock(ThumbnailController.class);
+        listener.warmer = mock(ThumbnailWarmer.class);
+        listener.afterPropertiesSet();
+    }
+
+    CatalogPostModifyEvent modify(CatalogInfo source) {
+        CatalogPostModifyEvent event = mock(CatalogPostModifyEvent.class);
+        when(event.getSource()).thenReturn(source);
+        return event;
+    }
+
+    @Test
+    public void testModifyStyle() throws Exception {
+        listener.handlePostModifyEvent(modify(style));
+
+        verify(listener.controller, timeout(2000)).clearThumbnail(map);
+        verify(listener.controller).clearThumbnail(layer);
+        verify(listener.warmer).invalidated(layer);
+    }
+
+    @Test
+    public void testModifyResource() throws Exception {
+        // bounds computed in the background are saved on the resource only
+        FeatureTypeInfo resource = mock(FeatureTypeInfo.class);
+        when(resource.getId()).thenReturn("resource");
+        when(listener.catalog.getLayers(resource)).thenReturn(Arrays.asList(layer));
+
+        listener.handlePostModifyEvent(modify(resource));
+
+        verify(listener.controller, timeout(2000)).clearThumbnail(map);
+        verify(listener.controller).clearThumbnail(layer);
+        verify(listener.warmer).invalidated(layer);
+    }
+
+    @Test
+    public void testCollapseDuplicates() throws Exception {
+        // hold the queue while events arrive
+        listener.executor.shutdownNow();
+        listener.executor = mock(ExecutorService.class);
+
+        listener.handlePostModifyEvent(modify(layer));
+        listener.handlePostModifyEvent(modify(layer));
+        listener.handlePostModifyEvent(modify(layer));
+        assertEquals(1, listener.queue.size());
+
+        listener.drain();
+        verify(listener.controller, times(1)).clearThumbnail(layer);
+        verify(listener.controller, times(1)).clearThumbnail(map);
+        assertTrue(listener.pending.isEmpty());
+    }
+
+    @Test
+    public void testRemoveSupersedesModify() throws Exception {
+        listener.executor.shutdownNow();
+        listener.executor = mock(ExecutorService.class);
+
+        listener.handlePostModifyEvent(modify(layer));
+        CatalogRemoveEvent remove = mock(CatalogRemoveEvent.class);
+        when(remove.getSource()).thenReturn(layer);
+        listener.handleRemoveEvent(remove);
+        assertEquals(1, listener.queue.size());
+
+        listener.drain();
+        verify(listener.warmer).removed(layer);
+    }
+
+    @Test
+    public void testNoRecursion() throws Exception {
+        listener.executor.shutdownNow();
+        listener.executor = mock(ExecutorService.class);
+
+        // invalidating the layer triggers another catalog event on the same thread
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                listener.handlePostModifyEvent(modify(layer));
+                return null;
+            }
+        }).when(listener.controller).clearThumbnail(any(PublishedInfo.class));
+
+        listener.handlePostModifyEvent(modify(layer));
+        listener.drain();
+        assertTrue(listener.queue.isEmpty());
+    }
+
+    @Test
+    public void testCredentialsOfModifier() throws Exception {
+        listener.executor.shutdownNow();
+        listener.executor = mock(ExecutorService.class);
+
+        final AtomicReference<Authentication> invalidatedAs = new AtomicReference<Authentication>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                invalidatedAs.set(SecurityContextHolder.getContext().getAuthentication());
+                return null;
+            }
+        }).when(listener.warmer).invalidated(layer);
+
+        Authentication bob = new TestingAuthenticationToken("bob", null);
+        SecurityContextHolder.getContext().setAuthentication(bob);
+        try {
+            listener.handlePostModifyEvent(modify(layer));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        listener.drain();
+        assertSame(bob, invalidatedAs.get());
+    }
+}
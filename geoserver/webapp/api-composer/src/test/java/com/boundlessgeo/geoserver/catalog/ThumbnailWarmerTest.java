@@ -0,0 +1,104 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.boundlessgeo.geoserver.api.controllers.ThumbnailController;
+import com.boundlessgeo.geoserver.util.RecentObjectCache;
+
+public class ThumbnailWarmerTest {
+
+    ThumbnailWarmer warmer;
+    WorkspaceInfo ws;
+
+    @Before
+    public void setUp() {
+        warmer = new ThumbnailWarmer(true, 50);
+        warmer.catalog = mock(Catalog.class);
+        warmer.controller = mock(ThumbnailController.class);
+        warmer.recent = new RecentObjectCache();
+        ws = mock(WorkspaceInfo.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        warmer.destroy();
+    }
+
+    LayerInfo layer(String id) {
+        StoreInfo store = mock(StoreInfo.class);
+        when(store.getWorkspace()).thenReturn(ws);
+        ResourceInfo resource = mock(ResourceInfo.class);
+        when(resource.getStore()).thenReturn(store);
+
+        LayerInfo layer = mock(LayerInfo.class);
+        when(layer.getId()).thenReturn(id);
+        when(layer.getName()).thenReturn(id);
+        when(layer.getResource()).thenReturn(resource);
+        when(warmer.catalog.getLayer(id)).thenReturn(layer);
+        return layer;
+    }
+
+    @Test
+    public void testDebounce() throws Exception {
+        LayerInfo layer = layer("layer1");
+        warmer.invalidated(layer);
+        warmer.invalidated(layer);
+        warmer.invalidated(layer);
+
+        verify(warmer.controller, timeout(2000)).queueThumbnail(ws, layer);
+        Thread.sleep(200);
+        verify(warmer.controller).queueThumbnail(any(WorkspaceInfo.class), eq(layer));
+        assertEquals(0, warmer.pending());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        warmer.destroy();
+        warmer = new ThumbnailWarmer(false, 0);
+        warmer.controller = mock(ThumbnailController.class);
+
+        warmer.invalidated(mock(LayerInfo.class));
+        assertEquals(0, warmer.pending());
+        verify(warmer.controller, never()).queueThumbnail(any(WorkspaceInfo.class), any(LayerInfo.class));
+    }
+
+    @Test
+    public void testRecentFirst() throws Exception {
+        LayerInfo one = layer("one");
+        LayerInfo two = layer("two");
+        LayerInfo three = layer("three");
+        warmer.recent.add(LayerInfo.class, two, "ws");
+
+        long now = System.currentTimeMillis();
+        warmer.pending.put("one", new ThumbnailWarmer.Pending("one", now - 20, null));
+        warmer.pending.put("two", new ThumbnailWarmer.Pending("two", now - 10, null));
+        warmer.pending.put("three", new ThumbnailWarmer.Pending("three", now - 30, null));
+        warmer.flush();
+
+        InOrder order = inOrder(warmer.controller);
+        order.verify(warmer.controller).queueThumbnail(ws, two);
+        order.verify(warmer.controller).queueThumbnail(ws, three);
+        order.verify(warmer.controller).queueThumbnail(ws, one);
+    }
+}
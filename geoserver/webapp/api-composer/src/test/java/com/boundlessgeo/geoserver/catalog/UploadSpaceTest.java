@@ -0,0 +1,114 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.MetadataMap;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadSpaceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    UploadSpace space;
+    File root;
+
+    @Before
+    public void setUp() throws Exception {
+        space = new UploadSpace(mock(Catalog.class));
+        space.file = new File(folder.getRoot(), "upload-space.properties");
+        root = folder.newFolder("uploads");
+        FileUtils.writeByteArrayToFile(new File(root, "roads/roads.shp"), new byte[100]);
+    }
+
+    String key(File root) {
+        return root.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        // counted in the background
+        assertEquals(-1, space.used(root));
+        space.reconcile(key(root));
+        assertEquals(100, space.used(root));
+
+        space.add(new File(root, ".uploads/importFile1"), 50);
+        assertEquals(150, space.used(root));
+        space.add(new File(root, "roads"), -100);
+        assertEquals(50, space.used(root));
+
+        // not under a known root
+        space.add(folder.newFolder("other"), 1000);
+        assertEquals(50, space.used(root));
+    }
+
+    @Test
+    public void testMoved() throws Exception {
+        File other = folder.newFolder("other");
+        space.reconcile(key(root));
+        space.used(other);
+        space.reconcile(key(other));
+
+        // within a root
+        space.moved(new File(root, ".uploads/roads.shp"), new File(root, "roads/roads.shp"), 100);
+        assertEquals(100, space.used(root));
+
+        space.moved(new File(root, "roads/roads.shp"), new File(other, "roads/roads.shp"), 100);
+        assertEquals(0, space.used(root));
+        assertEquals(100, space.used(other));
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        space.used(root);
+        space.reconcile(key(root));
+        // changes outside of composer are picked up
+        FileUtils.writeByteArrayToFile(new File(root, "lakes/lakes.shp"), new byte[20]);
+        assertEquals(100, space.used(root));
+        space.reconcile(key(root));
+        assertEquals(120, space.used(root));
+    }
+
+    @Test
+    public void testPersist() throws Exception {
+        space.used(root);
+        space.reconcile(key(root));
+        space.add(root, 10);
+        space.flush();
+
+        UploadSpace restored = new UploadSpace(mock(Catalog.class));
+        restored.file = space.file;
+        restored.load();
+        assertEquals(110, restored.used(root));
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+        WorkspaceInfo ws = mock(WorkspaceInfo.class);
+        MetadataMap metadata = new MetadataMap();
+        when(ws.getMetadata()).thenReturn(metadata);
+
+        space.used(root);
+        space.reconcile(key(root));
+        assertEquals(0, space.quota(ws));
+        assertEquals(Long.MAX_VALUE, space.remaining(ws, root));
+
+        metadata.put(UploadSpace.QUOTA, 150L);
+        assertEquals(50, space.remaining(ws, root));
+        space.add(root, 100);
+        assertEquals(0, space.remaining(ws, root));
+    }
+}
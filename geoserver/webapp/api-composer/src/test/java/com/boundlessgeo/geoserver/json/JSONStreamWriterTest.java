@@ -0,0 +1,44 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JSONStreamWriterTest {
+
+    @Test
+    public void testWrite() throws Exception {
+        StringWriter w = new StringWriter();
+        JSONStreamWriter out = new JSONStreamWriter(w);
+        out.object()
+            .put("total", 2)
+            .put("name", "a \"quoted\" name")
+            .putArray("layers")
+                .value(new JSONObj().put("name", "one"))
+                .value(new JSONObj().put("name", "two"))
+            .endArray()
+            .putObject("empty").endObject()
+            .putArray("none").endArray()
+            .put("missing", null)
+        .endObject();
+        out.flush();
+
+        assertEquals("{\"total\":2,\"name\":\"a \\\"quoted\\\" name\","
+            + "\"layers\":[{\"name\":\"one\"},{\"name\":\"two\"}],"
+            + "\"empty\":{},\"none\":[],\"missing\":null}", w.toString());
+
+        // same as the tree
+        JSONObj obj = JSONWrapper.read(w.toString()).toObject();
+        assertEquals("two", obj.array("layers").object(1).str("name"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnbalanced() throws Exception {
+        new JSONStreamWriter(new StringWriter()).array().endObject().endArray();
+    }
+}
@@ -0,0 +1,42 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Test;
+
+public class ChecksumInputStreamTest {
+
+    @Test
+    public void testChecksum() throws Exception {
+        byte[] bytes = "abc".getBytes(StandardCharsets.UTF_8);
+        ChecksumInputStream in = new ChecksumInputStream(new ByteArrayInputStream(bytes), -1);
+        IOUtils.copy(in, new NullOutputStream());
+
+        assertEquals(3, in.count());
+        assertFalse(in.exceeded());
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", in.sha256());
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        ChecksumInputStream in = new ChecksumInputStream(new ByteArrayInputStream(new byte[100]), 50);
+        try {
+            IOUtils.copy(in, new NullOutputStream());
+            fail("Expected limit to be exceeded");
+        } catch (IOException e) {
+            assertTrue(in.exceeded());
+        }
+    }
+}
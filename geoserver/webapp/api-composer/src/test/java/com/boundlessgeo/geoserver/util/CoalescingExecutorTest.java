@@ -0,0 +1,89 @@
+package com.boundlessgeo.geoserver.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CoalescingExecutorTest {
+
+    CoalescingExecutor<String, Integer> executor;
+
+    @Before
+    public void setUp() {
+        executor = new CoalescingExecutor<String, Integer>("test", 1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        Future<Integer> f1 = executor.submit("one", task(latch, calls));
+        Future<Integer> f2 = executor.submit("one", task(latch, calls));
+        assertSame(f1, f2);
+        assertEquals(1, executor.coalesced());
+
+        latch.countDown();
+        assertEquals(Integer.valueOf(1), f1.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+
+        // once complete, the next submission schedules a new task
+        waitUntilDone("one");
+        Future<Integer> f3 = executor.submit("one", task(latch, calls));
+        assertNotSame(f1, f3);
+        assertEquals(Integer.valueOf(2), f3.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectWhenFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        // one running, one queued
+        executor.submit("one", task(latch, calls));
+        executor.submit("two", task(latch, calls));
+        try {
+            executor.submit("three", task(latch, calls));
+            fail("Expected queue to be full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, executor.rejected());
+        assertNull(executor.get("three"));
+        latch.countDown();
+    }
+
+    void waitUntilDone(String key) throws InterruptedException {
+        for (int i = 0; i < 100 && executor.get(key) != null; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    Callable<Integer> task(final CountDownLatch latch, final AtomicInteger calls) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                latch.await();
+                return calls.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FairSchedulerTest {
+
+    FairScheduler<String> scheduler;
+
+    @After
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    List<Callable<String>> tasks(final String key, int n, final CountDownLatch gate, final List<String> log) {
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < n; i++) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    log.add(key);
+                    gate.await(10, TimeUnit.SECONDS);
+                    return key;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    @Test
+    public void testKeyLimit() throws Exception {
+        scheduler = new FairScheduler<String>("test", 4, 2, 100);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+        List<Future<String>> futures = scheduler.submitAll("a", tasks("a", 5, gate, log));
+        assertEquals(2, scheduler.active("a"));
+        assertEquals(3, scheduler.queued());
+
+        gate.countDown();
+        for (Future<String> f : futures) {
+            assertEquals("a", f.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(5, log.size());
+    }
+
+    @Test
+    public void testFairness() throws Exception {
+        scheduler = new FairScheduler<String>("test", 2, 2, 100);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+        // "a" takes both threads, then queues a large backlog
+        scheduler.submitAll("a", tasks("a", 10, gate, log));
+        List<Future<String>> b = scheduler.submitAll("b", tasks("b", 1, new CountDownLatch(0), log));
+        assertEquals(2, scheduler.active("a"));
+
+        // as soon as a thread frees up, "b" gets it ahead of the rest of "a"
+        gate.countDown();
+        assertEquals("b", b.get(0).get(10, TimeUnit.SECONDS));
+        assertTrue(log.indexOf("b") <= 3);
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        scheduler = new FairScheduler<String>("test", 1, 1, 2);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+        scheduler.submitAll("a", tasks("a", 3, gate, log));
+        try {
+            scheduler.submitAll("b", tasks("b", 2, gate, log));
+            fail("Expected queue to be full");
+        } catch (RejectedExecutionException e) {
+        }
+        // nothing of the rejected group was queued
+        assertEquals(2, scheduler.queued());
+        gate.countDown();
+    }
+}
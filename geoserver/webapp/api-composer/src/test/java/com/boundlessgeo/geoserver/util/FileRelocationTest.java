@@ -0,0 +1,105 @@
+/* (c) 2015 Boundless, http://boundlessgeo.com
+ * This code is licensed under the GPL 2.0 license.
+ */
+package com.boundlessgeo.geoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileRelocationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File file(File dir, String name) throws Exception {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, name, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testRelocate() throws Exception {
+        File src = folder.newFolder("src");
+        File dest = new File(folder.getRoot(), "dest");
+        File shp = file(src, "roads.shp");
+        File dbf = file(src, "roads.dbf");
+
+        FileRelocation relocation = new FileRelocation()
+            .add(shp, new File(dest, "roads.shp"))
+            .add(dbf, new File(dest, "roads.dbf"));
+        relocation.run();
+        assertNotNull(relocation.method(shp));
+        assertEquals("roads.shp", FileUtils.readFileToString(new File(dest, "roads.shp"), StandardCharsets.UTF_8));
+
+        relocation.commit();
+        assertFalse(shp.exists());
+        assertFalse(dbf.exists());
+        assertTrue(new File(dest, "roads.dbf").exists());
+    }
+
+    @Test
+    public void testRenameWithoutLinks() throws Exception {
+        File src = folder.newFolder("src");
+        File dest = folder.newFolder("dest");
+        File shp = file(src, "roads.shp");
+
+        FileRelocation relocation = new FileRelocation().add(shp, new File(dest, "roads.shp"));
+        relocation.links = false;
+        relocation.run();
+        assertFalse(shp.exists());
+        assertTrue(new File(dest, "roads.shp").exists());
+
+        relocation.rollback();
+        assertTrue(shp.exists());
+        assertFalse(new File(dest, "roads.shp").exists());
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        File src = folder.newFolder("src");
+        File dest = folder.newFolder("dest");
+        File shp = file(src, "roads.shp");
+
+        FileRelocation relocation = new FileRelocation().add(shp, new File(dest, "roads.shp"));
+        relocation.run(); //placed on the same file system, copy it directly instead
+        relocation.rollback();
+        relocation.copy(relocation.entries);
+        assertEquals(FileRelocation.Method.COPY, relocation.method(shp));
+        assertEquals("roads.shp", FileUtils.readFileToString(new File(dest, "roads.shp"), StandardCharsets.UTF_8));
+        assertFalse(new File(dest, "roads.shp" + FileRelocation.TEMP_EXTENSION).exists());
+    }
+
+    @Test
+    public void testAllOrNothing() throws Exception {
+        File src = folder.newFolder("src");
+        File dest = folder.newFolder("dest");
+        File shp = file(src, "roads.shp");
+        File dbf = file(src, "roads.dbf");
+        file(dest, "roads.dbf");
+
+        FileRelocation relocation = new FileRelocation()
+            .add(shp, new File(dest, "roads.shp"))
+            .add(dbf, new File(dest, "roads.dbf"));
+        try {
+            relocation.run();
+            fail("Expected existing file to abort the relocation");
+        } catch (FileAlreadyExistsException e) {
+        }
+        assertTrue(shp.exists());
+        assertTrue(dbf.exists());
+        assertFalse(new File(dest, "roads.shp").exists());
+        assertEquals("roads.dbf", FileUtils.readFileToString(new File(dest, "roads.dbf"), StandardCharsets.UTF_8));
+    }
+}